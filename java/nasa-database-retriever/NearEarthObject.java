@@ -16,6 +16,12 @@ public class NearEarthObject {
     private double missDistance;
     private String orbitingBody;
 
+    /**
+     * Constructor for subclasses which keep their data somewhere else,
+     * such as a view over a row of a NeoColumnStore
+     */
+    protected NearEarthObject() {}
+
     /**
      * Default constructor for this object
      * @param referenceID
@@ -0,0 +1,133 @@
+import java.util.Arrays;
+
+/**
+ * Class which holds the aggregates of one group of rows. Rows whose
+ * measured value is NaN are counted, but left out of every other
+ * aggregate.
+ *
+ * liwll
+ */
+public class NeoAggregate {
+    private String group;
+    private int count;
+    private int valueCount;
+    private double sum;
+    private double min;
+    private double max;
+    private double[] bounds;
+    private long[] histogram;
+
+    /**
+     * Default constructor for the aggregates of a group
+     * @param group
+     *  The text of the group
+     * @param count
+     *  The number of rows in the group
+     * @param valueCount
+     *  The number of rows whose value was not NaN
+     * @param sum
+     *  The sum of the values
+     * @param min
+     *  The smallest value
+     * @param max
+     *  The largest value
+     * @param bounds
+     *  The bucket bounds, or null if there is no histogram
+     * @param histogram
+     *  The number of values in each bucket, or null if there is no
+     *  histogram
+     */
+    public NeoAggregate(String group, int count, int valueCount, double sum,
+                        double min, double max, double[] bounds,
+                        long[] histogram) {
+        this.group = group;
+        this.count = count;
+        this.valueCount = valueCount;
+        this.sum = sum;
+        this.min = min;
+        this.max = max;
+        this.bounds = bounds;
+        this.histogram = histogram;
+    }
+
+    /**
+     * Getter method for the text of the group
+     * @return
+     *  The year, orbiting body, or true/false the group is for
+     */
+    public String getGroup() {
+        return group;
+    }
+
+    /**
+     * Getter method for the number of rows in the group
+     * @return
+     *  The number of rows
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Getter method for the sum of the values
+     * @return
+     *  The sum, 0 if there were no values
+     */
+    public double getSum() {
+        return sum;
+    }
+
+    /**
+     * Getter method for the smallest value
+     * @return
+     *  The smallest value, NaN if there were no values
+     */
+    public double getMin() {
+        return valueCount == 0 ? Double.NaN : min;
+    }
+
+    /**
+     * Getter method for the largest value
+     * @return
+     *  The largest value, NaN if there were no values
+     */
+    public double getMax() {
+        return valueCount == 0 ? Double.NaN : max;
+    }
+
+    /**
+     * Getter method for the mean of the values
+     * @return
+     *  The mean, NaN if there were no values
+     */
+    public double getMean() {
+        return valueCount == 0 ? Double.NaN : sum / valueCount;
+    }
+
+    /**
+     * Getter method for the histogram. With bounds b0 to bk-1 there are
+     * k + 1 buckets, the first for values below b0, bucket i for values in
+     * [bi-1, bi), and the last for values of at least bk-1.
+     * @return
+     *  A copy of the bucket counts, or null if there is no histogram
+     */
+    public long[] getHistogram() {
+        return histogram == null ? null : histogram.clone();
+    }
+
+    /**
+     * Method which returns a String representation of the aggregates
+     * @return
+     *  The group followed by each aggregate
+     */
+    @Override
+    public String toString() {
+        String text = String.format("%s: count %d, sum %.3f, min %.3f, " +
+                        "max %.3f, mean %.3f", group, count, getSum(),
+                getMin(), getMax(), getMean());
+        if (histogram != null)
+            text += String.format(", histogram %s over %s",
+                    Arrays.toString(histogram), Arrays.toString(bounds));
+        return text;
+    }
+}
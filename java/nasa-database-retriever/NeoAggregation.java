@@ -0,0 +1,313 @@
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+/**
+ * Class which represents a group-by over a NeoDatabase, such as the mean
+ * miss distance for each orbiting body or a diameter histogram for each
+ * year. The store is split across a fork-join pool, each worker adds its
+ * rows into its own partial aggregates, and the partials are combined as
+ * the workers join, so no two threads ever write to the same aggregate.
+ * It reads the version of the database that was published when it was
+ * started, so it can run while another thread adds pages.
+ *
+ * liwll
+ */
+public class NeoAggregation {
+    public static final int PARALLEL_THRESHOLD = 1 << 15;
+    private NeoColumnStore store;
+    private NeoGroupKey group;
+    private NeoSortKey measure;
+    private double[] bounds;
+    private Predicate<NearEarthObject> filter;
+
+    /**
+     * Default constructor for an aggregation which only counts the rows
+     * in each group
+     * @param database
+     *  The database being aggregated
+     * @param group
+     *  The column rows are grouped on
+     * @throws IllegalArgumentException
+     *  When database or group is null
+     */
+    public NeoAggregation(NeoDatabase database, NeoGroupKey group)
+            throws IllegalArgumentException {
+        if (database == null || group == null)
+            throw new IllegalArgumentException();
+
+        this.store = database.view().getStore();
+        this.group = group;
+    }
+
+    /**
+     * Method which picks the column the sum, min, max, mean, and histogram
+     * are taken over
+     * @param measure
+     *  The column being measured
+     * @return
+     *  This aggregation
+     * @throws IllegalArgumentException
+     *  When measure is null
+     */
+    public NeoAggregation of(NeoSortKey measure)
+            throws IllegalArgumentException {
+        if (measure == null)
+            throw new IllegalArgumentException();
+
+        this.measure = measure;
+        return this;
+    }
+
+    /**
+     * Method which adds a histogram of the measured column to each group
+     * @param bounds
+     *  The bucket bounds in ascending order, see NeoAggregate.getHistogram
+     * @return
+     *  This aggregation
+     * @throws IllegalArgumentException
+     *  When bounds is null or empty, or not strictly ascending
+     */
+    public NeoAggregation histogram(double... bounds)
+            throws IllegalArgumentException {
+        if (bounds == null || bounds.length == 0)
+            throw new IllegalArgumentException();
+        for (int i = 0; i < bounds.length; i++) {
+            if (Double.isNaN(bounds[i])
+                    || (i > 0 && !(bounds[i - 1] < bounds[i])))
+                throw new IllegalArgumentException();
+        }
+
+        this.bounds = bounds.clone();
+        return this;
+    }
+
+    /**
+     * Method which limits the aggregation to rows meeting a condition
+     * @param filter
+     *  The condition, it may be called from several threads at once
+     * @return
+     *  This aggregation
+     * @throws IllegalArgumentException
+     *  When filter is null
+     */
+    public NeoAggregation where(Predicate<NearEarthObject> filter)
+            throws IllegalArgumentException {
+        if (filter == null)
+            throw new IllegalArgumentException();
+
+        this.filter = filter;
+        return this;
+    }
+
+    /**
+     * Method which runs the aggregation
+     * @return
+     *  The aggregates of each group with at least one row, keyed on the
+     *  group's text. Years and true/false are in ascending order, orbiting
+     *  bodies are in alphabetical order.
+     * @throws IllegalStateException
+     *  When a histogram was asked for without a measured column
+     */
+    public Map<String, NeoAggregate> run() throws IllegalStateException {
+        if (bounds != null && measure == null)
+            throw new IllegalStateException();
+
+        Partial total = new Worker(this, 0, store.size()).invoke();
+        String[] labels = new String[total.size];
+        for (int slot = 0; slot < total.size; slot++)
+            labels[slot] = group.labelOf(store, total.codes[slot]);
+
+        Comparator<Integer> order = group == NeoGroupKey.ORBITING_BODY
+                ? Comparator.comparing(slot -> labels[slot])
+                : Comparator.comparingInt(slot -> total.codes[slot]);
+        Map<String, NeoAggregate> results = new LinkedHashMap<>();
+        IntStream.range(0, total.size).boxed().sorted(order)
+                .forEach(slot -> results.put(labels[slot],
+                        total.toAggregate(slot, labels[slot])));
+        return results;
+    }
+
+    /**
+     * Class which holds the aggregates of every group one worker has seen,
+     * column by column, with a slot for each group
+     */
+    private static class Partial {
+        private NeoIntIndex slotsByCode;
+        private int buckets;
+        private double[] bounds;
+        private int size;
+        private int[] codes;
+        private int[] counts;
+        private int[] valueCounts;
+        private double[] sums;
+        private double[] mins;
+        private double[] maxes;
+        private long[] histograms;
+
+        private Partial(double[] bounds) {
+            this.slotsByCode = new NeoIntIndex();
+            this.bounds = bounds;
+            this.buckets = bounds == null ? 0 : bounds.length + 1;
+            this.codes = new int[8];
+            this.counts = new int[8];
+            this.valueCounts = new int[8];
+            this.sums = new double[8];
+            this.mins = new double[8];
+            this.maxes = new double[8];
+            this.histograms = new long[8 * buckets];
+        }
+
+        private int slotOf(int code) {
+            int slot = slotsByCode.get(code);
+            if (slot >= 0)
+                return slot;
+
+            slot = size++;
+            if (slot == codes.length) {
+                int capacity = slot * 2;
+                codes = Arrays.copyOf(codes, capacity);
+                counts = Arrays.copyOf(counts, capacity);
+                valueCounts = Arrays.copyOf(valueCounts, capacity);
+                sums = Arrays.copyOf(sums, capacity);
+                mins = Arrays.copyOf(mins, capacity);
+                maxes = Arrays.copyOf(maxes, capacity);
+                histograms = Arrays.copyOf(histograms, capacity * buckets);
+            }
+            codes[slot] = code;
+            mins[slot] = Double.POSITIVE_INFINITY;
+            maxes[slot] = Double.NEGATIVE_INFINITY;
+            slotsByCode.put(code, slot);
+            return slot;
+        }
+
+        private void add(int slot, double value) {
+            if (Double.isNaN(value))
+                return;
+
+            valueCounts[slot]++;
+            sums[slot] += value;
+            mins[slot] = Math.min(mins[slot], value);
+            maxes[slot] = Math.max(maxes[slot], value);
+            if (buckets > 0) {
+                int bucket = Arrays.binarySearch(bounds, value);
+                bucket = bucket >= 0 ? bucket + 1 : -bucket - 1;
+                histograms[slot * buckets + bucket]++;
+            }
+        }
+
+        private void combine(Partial other) {
+            for (int from = 0; from < other.size; from++) {
+                int slot = slotOf(other.codes[from]);
+                counts[slot] += other.counts[from];
+                valueCounts[slot] += other.valueCounts[from];
+                sums[slot] += other.sums[from];
+                mins[slot] = Math.min(mins[slot], other.mins[from]);
+                maxes[slot] = Math.max(maxes[slot], other.maxes[from]);
+                for (int b = 0; b < buckets; b++)
+                    histograms[slot * buckets + b] +=
+                            other.histograms[from * buckets + b];
+            }
+        }
+
+        private NeoAggregate toAggregate(int slot, String label) {
+            return new NeoAggregate(label, counts[slot], valueCounts[slot],
+                    sums[slot], mins[slot], maxes[slot], bounds,
+                    buckets == 0 ? null : Arrays.copyOfRange(histograms,
+                            slot * buckets, (slot + 1) * buckets));
+        }
+    }
+
+    /**
+     * Class which aggregates a range of rows, splitting the range in half
+     * while it is larger than the parallel threshold
+     */
+    private static class Worker extends RecursiveTask<Partial> {
+        private static final long serialVersionUID = 1L;
+        private NeoAggregation aggregation;
+        private int fromRow;
+        private int toRow;
+
+        private Worker(NeoAggregation aggregation, int fromRow, int toRow) {
+            this.aggregation = aggregation;
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+        }
+
+        protected Partial compute() {
+            if (toRow - fromRow <= PARALLEL_THRESHOLD)
+                return scan();
+
+            int middle = (fromRow + toRow) >>> 1;
+            Worker left = new Worker(aggregation, fromRow, middle);
+            Worker right = new Worker(aggregation, middle, toRow);
+            left.fork();
+            Partial merged = right.compute();
+            merged.combine(left.join());
+            return merged;
+        }
+
+        /**
+         * Method which adds each row of the range to a new partial. For
+         * YEAR the bounds of the last year seen are kept, so the time zone
+         * is only consulted when a row falls in a different year.
+         */
+        private Partial scan() {
+            NeoColumnStore store = aggregation.store;
+            NeoGroupKey group = aggregation.group;
+            NeoSortKey measure = aggregation.measure;
+            Predicate<NearEarthObject> filter = aggregation.filter;
+            Partial partial = new Partial(aggregation.bounds);
+            NeoRecordView cursor = new NeoRecordView(store, fromRow);
+            ZoneId zone = ZoneId.systemDefault();
+            long yearStart = 0;
+            long yearEnd = 0;
+            int year = 0;
+            int lastCode = 0;
+            int lastSlot = -1;
+
+            for (int row = fromRow; row < toRow; row++) {
+                if (filter != null) {
+                    cursor.setRow(row);
+                    if (!filter.test(cursor))
+                        continue;
+                }
+
+                int code;
+                if (group == NeoGroupKey.YEAR) {
+                    long date = store.getApproachDate(row);
+                    if (date < yearStart || date >= yearEnd) {
+                        year = Instant.ofEpochMilli(date).atZone(zone)
+                                .getYear();
+                        yearStart = LocalDate.of(year, 1, 1)
+                                .atStartOfDay(zone).toInstant()
+                                .toEpochMilli();
+                        yearEnd = LocalDate.of(year + 1, 1, 1)
+                                .atStartOfDay(zone).toInstant()
+                                .toEpochMilli();
+                    }
+                    code = year;
+                }
+                else {
+                    code = group.codeOf(store, row);
+                }
+
+                int slot = lastSlot >= 0 && code == lastCode
+                        ? lastSlot : partial.slotOf(code);
+                lastCode = code;
+                lastSlot = slot;
+                partial.counts[slot]++;
+                if (measure != null)
+                    partial.add(slot, measure.valueOf(store, row));
+            }
+            return partial;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+/**
+ * Interface for objects which want to hear when an ingested NearEarthObject
+ * matches a rule of a NeoRuleEngine.
+ *
+ * liwll
+ */
+public interface NeoAlertListener {
+    /**
+     * Method which is called for each rule a NearEarthObject matches, on
+     * the thread doing the ingestion
+     * @param rule
+     *  The rule which was matched
+     * @param neo
+     *  A view of the NearEarthObject's row, it should not be kept past
+     *  the call
+     */
+    void matched(NeoRule rule, NearEarthObject neo);
+}
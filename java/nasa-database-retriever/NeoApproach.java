@@ -0,0 +1,76 @@
+import java.util.Date;
+
+/**
+ * This class represents one close approach of an asteroid, as found by a
+ * search over every approach in a NeoDatabase.
+ *
+ * liwll
+ */
+public class NeoApproach {
+    private NearEarthObject nearEarthObject;
+    private Date approachDate;
+    private double missDistance;
+    private String orbitingBody;
+
+    /**
+     * Default constructor for this object
+     * @param nearEarthObject
+     *  The asteroid making the approach
+     * @param approachDate
+     *  Date when the approach occurred
+     * @param missDistance
+     *  Miss distance of the approach
+     * @param orbitingBody
+     *  The body being approached
+     * @throws IllegalArgumentException
+     *  When an object argument is null
+     */
+    public NeoApproach(NearEarthObject nearEarthObject, Date approachDate,
+                       double missDistance, String orbitingBody)
+            throws IllegalArgumentException {
+        if (nearEarthObject == null || approachDate == null
+                || orbitingBody == null)
+            throw new IllegalArgumentException();
+
+        this.nearEarthObject = nearEarthObject;
+        this.approachDate = approachDate;
+        this.missDistance = missDistance;
+        this.orbitingBody = orbitingBody;
+    }
+
+    /**
+     * Getter method for the asteroid making the approach
+     * @return
+     *  The asteroid making the approach
+     */
+    public NearEarthObject getNearEarthObject() {
+        return nearEarthObject;
+    }
+
+    /**
+     * Getter method for the approach date
+     * @return
+     *  Date when the approach occurred
+     */
+    public Date getApproachDate() {
+        return approachDate;
+    }
+
+    /**
+     * Getter method for the miss distance
+     * @return
+     *  Miss distance of the approach
+     */
+    public double getMissDistance() {
+        return missDistance;
+    }
+
+    /**
+     * Getter method for the body being approached
+     * @return
+     *  The body being approached
+     */
+    public String getOrbitingBody() {
+        return orbitingBody;
+    }
+}
@@ -0,0 +1,364 @@
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Class which stores every close approach of every row of a
+ * NeoColumnStore in flat columns. The approaches of one row sit next to
+ * each other, and each row only keeps where its run starts and ends, so an
+ * asteroid with many approaches costs no more than a few extra column
+ * entries. When a row's approaches are replaced the new run is added at
+ * the end and the old one is left behind, marked dead, until enough dead
+ * approaches pile up to compact the columns. A table can be shared with a
+ * read-only copy, which sees the approaches as they were when it was made.
+ *
+ * liwll
+ */
+public class NeoApproachTable {
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int NO_ROW = -1;
+    private int rows;
+    private int[] starts;
+    private int[] ends;
+    private int size;
+    private int dead;
+    private long[] dates;
+    private double[] missDistances;
+    private int[] bodyCodes;
+    private int[] eventRows;
+    private int openRow;
+    private boolean shared;
+
+    /**
+     * Default constructor for an empty table
+     */
+    public NeoApproachTable() {
+        this.starts = new int[INITIAL_CAPACITY];
+        this.ends = new int[INITIAL_CAPACITY];
+        this.dates = new long[INITIAL_CAPACITY];
+        this.missDistances = new double[INITIAL_CAPACITY];
+        this.bodyCodes = new int[INITIAL_CAPACITY];
+        this.eventRows = new int[INITIAL_CAPACITY];
+        this.openRow = NO_ROW;
+    }
+
+    /**
+     * Method which starts a new run of approaches for a row, any approaches
+     * the row had before are dropped
+     * @param row
+     *  An existing row, or the row right after the last one
+     * @throws IllegalArgumentException
+     *  When row is negative or would leave a gap
+     */
+    public void startRow(int row) throws IllegalArgumentException {
+        if (row < 0 || row > rows)
+            throw new IllegalArgumentException();
+
+        if (row == rows) {
+            if (rows == starts.length) {
+                starts = Arrays.copyOf(starts, rows * 2);
+                ends = Arrays.copyOf(ends, rows * 2);
+            }
+            rows++;
+        }
+        else {
+            if (shared) {
+                starts = Arrays.copyOf(starts, starts.length);
+                ends = Arrays.copyOf(ends, ends.length);
+                eventRows = Arrays.copyOf(eventRows, eventRows.length);
+                shared = false;
+            }
+            for (int event = starts[row]; event < ends[row]; event++)
+                eventRows[event] = NO_ROW;
+            dead += ends[row] - starts[row];
+            starts[row] = ends[row];
+            if (dead > INITIAL_CAPACITY && dead * 2 > size)
+                compact();
+        }
+        starts[row] = size;
+        ends[row] = size;
+        openRow = row;
+    }
+
+    /**
+     * Method which adds an approach to the end of the run started last
+     * @param row
+     *  The row passed to the last call of startRow
+     * @param date
+     *  The date of the approach, in epoch milliseconds
+     * @param missDistance
+     *  The miss distance of the approach (km)
+     * @param bodyCode
+     *  The dictionary code of the body being approached
+     * @throws IllegalArgumentException
+     *  When row is not the row whose run was started last
+     */
+    public void add(int row, long date, double missDistance, int bodyCode)
+            throws IllegalArgumentException {
+        if (row != openRow || openRow == NO_ROW)
+            throw new IllegalArgumentException();
+
+        if (size == dates.length)
+            grow(size * 2);
+        dates[size] = date;
+        missDistances[size] = missDistance;
+        bodyCodes[size] = bodyCode;
+        eventRows[size] = row;
+        size++;
+        ends[row] = size;
+    }
+
+    /**
+     * Method which returns a copy of the table which shares its columns,
+     * for a frozen NeoColumnStore. Approaches added later are written past
+     * the end the copy can see, and the first time a row's approaches are
+     * replaced afterwards this table copies its row columns, so the copy
+     * is never changed.
+     * @return
+     *  A copy of the table, it must only be read
+     */
+    public NeoApproachTable share() {
+        NeoApproachTable copy = new NeoApproachTable();
+        copy.rows = rows;
+        copy.starts = starts;
+        copy.ends = ends;
+        copy.size = size;
+        copy.dead = dead;
+        copy.dates = dates;
+        copy.missDistances = missDistances;
+        copy.bodyCodes = bodyCodes;
+        copy.eventRows = eventRows;
+        copy.shared = true;
+        shared = true;
+        return copy;
+    }
+
+    /**
+     * Getter method for the number of rows the table has runs for
+     * @return
+     *  The number of rows
+     */
+    public int rows() {
+        return rows;
+    }
+
+    /**
+     * Getter method for the number of approach slots, including dead ones
+     * @return
+     *  One past the last approach
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Method which returns the first approach of a row
+     * @param row
+     *  The row
+     * @return
+     *  The position of the row's first approach
+     */
+    public int start(int row) {
+        return starts[row];
+    }
+
+    /**
+     * Method which returns the end of a row's approaches
+     * @param row
+     *  The row
+     * @return
+     *  One past the position of the row's last approach
+     */
+    public int end(int row) {
+        return ends[row];
+    }
+
+    /**
+     * Getter method for the date of an approach
+     * @param event
+     *  The position of the approach
+     * @return
+     *  The date of the approach, in epoch milliseconds
+     */
+    public long getDate(int event) {
+        return dates[event];
+    }
+
+    /**
+     * Getter method for the miss distance of an approach
+     * @param event
+     *  The position of the approach
+     * @return
+     *  The miss distance of the approach (km)
+     */
+    public double getMissDistance(int event) {
+        return missDistances[event];
+    }
+
+    /**
+     * Getter method for the body of an approach
+     * @param event
+     *  The position of the approach
+     * @return
+     *  The dictionary code of the body being approached
+     */
+    public int getBodyCode(int event) {
+        return bodyCodes[event];
+    }
+
+    /**
+     * Getter method for the row an approach belongs to
+     * @param event
+     *  The position of the approach
+     * @return
+     *  The row, or -1 if the approach was replaced
+     */
+    public int getRow(int event) {
+        return eventRows[event];
+    }
+
+    /**
+     * Method which scans every approach for the ones to a body inside a
+     * time window, reading only the body, date, and row columns
+     * @param bodyCode
+     *  The dictionary code of the body
+     * @param from
+     *  The earliest date (inclusive), in epoch milliseconds
+     * @param to
+     *  The latest date (inclusive), in epoch milliseconds
+     * @return
+     *  The positions of the matching approaches, in storage order
+     */
+    public int[] find(int bodyCode, long from, long to) {
+        int[] found = new int[16];
+        int count = 0;
+        for (int event = 0; event < size; event++) {
+            if (bodyCodes[event] != bodyCode || dates[event] < from
+                    || dates[event] > to || eventRows[event] == NO_ROW)
+                continue;
+            if (count == found.length)
+                found = Arrays.copyOf(found, count * 2);
+            found[count++] = event;
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    /**
+     * Method which writes the table compacted, as a count of approaches for
+     * each row followed by the approach columns in row order. Dead
+     * approaches are skipped, the table itself is not changed.
+     * @param out
+     *  Where the table is written
+     * @throws IOException
+     *  When out could not be written to
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(rows);
+        for (int row = 0; row < rows; row++)
+            out.writeInt(ends[row] - starts[row]);
+        out.writeInt(size - dead);
+        for (int row = 0; row < rows; row++) {
+            for (int event = starts[row]; event < ends[row]; event++)
+                out.writeLong(dates[event]);
+        }
+        for (int row = 0; row < rows; row++) {
+            for (int event = starts[row]; event < ends[row]; event++)
+                out.writeDouble(missDistances[event]);
+        }
+        for (int row = 0; row < rows; row++) {
+            for (int event = starts[row]; event < ends[row]; event++)
+                out.writeInt(bodyCodes[event]);
+        }
+    }
+
+    /**
+     * Method which reads a table written by writeTo, copying each column
+     * out of the buffer in one bulk operation
+     * @param in
+     *  The buffer positioned at the table, it is left positioned right
+     *  after it
+     * @return
+     *  The table
+     * @throws IllegalArgumentException
+     *  When the buffer does not hold a valid table
+     */
+    public static NeoApproachTable readFrom(ByteBuffer in)
+            throws IllegalArgumentException {
+        NeoApproachTable table = new NeoApproachTable();
+        int rows = in.getInt();
+        if (rows < 0 || rows > in.remaining() / Integer.BYTES)
+            throw new IllegalArgumentException();
+        int[] counts = new int[rows];
+        in.asIntBuffer().get(counts);
+        in.position(in.position() + rows * Integer.BYTES);
+        int size = in.getInt();
+        if (size < 0 || size > in.remaining()
+                / (Long.BYTES + Double.BYTES + Integer.BYTES))
+            throw new IllegalArgumentException();
+
+        table.rows = rows;
+        table.starts = new int[Math.max(rows, INITIAL_CAPACITY)];
+        table.ends = new int[table.starts.length];
+        table.size = size;
+        int capacity = Math.max(size, INITIAL_CAPACITY);
+        table.dates = new long[capacity];
+        in.asLongBuffer().get(table.dates, 0, size);
+        in.position(in.position() + size * Long.BYTES);
+        table.missDistances = new double[capacity];
+        in.asDoubleBuffer().get(table.missDistances, 0, size);
+        in.position(in.position() + size * Double.BYTES);
+        table.bodyCodes = new int[capacity];
+        in.asIntBuffer().get(table.bodyCodes, 0, size);
+        in.position(in.position() + size * Integer.BYTES);
+
+        table.eventRows = new int[capacity];
+        int event = 0;
+        for (int row = 0; row < rows; row++) {
+            if (counts[row] < 0 || counts[row] > size - event)
+                throw new IllegalArgumentException();
+            table.starts[row] = event;
+            Arrays.fill(table.eventRows, event, event + counts[row], row);
+            event += counts[row];
+            table.ends[row] = event;
+        }
+        if (event != size)
+            throw new IllegalArgumentException();
+        return table;
+    }
+
+    private void compact() {
+        int live = size - dead;
+        long[] newDates = new long[Math.max(live * 2, INITIAL_CAPACITY)];
+        double[] newMisses = new double[newDates.length];
+        int[] newBodies = new int[newDates.length];
+        int[] newRows = new int[newDates.length];
+
+        int event = 0;
+        for (int row = 0; row < rows; row++) {
+            int count = ends[row] - starts[row];
+            System.arraycopy(dates, starts[row], newDates, event, count);
+            System.arraycopy(missDistances, starts[row], newMisses, event,
+                    count);
+            System.arraycopy(bodyCodes, starts[row], newBodies, event, count);
+            Arrays.fill(newRows, event, event + count, row);
+            starts[row] = event;
+            event += count;
+            ends[row] = event;
+        }
+
+        dates = newDates;
+        missDistances = newMisses;
+        bodyCodes = newBodies;
+        eventRows = newRows;
+        size = event;
+        dead = 0;
+    }
+
+    private void grow(int capacity) {
+        dates = Arrays.copyOf(dates, capacity);
+        missDistances = Arrays.copyOf(missDistances, capacity);
+        bodyCodes = Arrays.copyOf(bodyCodes, capacity);
+        eventRows = Arrays.copyOf(eventRows, capacity);
+    }
+}
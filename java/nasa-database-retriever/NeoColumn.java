@@ -0,0 +1,16 @@
+/**
+ * This class is an enum for the columns of a columnar export, one for
+ * each column of the table. They are written in this order.
+ *
+ * liwll
+ */
+public enum NeoColumn {
+    REFERENCE_ID,
+    NAME,
+    ABSOLUTE_MAGNITUDE,
+    AVERAGE_DIAMETER,
+    DANGEROUS,
+    APPROACH_DATE,
+    MISS_DISTANCE,
+    ORBITING_BODY
+}
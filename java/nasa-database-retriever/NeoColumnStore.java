@@ -0,0 +1,1024 @@
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Class which stores NearEarthObjects as columns of primitives instead of
+ * one object per asteroid. Each asteroid is a row, and rows are numbered
+ * in the order they were added. Orbiting bodies are stored as dictionary
+ * codes, and names as Latin-1 bytes in a shared NeoNameArena. The
+ * approach columns hold each row's closest approach, and every approach
+ * the feed listed is kept in a NeoApproachTable.
+ * A store can be frozen into a read-only copy for readers on other
+ * threads, see freeze. A store read from a snapshot serves its fixed width
+ * columns straight from the mapped file until it is first changed, see
+ * readFrom.
+ *
+ * liwll
+ */
+public class NeoColumnStore {
+    private static final int INITIAL_CAPACITY = 64;
+    private int size;
+    private int[] referenceIDs;
+    private double[] absoluteMagnitudes;
+    private double[] averageDiameters;
+    private BitSet dangerous;
+    private long[] approachDates;
+    private double[] missDistances;
+    private int[] bodyCodes;
+    private NeoNameArena names;
+    private NeoStringDictionary bodies;
+    private NeoApproachTable approaches;
+    private long updateCount;
+    private boolean shared;
+    private boolean frozen;
+    private boolean mapped;
+    private IntBuffer mappedReferenceIDs;
+    private DoubleBuffer mappedAbsoluteMagnitudes;
+    private DoubleBuffer mappedAverageDiameters;
+    private LongBuffer mappedApproachDates;
+    private DoubleBuffer mappedMissDistances;
+    private IntBuffer mappedBodyCodes;
+
+    /**
+     * Default constructor for an empty store
+     */
+    public NeoColumnStore() {
+        this.referenceIDs = new int[INITIAL_CAPACITY];
+        this.absoluteMagnitudes = new double[INITIAL_CAPACITY];
+        this.averageDiameters = new double[INITIAL_CAPACITY];
+        this.dangerous = new BitSet();
+        this.approachDates = new long[INITIAL_CAPACITY];
+        this.missDistances = new double[INITIAL_CAPACITY];
+        this.bodyCodes = new int[INITIAL_CAPACITY];
+        this.names = new NeoNameArena();
+        this.bodies = new NeoStringDictionary();
+        this.approaches = new NeoApproachTable();
+    }
+
+    /**
+     * Constructor for a frozen copy of a store, see freeze
+     * @param store
+     *  The store being frozen
+     */
+    private NeoColumnStore(NeoColumnStore store) {
+        this.size = store.size;
+        this.referenceIDs = store.referenceIDs;
+        this.absoluteMagnitudes = store.absoluteMagnitudes;
+        this.averageDiameters = store.averageDiameters;
+        this.dangerous = (BitSet) store.dangerous.clone();
+        this.approachDates = store.approachDates;
+        this.missDistances = store.missDistances;
+        this.bodyCodes = store.bodyCodes;
+        this.names = store.names.share();
+        this.bodies = store.bodies.copy();
+        this.approaches = store.approaches.share();
+        this.updateCount = store.updateCount;
+        this.shared = true;
+        this.frozen = true;
+        this.mapped = store.mapped;
+        this.mappedReferenceIDs = store.mappedReferenceIDs;
+        this.mappedAbsoluteMagnitudes = store.mappedAbsoluteMagnitudes;
+        this.mappedAverageDiameters = store.mappedAverageDiameters;
+        this.mappedApproachDates = store.mappedApproachDates;
+        this.mappedMissDistances = store.mappedMissDistances;
+        this.mappedBodyCodes = store.mappedBodyCodes;
+    }
+
+    /**
+     * Method which adds a row to the end of the store, its closest approach
+     * is also recorded as its only approach
+     * @param referenceID
+     *  The unique ID of the asteroid
+     * @param name
+     *  The unique name of the asteroid
+     * @param absoluteMagnitude
+     *  The absolute brightness of the asteroid
+     * @param averageDiameter
+     *  The average estimated diameter of the asteroid (km)
+     * @param isDangerous
+     *  Indicates whether the asteroid is dangerous
+     * @param approachDate
+     *  Date when the closest approach occurred, in epoch milliseconds
+     * @param missDistance
+     *  Miss distance when the closest approach occurred
+     * @param orbitingBody
+     *  The orbital body the asteroid orbits
+     * @return
+     *  The row number of the new row
+     * @throws IllegalArgumentException
+     *  When name or orbitingBody is null
+     */
+    public int add(int referenceID, String name, double absoluteMagnitude,
+                   double averageDiameter, boolean isDangerous,
+                   long approachDate, double missDistance,
+                   String orbitingBody) throws IllegalArgumentException {
+        if (name == null || orbitingBody == null)
+            throw new IllegalArgumentException();
+        beforeChange(false);
+
+        int row = addColumns(referenceID, absoluteMagnitude,
+                averageDiameter, isDangerous, approachDate, missDistance,
+                orbitingBody);
+        names.set(row, name);
+        approaches.startRow(row);
+        approaches.add(row, approachDate, missDistance, bodyCodes[row]);
+        return row;
+    }
+
+    /**
+     * Method which records another approach for the row added last, after
+     * the ones it already has
+     * @param row
+     *  The row added last
+     * @param approachDate
+     *  Date of the approach, in epoch milliseconds
+     * @param missDistance
+     *  Miss distance of the approach
+     * @param orbitingBody
+     *  The body being approached
+     * @throws IllegalArgumentException
+     *  When row is not the last row or orbitingBody is null
+     */
+    public void addApproach(int row, long approachDate, double missDistance,
+                            String orbitingBody)
+            throws IllegalArgumentException {
+        if (row != size - 1 || orbitingBody == null)
+            throw new IllegalArgumentException();
+        beforeChange(false);
+
+        approaches.add(row, approachDate, missDistance,
+                bodies.encode(orbitingBody));
+    }
+
+    /**
+     * Method which copies a row of another store onto the end of this one
+     * @param other
+     *  The store which holds the row
+     * @param otherRow
+     *  The row to copy
+     * @return
+     *  The row number of the new row
+     * @throws IllegalArgumentException
+     *  When other is null or the row does not exist
+     */
+    public int addRow(NeoColumnStore other, int otherRow)
+            throws IllegalArgumentException {
+        if (other == null)
+            throw new IllegalArgumentException();
+        other.checkRow(otherRow);
+        beforeChange(false);
+
+        int row = addColumns(other.getReferenceID(otherRow),
+                other.getAbsoluteMagnitude(otherRow),
+                other.getAverageDiameter(otherRow),
+                other.dangerous.get(otherRow), other.getApproachDate(otherRow),
+                other.getMissDistance(otherRow),
+                other.getOrbitingBody(otherRow));
+        names.copy(row, other.names, otherRow);
+        copyApproaches(row, other, otherRow);
+        return row;
+    }
+
+    /**
+     * Method which copies every row of another store onto the end of this one
+     * @param other
+     *  The store whose rows are copied
+     * @return
+     *  The row number of the first copied row
+     * @throws IllegalArgumentException
+     *  When other is null
+     */
+    public int addAll(NeoColumnStore other) throws IllegalArgumentException {
+        if (other == null)
+            throw new IllegalArgumentException();
+
+        int first = size;
+        for (int row = 0; row < other.size; row++)
+            addRow(other, row);
+        return first;
+    }
+
+    /**
+     * Method which checks whether a row holds exactly the same data as a
+     * row of another store, including every approach
+     * @param row
+     *  The row of this store
+     * @param other
+     *  The store which holds the other row
+     * @param otherRow
+     *  The row of the other store
+     * @return
+     *  True if every column of the two rows is equal
+     * @throws IllegalArgumentException
+     *  When other is null or a row does not exist
+     */
+    public boolean rowEquals(int row, NeoColumnStore other, int otherRow)
+            throws IllegalArgumentException {
+        return rowEquals(row, other, otherRow, true);
+    }
+
+    /**
+     * Method which checks whether a row holds the same data as a row of
+     * another store, either including every approach or only the closest
+     * approach, for rows read from a source that records no other
+     * approaches
+     * @param row
+     *  The row of this store
+     * @param other
+     *  The store which holds the other row
+     * @param otherRow
+     *  The row of the other store
+     * @param allApproaches
+     *  True to compare every approach, false to compare only the closest
+     * @return
+     *  True if the compared columns of the two rows are equal
+     * @throws IllegalArgumentException
+     *  When other is null or a row does not exist
+     */
+    public boolean rowEquals(int row, NeoColumnStore other, int otherRow,
+                             boolean allApproaches)
+            throws IllegalArgumentException {
+        if (other == null)
+            throw new IllegalArgumentException();
+        checkRow(row);
+        other.checkRow(otherRow);
+
+        return getReferenceID(row) == other.getReferenceID(otherRow)
+                && sameDouble(getAbsoluteMagnitude(row),
+                other.getAbsoluteMagnitude(otherRow))
+                && sameDouble(getAverageDiameter(row),
+                other.getAverageDiameter(otherRow))
+                && dangerous.get(row) == other.dangerous.get(otherRow)
+                && getApproachDate(row) == other.getApproachDate(otherRow)
+                && sameDouble(getMissDistance(row),
+                other.getMissDistance(otherRow))
+                && names.nameEquals(row, other.names, otherRow)
+                && getOrbitingBody(row).equals(other.getOrbitingBody(otherRow))
+                && (!allApproaches || approachesEqual(row, other, otherRow));
+    }
+
+    /**
+     * Method which overwrites a row with a row of another store. Unlike the
+     * setters this does not count as an update, so whoever calls it is
+     * responsible for moving the row in any sorted index.
+     * @param row
+     *  The row of this store to overwrite
+     * @param other
+     *  The store which holds the new data
+     * @param otherRow
+     *  The row of the other store
+     * @throws IllegalArgumentException
+     *  When other is null or a row does not exist
+     */
+    public void replaceRow(int row, NeoColumnStore other, int otherRow)
+            throws IllegalArgumentException {
+        replaceRow(row, other, otherRow, true);
+    }
+
+    /**
+     * Method which overwrites a row with a row of another store, either
+     * with every approach or only with the closest approach. In the second
+     * case the row keeps the approaches it has recorded as long as its
+     * closest approach is still the same, for rows read from a source that
+     * records no other approaches.
+     * @param row
+     *  The row of this store to overwrite
+     * @param other
+     *  The store which holds the new data
+     * @param otherRow
+     *  The row of the other store
+     * @param allApproaches
+     *  True to copy every approach, false to keep the recorded approaches
+     *  when the closest approach is unchanged
+     * @throws IllegalArgumentException
+     *  When other is null or a row does not exist
+     */
+    public void replaceRow(int row, NeoColumnStore other, int otherRow,
+                           boolean allApproaches)
+            throws IllegalArgumentException {
+        if (other == null)
+            throw new IllegalArgumentException();
+        checkRow(row);
+        other.checkRow(otherRow);
+        beforeChange(true);
+
+        referenceIDs[row] = other.getReferenceID(otherRow);
+        names.copy(row, other.names, otherRow);
+        absoluteMagnitudes[row] = other.getAbsoluteMagnitude(otherRow);
+        averageDiameters[row] = other.getAverageDiameter(otherRow);
+        dangerous.set(row, other.dangerous.get(otherRow));
+        approachDates[row] = other.getApproachDate(otherRow);
+        missDistances[row] = other.getMissDistance(otherRow);
+        boolean keepApproaches = !allApproaches
+                && approaches.end(row) > approaches.start(row)
+                && closestApproachEquals(row, other, otherRow);
+        bodyCodes[row] = bodies.encode(other.getOrbitingBody(otherRow));
+        if (!keepApproaches)
+            copyApproaches(row, other, otherRow);
+    }
+
+    /**
+     * Method which returns a read-only copy of the store as it is now, which
+     * any number of threads may read while this store keeps changing. The
+     * copy shares this store's columns instead of copying them. Rows added
+     * later go past the end the copy can see, and the first time a row is
+     * changed in place afterwards this store copies its columns, so the
+     * copy never sees a change. Changing the copy throws an
+     * IllegalStateException.
+     * @return
+     *  A frozen copy of the store
+     */
+    public NeoColumnStore freeze() {
+        NeoColumnStore copy = new NeoColumnStore(this);
+        shared = true;
+        return copy;
+    }
+
+    /**
+     * Method which returns a NearEarthObject which reads and writes a row
+     * of this store instead of holding its own copy of the data
+     * @param row
+     *  The row to view
+     * @return
+     *  A view of the row
+     * @throws IllegalArgumentException
+     *  When the row does not exist
+     */
+    public NeoRecordView view(int row) throws IllegalArgumentException {
+        checkRow(row);
+        return new NeoRecordView(this, row);
+    }
+
+    /**
+     * Getter method for the number of rows
+     * @return
+     *  The number of rows in the store
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Method which counts the dangerous rows
+     * @return
+     *  The number of rows whose asteroid is dangerous
+     */
+    public int countDangerous() {
+        return dangerous.cardinality();
+    }
+
+    /**
+     * Method which finds the next dangerous row
+     * @param fromRow
+     *  The row to start looking at
+     * @return
+     *  The first dangerous row at or after fromRow, or -1 if there is none
+     */
+    public int nextDangerous(int fromRow) {
+        int row = dangerous.nextSetBit(fromRow);
+        return row >= size ? -1 : row;
+    }
+
+    /**
+     * Getter method for the number of times a row was changed in place,
+     * anything which depends on the order of the rows can compare it to
+     * find out whether it is out of date
+     * @return
+     *  The number of in place changes made to the store
+     */
+    public long getUpdateCount() {
+        return updateCount;
+    }
+
+    /**
+     * Getter method for the unique ID of the asteroid in a row
+     * @param row
+     *  The row to read
+     * @return
+     *  The unique ID of the asteroid
+     */
+    public int getReferenceID(int row) {
+        if (mapped)
+            return mappedReferenceIDs.get(row);
+        return referenceIDs[row];
+    }
+
+    /**
+     * Setter method for the unique ID of the asteroid in a row
+     * @param row
+     *  The row to change
+     * @param referenceID
+     *  The unique ID of the asteroid
+     * @throws IllegalArgumentException
+     *  When the row does not exist
+     */
+    public void setReferenceID(int row, int referenceID)
+            throws IllegalArgumentException {
+        checkRow(row);
+        beforeChange(true);
+        updateCount++;
+        referenceIDs[row] = referenceID;
+    }
+
+    /**
+     * Getter method for the unique name of the asteroid in a row
+     * @param row
+     *  The row to read
+     * @return
+     *  The unique name of the asteroid
+     */
+    public String getName(int row) {
+        return names.get(row);
+    }
+
+    /**
+     * Method which appends the unique name of the asteroid in a row to a
+     * StringBuilder, without creating a String for most names
+     * @param row
+     *  The row to read
+     * @param out
+     *  Where the name is appended
+     * @throws IllegalArgumentException
+     *  When out is null or the row does not exist
+     */
+    public void appendName(int row, StringBuilder out)
+            throws IllegalArgumentException {
+        names.appendTo(row, out);
+    }
+
+    /**
+     * Method which hashes the unique name of the asteroid in a row without
+     * creating a String for it
+     * @param row
+     *  The row to read
+     * @return
+     *  A well mixed 64-bit hash of the name, the same for equal names
+     * @throws IllegalArgumentException
+     *  When the row does not exist
+     */
+    public long hashName(int row) throws IllegalArgumentException {
+        return names.hash(row);
+    }
+
+    /**
+     * Setter method for the unique name of the asteroid in a row
+     * @param row
+     *  The row to change
+     * @param name
+     *  The unique name of the asteroid
+     * @throws IllegalArgumentException
+     *  When the row does not exist or name is null
+     */
+    public void setName(int row, String name)
+            throws IllegalArgumentException {
+        checkRow(row);
+        if (name == null)
+            throw new IllegalArgumentException();
+        beforeChange(true);
+        updateCount++;
+        names.set(row, name);
+    }
+
+    /**
+     * Getter method for the absolute brightness of the asteroid in a row
+     * @param row
+     *  The row to read
+     * @return
+     *  The absolute brightness of the asteroid
+     */
+    public double getAbsoluteMagnitude(int row) {
+        if (mapped)
+            return mappedAbsoluteMagnitudes.get(row);
+        return absoluteMagnitudes[row];
+    }
+
+    /**
+     * Setter method for the absolute brightness of the asteroid in a row
+     * @param row
+     *  The row to change
+     * @param absoluteMagnitude
+     *  The absolute brightness of the asteroid
+     * @throws IllegalArgumentException
+     *  When the row does not exist
+     */
+    public void setAbsoluteMagnitude(int row, double absoluteMagnitude)
+            throws IllegalArgumentException {
+        checkRow(row);
+        beforeChange(true);
+        updateCount++;
+        absoluteMagnitudes[row] = absoluteMagnitude;
+    }
+
+    /**
+     * Getter method for the average diameter of the asteroid in a row
+     * @param row
+     *  The row to read
+     * @return
+     *  The average diameter of the asteroid
+     */
+    public double getAverageDiameter(int row) {
+        if (mapped)
+            return mappedAverageDiameters.get(row);
+        return averageDiameters[row];
+    }
+
+    /**
+     * Setter method for the average diameter of the asteroid in a row
+     * @param row
+     *  The row to change
+     * @param averageDiameter
+     *  The average diameter of the asteroid
+     * @throws IllegalArgumentException
+     *  When the row does not exist
+     */
+    public void setAverageDiameter(int row, double averageDiameter)
+            throws IllegalArgumentException {
+        checkRow(row);
+        beforeChange(true);
+        updateCount++;
+        averageDiameters[row] = averageDiameter;
+    }
+
+    /**
+     * Getter method for whether a row is dangerous
+     * @param row
+     *  The row to read
+     * @return
+     *  True if the asteroid is dangerous, false if not
+     */
+    public boolean isDangerous(int row) {
+        return dangerous.get(row);
+    }
+
+    /**
+     * Setter method for whether a row is dangerous
+     * @param row
+     *  The row to change
+     * @param isDangerous
+     *  True if the asteroid is dangerous, false if not
+     * @throws IllegalArgumentException
+     *  When the row does not exist
+     */
+    public void setDangerous(int row, boolean isDangerous)
+            throws IllegalArgumentException {
+        checkRow(row);
+        beforeChange(true);
+        updateCount++;
+        dangerous.set(row, isDangerous);
+    }
+
+    /**
+     * Getter method for the date of the closest approach in a row
+     * @param row
+     *  The row to read
+     * @return
+     *  The date of the closest approach, in epoch milliseconds
+     */
+    public long getApproachDate(int row) {
+        if (mapped)
+            return mappedApproachDates.get(row);
+        return approachDates[row];
+    }
+
+    /**
+     * Setter method for the date of the closest approach in a row
+     * @param row
+     *  The row to change
+     * @param approachDate
+     *  The date of the closest approach, in epoch milliseconds
+     * @throws IllegalArgumentException
+     *  When the row does not exist
+     */
+    public void setApproachDate(int row, long approachDate)
+            throws IllegalArgumentException {
+        checkRow(row);
+        beforeChange(true);
+        updateCount++;
+        approachDates[row] = approachDate;
+    }
+
+    /**
+     * Getter method for the miss distance of the closest approach in a row
+     * @param row
+     *  The row to read
+     * @return
+     *  The miss distance of the closest approach
+     */
+    public double getMissDistance(int row) {
+        if (mapped)
+            return mappedMissDistances.get(row);
+        return missDistances[row];
+    }
+
+    /**
+     * Setter method for the miss distance of the closest approach in a row
+     * @param row
+     *  The row to change
+     * @param missDistance
+     *  The miss distance of the closest approach
+     * @throws IllegalArgumentException
+     *  When the row does not exist
+     */
+    public void setMissDistance(int row, double missDistance)
+            throws IllegalArgumentException {
+        checkRow(row);
+        beforeChange(true);
+        updateCount++;
+        missDistances[row] = missDistance;
+    }
+
+    /**
+     * Getter method for the orbital body which the asteroid orbits in a row
+     * @param row
+     *  The row to read
+     * @return
+     *  The orbital body which the asteroid orbits
+     */
+    public String getOrbitingBody(int row) {
+        return bodies.decode(getOrbitingBodyCode(row));
+    }
+
+    /**
+     * Getter method for the dictionary code of the orbital body in a row,
+     * which decodeBody turns back into its name
+     * @param row
+     *  The row to read
+     * @return
+     *  The code of the orbital body which the asteroid orbits
+     */
+    public int getOrbitingBodyCode(int row) {
+        if (mapped)
+            return mappedBodyCodes.get(row);
+        return bodyCodes[row];
+    }
+
+    /**
+     * Setter method for the orbital body which the asteroid orbits in a row
+     * @param row
+     *  The row to change
+     * @param orbitingBody
+     *  The orbital body which the asteroid orbits
+     * @throws IllegalArgumentException
+     *  When the row does not exist or orbitingBody is null
+     */
+    public void setOrbitingBody(int row, String orbitingBody)
+            throws IllegalArgumentException {
+        checkRow(row);
+        beforeChange(true);
+        updateCount++;
+        bodyCodes[row] = bodies.encode(orbitingBody);
+    }
+
+    /**
+     * Method which returns the number of approaches recorded for a row
+     * @param row
+     *  The row
+     * @return
+     *  The number of approaches, the first one is the closest approach
+     * @throws IllegalArgumentException
+     *  When the row does not exist
+     */
+    public int getApproachCount(int row) throws IllegalArgumentException {
+        checkRow(row);
+        return approaches.end(row) - approaches.start(row);
+    }
+
+    /**
+     * Getter method for the date of one of a row's approaches
+     * @param row
+     *  The row
+     * @param approach
+     *  Which of the row's approaches, starting at 0
+     * @return
+     *  The date of the approach, in epoch milliseconds
+     * @throws IllegalArgumentException
+     *  When the row or approach does not exist
+     */
+    public long getApproachDate(int row, int approach)
+            throws IllegalArgumentException {
+        return approaches.getDate(approachEvent(row, approach));
+    }
+
+    /**
+     * Getter method for the miss distance of one of a row's approaches
+     * @param row
+     *  The row
+     * @param approach
+     *  Which of the row's approaches, starting at 0
+     * @return
+     *  The miss distance of the approach
+     * @throws IllegalArgumentException
+     *  When the row or approach does not exist
+     */
+    public double getMissDistance(int row, int approach)
+            throws IllegalArgumentException {
+        return approaches.getMissDistance(approachEvent(row, approach));
+    }
+
+    /**
+     * Getter method for the body of one of a row's approaches
+     * @param row
+     *  The row
+     * @param approach
+     *  Which of the row's approaches, starting at 0
+     * @return
+     *  The body being approached
+     * @throws IllegalArgumentException
+     *  When the row or approach does not exist
+     */
+    public String getOrbitingBody(int row, int approach)
+            throws IllegalArgumentException {
+        return bodies.decode(approaches.getBodyCode(
+                approachEvent(row, approach)));
+    }
+
+    /**
+     * Method which finds every approach to a body inside a time window,
+     * across all rows, by scanning the approach columns
+     * @param orbitingBody
+     *  The body being approached
+     * @param from
+     *  The earliest date (inclusive), in epoch milliseconds
+     * @param to
+     *  The latest date (inclusive), in epoch milliseconds
+     * @return
+     *  The positions of the matching approaches in the approach table
+     * @throws IllegalArgumentException
+     *  When orbitingBody is null
+     */
+    public int[] findApproaches(String orbitingBody, long from, long to)
+            throws IllegalArgumentException {
+        if (orbitingBody == null)
+            throw new IllegalArgumentException();
+
+        int code = bodies.find(orbitingBody);
+        if (code < 0)
+            return new int[0];
+        return approaches.find(code, from, to);
+    }
+
+    /**
+     * Getter method for the table which holds every approach, the rows of
+     * its approaches are rows of this store
+     * @return
+     *  The approach table
+     */
+    public NeoApproachTable getApproaches() {
+        return approaches;
+    }
+
+    /**
+     * Method which returns the name of a body code from the approach table
+     * or getOrbitingBodyCode
+     * @param code
+     *  The body code
+     * @return
+     *  The name of the body
+     * @throws IllegalArgumentException
+     *  When the code was never handed out
+     */
+    public String decodeBody(int code) throws IllegalArgumentException {
+        return bodies.decode(code);
+    }
+
+    /**
+     * Method which writes every column back to back, each one as a fixed
+     * width array, followed by the name arena, the body dictionary, and the
+     * approach table
+     * @param out
+     *  Where the store is written
+     * @throws IOException
+     *  When the store could not be written
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(size);
+        for (int row = 0; row < size; row++)
+            out.writeInt(getReferenceID(row));
+        for (int row = 0; row < size; row++)
+            out.writeDouble(getAbsoluteMagnitude(row));
+        for (int row = 0; row < size; row++)
+            out.writeDouble(getAverageDiameter(row));
+        long[] words = Arrays.copyOf(dangerous.toLongArray(), (size + 63) / 64);
+        for (long word : words)
+            out.writeLong(word);
+        for (int row = 0; row < size; row++)
+            out.writeLong(getApproachDate(row));
+        for (int row = 0; row < size; row++)
+            out.writeDouble(getMissDistance(row));
+        for (int row = 0; row < size; row++)
+            out.writeInt(getOrbitingBodyCode(row));
+        names.writeTo(out);
+        bodies.writeTo(out);
+        approaches.writeTo(out);
+    }
+
+    /**
+     * Method which reads a store written by writeTo. The fixed width
+     * columns are not copied: the store reads them straight from the
+     * buffer, which must not change, so opening a mapped snapshot only
+     * touches the pages that are read. The first change to the store
+     * copies them onto the heap. The dangerous flags, one bit a row, are
+     * copied straight away.
+     * @param in
+     *  The buffer positioned at the store, it is left positioned right
+     *  after it
+     * @return
+     *  The store
+     * @throws IllegalArgumentException
+     *  When the buffer does not hold a valid store
+     */
+    public static NeoColumnStore readFrom(ByteBuffer in)
+            throws IllegalArgumentException {
+        NeoColumnStore store = new NeoColumnStore();
+        int size = in.getInt();
+        if (size < 0 || size > in.remaining() / (Integer.BYTES * 2
+                + Double.BYTES * 3 + Long.BYTES))
+            throw new IllegalArgumentException();
+        store.size = size;
+        store.mapped = true;
+        store.referenceIDs = null;
+        store.absoluteMagnitudes = null;
+        store.averageDiameters = null;
+        store.approachDates = null;
+        store.missDistances = null;
+        store.bodyCodes = null;
+
+        store.mappedReferenceIDs = in.asIntBuffer().limit(size);
+        in.position(in.position() + size * Integer.BYTES);
+        store.mappedAbsoluteMagnitudes = in.asDoubleBuffer().limit(size);
+        in.position(in.position() + size * Double.BYTES);
+        store.mappedAverageDiameters = in.asDoubleBuffer().limit(size);
+        in.position(in.position() + size * Double.BYTES);
+        long[] words = new long[(size + 63) / 64];
+        in.asLongBuffer().get(words);
+        in.position(in.position() + words.length * Long.BYTES);
+        store.dangerous = BitSet.valueOf(words);
+        store.mappedApproachDates = in.asLongBuffer().limit(size);
+        in.position(in.position() + size * Long.BYTES);
+        store.mappedMissDistances = in.asDoubleBuffer().limit(size);
+        in.position(in.position() + size * Double.BYTES);
+        store.mappedBodyCodes = in.asIntBuffer().limit(size);
+        in.position(in.position() + size * Integer.BYTES);
+
+        store.names = NeoNameArena.readFrom(in);
+        store.bodies = NeoStringDictionary.readFrom(in);
+        store.approaches = NeoApproachTable.readFrom(in);
+        return store;
+    }
+
+    private int addColumns(int referenceID, double absoluteMagnitude,
+                           double averageDiameter, boolean isDangerous,
+                           long approachDate, double missDistance,
+                           String orbitingBody) {
+        if (size == referenceIDs.length)
+            grow();
+        int row = size;
+        referenceIDs[row] = referenceID;
+        absoluteMagnitudes[row] = absoluteMagnitude;
+        averageDiameters[row] = averageDiameter;
+        dangerous.set(row, isDangerous);
+        approachDates[row] = approachDate;
+        missDistances[row] = missDistance;
+        bodyCodes[row] = bodies.encode(orbitingBody);
+        size++;
+        return row;
+    }
+
+    private int approachEvent(int row, int approach)
+            throws IllegalArgumentException {
+        checkRow(row);
+        int event = approaches.start(row) + approach;
+        if (approach < 0 || event >= approaches.end(row))
+            throw new IllegalArgumentException();
+        return event;
+    }
+
+    private void copyApproaches(int row, NeoColumnStore other, int otherRow) {
+        NeoApproachTable from = other.approaches;
+        int lastCode = -1;
+        int code = -1;
+        approaches.startRow(row);
+        for (int event = from.start(otherRow); event < from.end(otherRow);
+             event++) {
+            if (from.getBodyCode(event) != lastCode) {
+                lastCode = from.getBodyCode(event);
+                code = bodies.encode(other.bodies.decode(lastCode));
+            }
+            approaches.add(row, from.getDate(event),
+                    from.getMissDistance(event), code);
+        }
+    }
+
+    private boolean approachesEqual(int row, NeoColumnStore other,
+                                    int otherRow) {
+        NeoApproachTable from = other.approaches;
+        int count = approaches.end(row) - approaches.start(row);
+        if (count != from.end(otherRow) - from.start(otherRow))
+            return false;
+
+        for (int i = 0; i < count; i++) {
+            int event = approaches.start(row) + i;
+            int otherEvent = from.start(otherRow) + i;
+            if (approaches.getDate(event) != from.getDate(otherEvent)
+                    || !sameDouble(approaches.getMissDistance(event),
+                    from.getMissDistance(otherEvent))
+                    || !bodies.decode(approaches.getBodyCode(event)).equals(
+                    other.bodies.decode(from.getBodyCode(otherEvent))))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Method which checks whether the first recorded approach of a row is
+     * the closest approach of a row of another store
+     */
+    private boolean closestApproachEquals(int row, NeoColumnStore other,
+                                          int otherRow) {
+        int event = approaches.start(row);
+        return approaches.getDate(event) == other.getApproachDate(otherRow)
+                && sameDouble(approaches.getMissDistance(event),
+                other.getMissDistance(otherRow))
+                && bodies.decode(approaches.getBodyCode(event)).equals(
+                other.getOrbitingBody(otherRow));
+    }
+
+    private static boolean sameDouble(double left, double right) {
+        return Double.doubleToLongBits(left) == Double.doubleToLongBits(right);
+    }
+
+    /**
+     * Method which is called before the store is changed. Any change copies
+     * the columns onto the heap first if they are read from a buffer, and
+     * changing a row in place copies them first if they are shared with a
+     * frozen copy.
+     */
+    private void beforeChange(boolean inPlace) throws IllegalStateException {
+        if (frozen)
+            throw new IllegalStateException("The store is frozen.");
+        if (mapped) {
+            unmap();
+            return;
+        }
+        if (!inPlace || !shared)
+            return;
+
+        int capacity = referenceIDs.length;
+        referenceIDs = Arrays.copyOf(referenceIDs, capacity);
+        absoluteMagnitudes = Arrays.copyOf(absoluteMagnitudes, capacity);
+        averageDiameters = Arrays.copyOf(averageDiameters, capacity);
+        approachDates = Arrays.copyOf(approachDates, capacity);
+        missDistances = Arrays.copyOf(missDistances, capacity);
+        bodyCodes = Arrays.copyOf(bodyCodes, capacity);
+        shared = false;
+    }
+
+    /**
+     * Method which copies the columns read from a buffer onto the heap, any
+     * frozen copy keeps reading them from the buffer
+     */
+    private void unmap() {
+        int capacity = Math.max(size, INITIAL_CAPACITY);
+        referenceIDs = new int[capacity];
+        mappedReferenceIDs.duplicate().get(referenceIDs, 0, size);
+        absoluteMagnitudes = new double[capacity];
+        mappedAbsoluteMagnitudes.duplicate().get(absoluteMagnitudes, 0, size);
+        averageDiameters = new double[capacity];
+        mappedAverageDiameters.duplicate().get(averageDiameters, 0, size);
+        approachDates = new long[capacity];
+        mappedApproachDates.duplicate().get(approachDates, 0, size);
+        missDistances = new double[capacity];
+        mappedMissDistances.duplicate().get(missDistances, 0, size);
+        bodyCodes = new int[capacity];
+        mappedBodyCodes.duplicate().get(bodyCodes, 0, size);
+        mapped = false;
+        mappedReferenceIDs = null;
+        mappedAbsoluteMagnitudes = null;
+        mappedAverageDiameters = null;
+        mappedApproachDates = null;
+        mappedMissDistances = null;
+        mappedBodyCodes = null;
+        shared = false;
+    }
+
+    private void checkRow(int row) throws IllegalArgumentException {
+        if (row < 0 || row >= size)
+            throw new IllegalArgumentException();
+    }
+
+    private void grow() {
+        int capacity = referenceIDs.length * 2;
+        referenceIDs = Arrays.copyOf(referenceIDs, capacity);
+        absoluteMagnitudes = Arrays.copyOf(absoluteMagnitudes, capacity);
+        averageDiameters = Arrays.copyOf(averageDiameters, capacity);
+        approachDates = Arrays.copyOf(approachDates, capacity);
+        missDistances = Arrays.copyOf(missDistances, capacity);
+        bodyCodes = Arrays.copyOf(bodyCodes, capacity);
+    }
+}
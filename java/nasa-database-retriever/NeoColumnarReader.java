@@ -0,0 +1,418 @@
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Class which streams rows back out of a file written by NeoColumnarWriter.
+ * Only the columns asked for are inflated and decoded, the rest are
+ * skipped over by their length. One block is decoded at a time and the
+ * reader moves through its rows like a cursor, so memory does not depend
+ * on the size of the file.
+ *
+ * liwll
+ */
+public class NeoColumnarReader implements Closeable {
+    private DataInputStream in;
+    private Inflater inflater;
+    private Set<NeoColumn> columns;
+    private byte[] compressed;
+    private byte[] raw;
+    private int position;
+    private boolean finished;
+    private int rows;
+    private int current;
+    private int[] referenceIDs;
+    private String[] names;
+    private double[] absoluteMagnitudes;
+    private double[] averageDiameters;
+    private boolean[] dangerous;
+    private long[] approachDates;
+    private double[] missDistances;
+    private String[] orbitingBodies;
+
+    /**
+     * Default constructor for a reader, the header is checked straight
+     * away
+     * @param in
+     *  Where the file is read from, it is closed along with the reader
+     * @param columns
+     *  The columns wanted
+     * @throws IllegalArgumentException
+     *  When in or columns is null
+     * @throws IOException
+     *  When the header could not be read
+     * @throws NeoFormatException
+     *  When the file is not a columnar export or is a newer version
+     */
+    public NeoColumnarReader(InputStream in, Set<NeoColumn> columns)
+            throws IllegalArgumentException, IOException, NeoFormatException {
+        if (in == null || columns == null)
+            throw new IllegalArgumentException();
+
+        this.in = new DataInputStream(in);
+        this.inflater = new Inflater();
+        this.columns = columns.isEmpty() ? EnumSet.noneOf(NeoColumn.class)
+                : EnumSet.copyOf(columns);
+        this.compressed = new byte[1 << 16];
+        this.raw = new byte[1 << 16];
+        this.current = -1;
+
+        try {
+            if (this.in.readInt() != NeoColumnarWriter.MAGIC)
+                throw new NeoFormatException("Not a columnar export.");
+            if (this.in.readInt() != NeoColumnarWriter.VERSION)
+                throw new NeoFormatException("Unsupported export version.");
+            int count = this.in.readUnsignedByte();
+            if (count != NeoColumn.values().length)
+                throw new NeoFormatException("Unexpected columns.");
+            for (NeoColumn column : NeoColumn.values()) {
+                if (this.in.readUnsignedByte() != column.ordinal())
+                    throw new NeoFormatException("Unexpected columns.");
+            }
+        }
+        catch (EOFException e) {
+            throw new NeoFormatException("Export is truncated.");
+        }
+    }
+
+    /**
+     * Method which moves to the next row, reading the next block when the
+     * current one runs out
+     * @return
+     *  True if there is another row, false at the end of the file
+     * @throws IOException
+     *  When the file could not be read
+     * @throws NeoFormatException
+     *  When the file is damaged or truncated
+     */
+    public boolean next() throws IOException, NeoFormatException {
+        if (current + 1 < rows) {
+            current++;
+            return true;
+        }
+        if (finished)
+            return false;
+
+        try {
+            readBlock();
+        }
+        catch (EOFException e) {
+            throw new NeoFormatException("Export is truncated.");
+        }
+        catch (DataFormatException | RuntimeException e) {
+            throw new NeoFormatException("Export is damaged.");
+        }
+        current = rows > 0 ? 0 : -1;
+        return rows > 0;
+    }
+
+    /**
+     * Getter method for the referenceID of the current row
+     * @return
+     *  The unique ID of the asteroid
+     * @throws IllegalStateException
+     *  When the column was not read or there is no current row
+     */
+    public int getReferenceID() throws IllegalStateException {
+        check(NeoColumn.REFERENCE_ID);
+        return referenceIDs[current];
+    }
+
+    /**
+     * Getter method for the name of the current row
+     * @return
+     *  The unique name of the asteroid
+     * @throws IllegalStateException
+     *  When the column was not read or there is no current row
+     */
+    public String getName() throws IllegalStateException {
+        check(NeoColumn.NAME);
+        return names[current];
+    }
+
+    /**
+     * Getter method for the absolute magnitude of the current row
+     * @return
+     *  The absolute brightness of the asteroid
+     * @throws IllegalStateException
+     *  When the column was not read or there is no current row
+     */
+    public double getAbsoluteMagnitude() throws IllegalStateException {
+        check(NeoColumn.ABSOLUTE_MAGNITUDE);
+        return absoluteMagnitudes[current];
+    }
+
+    /**
+     * Getter method for the average diameter of the current row
+     * @return
+     *  The average estimated diameter of the asteroid (km)
+     * @throws IllegalStateException
+     *  When the column was not read or there is no current row
+     */
+    public double getAverageDiameter() throws IllegalStateException {
+        check(NeoColumn.AVERAGE_DIAMETER);
+        return averageDiameters[current];
+    }
+
+    /**
+     * Getter method for whether the current row is dangerous
+     * @return
+     *  Whether the asteroid is dangerous
+     * @throws IllegalStateException
+     *  When the column was not read or there is no current row
+     */
+    public boolean isDangerous() throws IllegalStateException {
+        check(NeoColumn.DANGEROUS);
+        return dangerous[current];
+    }
+
+    /**
+     * Getter method for the closest approach date of the current row
+     * @return
+     *  The date in epoch milliseconds
+     * @throws IllegalStateException
+     *  When the column was not read or there is no current row
+     */
+    public long getApproachDate() throws IllegalStateException {
+        check(NeoColumn.APPROACH_DATE);
+        return approachDates[current];
+    }
+
+    /**
+     * Getter method for the miss distance of the current row
+     * @return
+     *  Miss distance when the closest approach occurred
+     * @throws IllegalStateException
+     *  When the column was not read or there is no current row
+     */
+    public double getMissDistance() throws IllegalStateException {
+        check(NeoColumn.MISS_DISTANCE);
+        return missDistances[current];
+    }
+
+    /**
+     * Getter method for the orbiting body of the current row
+     * @return
+     *  The orbital body the asteroid orbits
+     * @throws IllegalStateException
+     *  When the column was not read or there is no current row
+     */
+    public String getOrbitingBody() throws IllegalStateException {
+        check(NeoColumn.ORBITING_BODY);
+        return orbitingBodies[current];
+    }
+
+    /**
+     * Method which closes the stream
+     * @throws IOException
+     *  When the stream could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        in.close();
+    }
+
+    private void readBlock() throws IOException, DataFormatException {
+        rows = in.readInt();
+        if (rows == 0) {
+            finished = true;
+            return;
+        }
+        if (rows < 0 || rows > NeoColumnarWriter.BLOCK_ROWS)
+            throw new DataFormatException();
+        if (referenceIDs == null || referenceIDs.length < rows)
+            allocate(rows);
+
+        for (NeoColumn column : NeoColumn.values()) {
+            if (!readColumn(column))
+                continue;
+
+            switch (column) {
+                case REFERENCE_ID:
+                    long id = 0;
+                    for (int i = 0; i < rows; i++) {
+                        id += readVarLong();
+                        referenceIDs[i] = (int) id;
+                    }
+                    break;
+                case NAME:
+                    readStrings(names);
+                    break;
+                case ABSOLUTE_MAGNITUDE:
+                    readDoubles(absoluteMagnitudes);
+                    break;
+                case AVERAGE_DIAMETER:
+                    readDoubles(averageDiameters);
+                    break;
+                case DANGEROUS:
+                    for (int i = 0; i < rows; i++)
+                        dangerous[i] = (raw[i >>> 3] & (1 << (i & 7))) != 0;
+                    break;
+                case APPROACH_DATE:
+                    long date = 0;
+                    for (int i = 0; i < rows; i++) {
+                        date += readVarLong();
+                        approachDates[i] = date;
+                    }
+                    break;
+                case MISS_DISTANCE:
+                    readDoubles(missDistances);
+                    break;
+                case ORBITING_BODY:
+                    readStrings(orbitingBodies);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Method which reads the next column of the block, inflating it if it
+     * is wanted and skipping it otherwise. Neither length in the file is
+     * trusted to size a buffer: the compressed bytes are read through a
+     * fixed buffer, and raw only grows as far as the data really inflates,
+     * so a damaged or truncated file fails instead of running out of
+     * memory.
+     * @return
+     *  True if the column was inflated into raw
+     */
+    private boolean readColumn(NeoColumn column)
+            throws IOException, DataFormatException {
+        int rawLength = in.readInt();
+        int length = in.readInt();
+        if (rawLength < 0 || length < 0 || rawLength > maxLength(column))
+            throw new DataFormatException();
+        if (!columns.contains(column)) {
+            in.skipNBytes(length);
+            return false;
+        }
+
+        inflater.reset();
+        int remaining = length;
+        int inflated = 0;
+        while (inflated < rawLength && !inflater.finished()) {
+            if (inflater.needsInput()) {
+                if (remaining == 0)
+                    throw new DataFormatException();
+                int count = Math.min(remaining, compressed.length);
+                in.readFully(compressed, 0, count);
+                inflater.setInput(compressed, 0, count);
+                remaining -= count;
+            }
+            if (inflated == raw.length)
+                raw = Arrays.copyOf(raw,
+                        (int) Math.min(rawLength, 2L * inflated));
+            int count = inflater.inflate(raw, inflated,
+                    Math.min(raw.length, rawLength) - inflated);
+            if (count == 0 && inflater.needsDictionary())
+                throw new DataFormatException();
+            inflated += count;
+        }
+        if (inflated != rawLength)
+            throw new DataFormatException();
+        in.skipNBytes(remaining);
+        position = 0;
+        return true;
+    }
+
+    /**
+     * Method which returns the most encoded bytes a column of the current
+     * block can take, a varint taking at most ten bytes a row
+     */
+    private long maxLength(NeoColumn column) {
+        switch (column) {
+            case REFERENCE_ID:
+            case APPROACH_DATE:
+                return rows * 10L;
+            case ABSOLUTE_MAGNITUDE:
+            case AVERAGE_DIAMETER:
+            case MISS_DISTANCE:
+                return rows * (long) Double.BYTES;
+            case DANGEROUS:
+                return (rows + 7) / 8;
+            default:
+                return Integer.MAX_VALUE;
+        }
+    }
+
+    private void readStrings(String[] values) throws DataFormatException {
+        int encoding = raw[position++];
+        if (encoding == NeoColumnarWriter.PLAIN) {
+            for (int i = 0; i < rows; i++)
+                values[i] = readString();
+        }
+        else if (encoding == NeoColumnarWriter.DICTIONARY) {
+            long size = readVarLong();
+            if (size < 0 || size > rows)
+                throw new DataFormatException();
+            String[] dictionary = new String[(int) size];
+            for (int code = 0; code < dictionary.length; code++)
+                dictionary[code] = readString();
+            for (int i = 0; i < rows; i++) {
+                long code = readVarLong();
+                if (code < 0 || code >= dictionary.length)
+                    throw new DataFormatException();
+                values[i] = dictionary[(int) code];
+            }
+        }
+        else {
+            throw new DataFormatException();
+        }
+    }
+
+    private String readString() {
+        int length = (int) readVarLong();
+        String value = new String(raw, position, length,
+                StandardCharsets.UTF_8);
+        position += length;
+        return value;
+    }
+
+    private void readDoubles(double[] values) {
+        for (int i = 0; i < rows; i++) {
+            long bits = 0;
+            for (int b = 0; b < Long.BYTES; b++)
+                bits = (bits << 8) | (raw[position++] & 0xFF);
+            values[i] = Double.longBitsToDouble(bits);
+        }
+    }
+
+    /**
+     * Method which reads a zigzag varint written by NeoColumnarWriter
+     */
+    private long readVarLong() {
+        long zigzag = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = raw[position++];
+            zigzag |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+
+    private void allocate(int capacity) {
+        referenceIDs = new int[capacity];
+        names = new String[capacity];
+        absoluteMagnitudes = new double[capacity];
+        averageDiameters = new double[capacity];
+        dangerous = new boolean[capacity];
+        approachDates = new long[capacity];
+        missDistances = new double[capacity];
+        orbitingBodies = new String[capacity];
+    }
+
+    private void check(NeoColumn column) throws IllegalStateException {
+        if (current < 0 || current >= rows || !columns.contains(column))
+            throw new IllegalStateException();
+    }
+}
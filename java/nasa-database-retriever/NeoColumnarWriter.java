@@ -0,0 +1,265 @@
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+/**
+ * Class which streams rows out as a compressed columnar file. Rows are
+ * gathered into blocks of up to BLOCK_ROWS, and each block is written
+ * column by column, so only one block is ever held in memory. Each column
+ * of a block is encoded and then deflated on its own, and is prefixed with
+ * its length so a reader can skip the columns it does not want:
+ * <ul>
+ *     <li>IDs and dates are written as zigzag varints of the difference
+ *     from the previous row.</li>
+ *     <li>Strings are dictionary encoded when they repeat, such as orbiting
+ *     bodies, and written plainly when they don't, such as names.</li>
+ *     <li>Doubles are written as their raw bits, and flags as a bitmap.</li>
+ * </ul>
+ * The file is a header, the blocks, and a block with zero rows marking the
+ * end. See NeoColumnarReader.
+ *
+ * liwll
+ */
+public class NeoColumnarWriter implements Closeable {
+    public static final int MAGIC = 0x4E454F43;
+    public static final int VERSION = 1;
+    public static final int BLOCK_ROWS = 1 << 16;
+    public static final int PLAIN = 0;
+    public static final int DICTIONARY = 1;
+    private DataOutputStream out;
+    private Deflater deflater;
+    private ByteArrayOutputStream encoded;
+    private DataOutputStream encoder;
+    private byte[] compressed;
+    private long rowCount;
+    private int rows;
+    private int[] referenceIDs;
+    private String[] names;
+    private double[] absoluteMagnitudes;
+    private double[] averageDiameters;
+    private boolean[] dangerous;
+    private long[] approachDates;
+    private double[] missDistances;
+    private String[] orbitingBodies;
+
+    /**
+     * Default constructor for a writer, the header is written straight
+     * away
+     * @param out
+     *  Where the file is written, it is closed along with the writer
+     * @throws IllegalArgumentException
+     *  When out is null
+     * @throws IOException
+     *  When the header could not be written
+     */
+    public NeoColumnarWriter(OutputStream out)
+            throws IllegalArgumentException, IOException {
+        if (out == null)
+            throw new IllegalArgumentException();
+
+        this.out = new DataOutputStream(out);
+        this.deflater = new Deflater(Deflater.BEST_SPEED);
+        this.encoded = new ByteArrayOutputStream(BLOCK_ROWS * 8);
+        this.encoder = new DataOutputStream(encoded);
+        this.compressed = new byte[BLOCK_ROWS * 8];
+        this.referenceIDs = new int[BLOCK_ROWS];
+        this.names = new String[BLOCK_ROWS];
+        this.absoluteMagnitudes = new double[BLOCK_ROWS];
+        this.averageDiameters = new double[BLOCK_ROWS];
+        this.dangerous = new boolean[BLOCK_ROWS];
+        this.approachDates = new long[BLOCK_ROWS];
+        this.missDistances = new double[BLOCK_ROWS];
+        this.orbitingBodies = new String[BLOCK_ROWS];
+
+        this.out.writeInt(MAGIC);
+        this.out.writeInt(VERSION);
+        this.out.writeByte(NeoColumn.values().length);
+        for (NeoColumn column : NeoColumn.values())
+            this.out.writeByte(column.ordinal());
+    }
+
+    /**
+     * Method which adds a row of a store to the file, a block is written
+     * each time BLOCK_ROWS rows have been added
+     * @param store
+     *  The store which holds the row
+     * @param row
+     *  The row to add
+     * @throws IllegalArgumentException
+     *  When store is null or the row does not exist
+     * @throws IOException
+     *  When a block could not be written
+     */
+    public void add(NeoColumnStore store, int row)
+            throws IllegalArgumentException, IOException {
+        if (store == null || row < 0 || row >= store.size())
+            throw new IllegalArgumentException();
+
+        referenceIDs[rows] = store.getReferenceID(row);
+        names[rows] = store.getName(row);
+        absoluteMagnitudes[rows] = store.getAbsoluteMagnitude(row);
+        averageDiameters[rows] = store.getAverageDiameter(row);
+        dangerous[rows] = store.isDangerous(row);
+        approachDates[rows] = store.getApproachDate(row);
+        missDistances[rows] = store.getMissDistance(row);
+        orbitingBodies[rows] = store.getOrbitingBody(row);
+        rows++;
+        rowCount++;
+        if (rows == BLOCK_ROWS)
+            writeBlock();
+    }
+
+    /**
+     * Getter method for the number of rows added
+     * @return
+     *  The number of rows added so far
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Method which writes the last block and the end marker, and closes
+     * the stream
+     * @throws IOException
+     *  When the file could not be finished
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (rows > 0)
+                writeBlock();
+            out.writeInt(0);
+        }
+        finally {
+            deflater.end();
+            out.close();
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        out.writeInt(rows);
+
+        long previous = 0;
+        for (int i = 0; i < rows; i++) {
+            writeVarLong(referenceIDs[i] - previous);
+            previous = referenceIDs[i];
+        }
+        flushColumn();
+
+        writeStrings(names);
+        flushColumn();
+
+        for (int i = 0; i < rows; i++)
+            encoder.writeDouble(absoluteMagnitudes[i]);
+        flushColumn();
+
+        for (int i = 0; i < rows; i++)
+            encoder.writeDouble(averageDiameters[i]);
+        flushColumn();
+
+        for (int i = 0; i < rows; i += 8) {
+            int bits = 0;
+            for (int bit = 0; bit < 8 && i + bit < rows; bit++) {
+                if (dangerous[i + bit])
+                    bits |= 1 << bit;
+            }
+            encoder.writeByte(bits);
+        }
+        flushColumn();
+
+        previous = 0;
+        for (int i = 0; i < rows; i++) {
+            writeVarLong(approachDates[i] - previous);
+            previous = approachDates[i];
+        }
+        flushColumn();
+
+        for (int i = 0; i < rows; i++)
+            encoder.writeDouble(missDistances[i]);
+        flushColumn();
+
+        writeStrings(orbitingBodies);
+        flushColumn();
+
+        Arrays.fill(names, 0, rows, null);
+        Arrays.fill(orbitingBodies, 0, rows, null);
+        rows = 0;
+    }
+
+    /**
+     * Method which encodes a block of Strings, using a dictionary when
+     * there are at most half as many distinct values as rows
+     */
+    private void writeStrings(String[] values) throws IOException {
+        Map<String, Integer> codes = new HashMap<>();
+        for (int i = 0; i < rows && codes.size() * 2 <= rows; i++)
+            codes.putIfAbsent(values[i], codes.size());
+
+        if (codes.size() * 2 > rows) {
+            encoder.writeByte(PLAIN);
+            for (int i = 0; i < rows; i++)
+                writeString(values[i]);
+            return;
+        }
+
+        encoder.writeByte(DICTIONARY);
+        String[] dictionary = new String[codes.size()];
+        codes.forEach((value, code) -> dictionary[code] = value);
+        writeVarLong(dictionary.length);
+        for (String value : dictionary)
+            writeString(value);
+        for (int i = 0; i < rows; i++)
+            writeVarLong(codes.get(values[i]));
+    }
+
+    private void writeString(String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(bytes.length);
+        encoder.write(bytes);
+    }
+
+    /**
+     * Method which writes a signed number as a zigzag varint, seven bits
+     * a byte with small magnitudes taking the fewest bytes
+     */
+    private void writeVarLong(long value) throws IOException {
+        long zigzag = (value << 1) ^ (value >> 63);
+        while ((zigzag & ~0x7FL) != 0) {
+            encoder.writeByte((int) (zigzag & 0x7F) | 0x80);
+            zigzag >>>= 7;
+        }
+        encoder.writeByte((int) zigzag);
+    }
+
+    /**
+     * Method which deflates the column that was just encoded and writes it
+     * with its encoded and compressed lengths
+     */
+    private void flushColumn() throws IOException {
+        encoder.flush();
+        byte[] raw = encoded.toByteArray();
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == compressed.length)
+                compressed = Arrays.copyOf(compressed, length * 2);
+            length += deflater.deflate(compressed, length,
+                    compressed.length - length);
+        }
+
+        out.writeInt(raw.length);
+        out.writeInt(length);
+        out.write(compressed, 0, length);
+        encoded.reset();
+    }
+}
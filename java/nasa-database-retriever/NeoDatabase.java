@@ -1,13 +1,28 @@
-import org.json.JSONArray;
-import org.json.JSONObject;
-import org.json.JSONTokener;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.IOException;
-import java.net.URL;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
 
 /**
  * Class that represents a database which contains and manages information
  * on the NearEarthObjects which have been retrieved from NASA's data.
+ * The data is kept column by column in a NeoColumnStore. Sorting by one of
+ * the comparator classes switches to a sorted index which is kept up to
+ * date as pages are added, any other sort order is kept as a list of row
+ * numbers. A NeoSummary of every asteroid ingested is kept as it arrives,
+ * so distributions can be read without sorting, and names are indexed by
+ * their trigrams so they can be searched by part of a designation.
  *
  * liwll
  */
@@ -16,13 +31,178 @@ public class NeoDatabase {
             "2hpsVhoFAhAIF2wxFwUFbtNo69xipZCzfvdtBAYl";
     public static final String API_ROOT =
             "https://api.nasa.gov/neo/rest/v1/neo/browse?";
-    public LinkedList<NearEarthObject> database;
+    public static final int MAX_PAGE = 715;
+    private static final int TABLE_BUFFER_SIZE = 1 << 16;
+    private static final int PUBLISH_ROWS = 1 << 16;
+    private NeoColumnStore store;
+    private int[] order;
+    private NeoSortedIndex[] indexes;
+    private NeoSortKey sortKey;
+    private NeoKdTree similarity;
+    private NeoNameIndex nameIndex;
+    private NeoRuleEngine ruleEngine;
+    private NeoSummary summary;
+    private volatile NeoDatabaseView view;
+    private String apiRoot;
+    private NeoPageCache pageCache;
+    private NeoFetchClient fetchClient;
+    private NeoIntIndex rowsByID;
+    private long rowsByIDUpdateCount;
 
     /**
      * Default constructor for a NeoDatabase
      */
     public NeoDatabase() {
-        this.database = new LinkedList<>();
+        this(API_ROOT);
+    }
+
+    /**
+     * Constructor for a NeoDatabase which queries a different API root,
+     * such as a local server which serves recorded pages
+     * @param apiRoot
+     *  The root of the browse API, ending right before the query string
+     * @throws IllegalArgumentException
+     *  When apiRoot is null
+     */
+    public NeoDatabase(String apiRoot) throws IllegalArgumentException {
+        if (apiRoot == null)
+            throw new IllegalArgumentException();
+
+        this.store = new NeoColumnStore();
+        this.order = new int[0];
+        this.indexes = new NeoSortedIndex[NeoSortKey.values().length];
+        this.summary = new NeoSummary();
+        this.apiRoot = apiRoot;
+        this.view = new NeoDatabaseView(store.freeze(), order,
+                summary.copy(), 0);
+    }
+
+    /**
+     * Getter method for the page cache
+     * @return
+     *  The cache pages are loaded through, or null if there is none
+     */
+    public NeoPageCache getPageCache() {
+        return pageCache;
+    }
+
+    /**
+     * Setter method for the page cache, pages loaded by number are read
+     * from the cache when possible and stored in it when downloaded
+     * @param pageCache
+     *  The cache to load pages through, or null to always download
+     */
+    public void setPageCache(NeoPageCache pageCache) {
+        this.pageCache = pageCache;
+    }
+
+    /**
+     * Getter method for the client pages are downloaded with. The default
+     * client is only created the first time it is needed, so a database
+     * which never downloads does not start its HTTP client and threads.
+     * @return
+     *  The client pages are downloaded with
+     */
+    public synchronized NeoFetchClient getFetchClient() {
+        if (fetchClient == null)
+            fetchClient = new NeoFetchClient();
+        return fetchClient;
+    }
+
+    /**
+     * Setter method for the client pages are downloaded with, such as one
+     * with a different rate limit
+     * @param fetchClient
+     *  The client to download pages with
+     * @throws IllegalArgumentException
+     *  When fetchClient is null
+     */
+    public synchronized void setFetchClient(NeoFetchClient fetchClient)
+            throws IllegalArgumentException {
+        if (fetchClient == null)
+            throw new IllegalArgumentException();
+
+        this.fetchClient = fetchClient;
+    }
+
+    /**
+     * Getter method for the rule engine
+     * @return
+     *  The rule engine checking ingested rows, or null if there is none
+     */
+    public NeoRuleEngine getRuleEngine() {
+        return ruleEngine;
+    }
+
+    /**
+     * Setter method for the rule engine, every row that is added or
+     * changed by a later ingestion is checked against its rules. Rows
+     * which arrive unchanged are not checked again.
+     * @param ruleEngine
+     *  The rule engine to use, or null to stop checking rows
+     */
+    public void setRuleEngine(NeoRuleEngine ruleEngine) {
+        this.ruleEngine = ruleEngine;
+    }
+
+    /**
+     * Method which returns the latest published version of the database.
+     * It never changes, so it can be read from any thread without locks,
+     * even while another thread is adding pages. Ingestion publishes a new
+     * version in batches, and sorting or loading a snapshot publishes one
+     * straight away. Changes made through the setters of a NearEarthObject
+     * from get are only published with the next version. Aggregations,
+     * skylines, approachesTo and the printed and written tables also read
+     * the latest version. Queries, similarTo, withinDistance, findNames and
+     * similarNames read the live database instead, because they use
+     * indexes that are only kept up to date for it, and so does get, whose
+     * setters change it, so they must not run while another thread adds
+     * pages.
+     * @return
+     *  The latest published version
+     */
+    public NeoDatabaseView view() {
+        return view;
+    }
+
+    /**
+     * Method which publishes the current contents, sort order and summary
+     * as a new version. Freezing the store copies nothing, the store only
+     * copies its columns if a row is later changed in place. The summary
+     * is copied, it is a few sketches of fixed size.
+     */
+    private void publish() {
+        int size = store.size();
+        view = new NeoDatabaseView(store.freeze(),
+                Arrays.copyOf(currentOrder(), size), summary.copy(),
+                view.getVersion() + 1);
+    }
+
+    /**
+     * Getter method for the number of NearEarthObjects in the database
+     * @return
+     *  The number of NearEarthObjects in the database
+     */
+    public int size() {
+        return store.size();
+    }
+
+    /**
+     * Method which returns the NearEarthObject at a position in the current
+     * sort order. The object is a view, so changes made through its setters
+     * are written to the database.
+     * @param index
+     *  The position in the current sort order
+     * @return
+     *  The NearEarthObject at that position
+     * @throws IllegalArgumentException
+     *  When index is out of bounds
+     */
+    public NearEarthObject get(int index) throws IllegalArgumentException {
+        if (index < 0 || index >= store.size())
+            throw new IllegalArgumentException();
+
+        return store.view(currentOrder()[index]);
     }
 
     /**
@@ -36,111 +216,738 @@ public class NeoDatabase {
      */
     public String buildQueryURL(int pageNumber)
             throws IllegalArgumentException {
-        if (pageNumber < 0 || pageNumber > 715)
+        if (pageNumber < 0 || pageNumber > MAX_PAGE)
             throw new IllegalArgumentException();
 
         String queryURL = String.format("%spage=%s&api_key=%s",
-                API_ROOT, pageNumber, API_KEY);
+                apiRoot, pageNumber, API_KEY);
         return queryURL;
     }
 
     /**
-     * Method which adds the NearEarthObjects to the database from a URL
+     * Method which adds the NearEarthObjects to the database from a URL.
+     * An asteroid whose referenceID is already in the database updates
+     * that row instead of being added again.
      * @param queryURL
      *  The URL which contains the dataset
+     * @return
+     *  How many asteroids were inserted, updated, or already present
      * @throws IllegalArgumentException
      *  When the URL is null or could nto be resolved
      */
-    public void addAll(String queryURL) throws IllegalArgumentException {
+    public NeoIngestReport addAll(String queryURL)
+            throws IllegalArgumentException {
         if (queryURL == null)
             throw new IllegalArgumentException();
 
+        Ingest ingest = new Ingest();
         try {
-            URL getReq = new URL(queryURL);
-            JSONTokener tokener = new JSONTokener(getReq.openStream());
-            JSONObject root = new JSONObject(tokener);
-
-            JSONArray nearEarthObjects =
-                    root.getJSONArray("near_earth_objects");
-
-            JSONObject neoJSON;
-            JSONArray closeApproachData;
-            int refID;
-            String name;
-            double absoluteMagnitude;
-            double minDiameter;
-            double maxDiameter;
-            boolean isDangerous;
-            long[] closestApproachDates;
-            long closestApproachDate;
-            double[] missDistances;
-            double missDistance;
-            String[] orbitingBodies;
-            String orbitingBody;
-            NearEarthObject neo;
-            for (int i = 0; i < nearEarthObjects.length(); i++) {
-                neoJSON = (JSONObject) nearEarthObjects.get(i);
-
-                refID = neoJSON.getInt("neo_reference_id");
-
-                name = neoJSON.getString("name");
-
-                absoluteMagnitude =
-                        neoJSON.getDouble("absolute_magnitude_h");
-
-                minDiameter =
-                        neoJSON.getJSONObject("estimated_diameter").
-                                getJSONObject("kilometers").
-                                getDouble("estimated_diameter_min");
-
-                maxDiameter = neoJSON.getJSONObject("estimated_diameter").
-                        getJSONObject("kilometers").
-                        getDouble("estimated_diameter_max");
-
-                isDangerous = neoJSON.
-                        getBoolean("is_potentially_hazardous_asteroid");
-
-                closeApproachData =
-                        neoJSON.getJSONArray("close_approach_data");
-                closestApproachDates = new long[closeApproachData.length()];
-                for (int j = 0; j < closeApproachData.length(); j++) {
-                    closestApproachDates[j] =
-                            closeApproachData.getJSONObject(j).
-                                    getLong("epoch_date_close_approach");
-                }
-                closestApproachDate = closestApproachDates[0];
-
-                missDistances = new double[closeApproachData.length()];
-                for (int n = 0; n < closeApproachData.length(); n++) {
-                    missDistances[n] = closeApproachData.
-                            getJSONObject(n).getJSONObject("miss_distance").
-                            getDouble("kilometers");
-                }
-                missDistance = missDistances[0];
+            ingest.merge(await(getFetchClient().fetchPage(queryURL)));
+        }
+        catch (NeoFormatException e) {
+            System.out.println("Error, JSON exception.");
+        }
+        catch (IOException e) {
+            System.out.println("Error, IO exception.");
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return ingest.finish();
+    }
 
-                orbitingBodies = new String[closeApproachData.length()];
-                for (int k = 0; k < closeApproachData.length(); k++) {
-                    orbitingBodies[k] = closeApproachData.getJSONObject(k).
-                            getString("orbiting_body");
-                }
-                orbitingBody = orbitingBodies[0];
+    /**
+     * Method which adds the NearEarthObjects on a page to the database,
+     * going through the page cache if there is one. An asteroid whose
+     * referenceID is already in the database updates that row instead of
+     * being added again.
+     * @param pageNumber
+     *  The page to load
+     * @return
+     *  How many asteroids were inserted, updated, or already present
+     * @throws IllegalArgumentException
+     *  When pageNumber is out of bounds
+     */
+    public NeoIngestReport addPage(int pageNumber)
+            throws IllegalArgumentException {
+        if (pageNumber < 0 || pageNumber > MAX_PAGE)
+            throw new IllegalArgumentException();
 
-                neo = new NearEarthObject(refID, name, absoluteMagnitude,
-                        minDiameter, maxDiameter, isDangerous,
-                        closestApproachDate, missDistance, orbitingBody);
-                database.add(neo);
-            }
+        Ingest ingest = new Ingest();
+        try {
+            ingest.merge(await(fetchPage(pageNumber)));
         }
-        catch (org.json.JSONException e) {
+        catch (NeoFormatException e) {
             System.out.println("Error, JSON exception.");
         }
         catch (IOException e) {
             System.out.println("Error, IO exception.");
         }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return ingest.finish();
+    }
+
+    /**
+     * Method which loads a range of pages concurrently and adds them to the
+     * database in page order, no matter which page finishes first. Pages
+     * which overlap are merged on referenceID like in addPage. Each page is
+     * merged while later pages are still downloading and parsing.
+     * @param from
+     *  The first page to load
+     * @param to
+     *  The last page to load (inclusive)
+     * @param parallelism
+     *  The maximum number of pages being fetched and parsed at once, the
+     *  fetch client's rate limit still applies
+     * @return
+     *  How many pages were loaded, and how many asteroids were inserted,
+     *  updated, or already present
+     * @throws IllegalArgumentException
+     *  When the range is out of bounds or parallelism is less than 1
+     */
+    public NeoIngestReport addRange(int from, int to, int parallelism)
+            throws IllegalArgumentException {
+        if (from < 0 || to > MAX_PAGE || from > to || parallelism < 1)
+            throw new IllegalArgumentException();
+
+        int pageCount = to - from + 1;
+        List<CompletableFuture<NeoColumnStore>> pages = new ArrayList<>();
+        Ingest ingest = new Ingest();
+        for (int i = 0; i < pageCount; i++) {
+            while (pages.size() < Math.min(pageCount, i + parallelism))
+                pages.add(fetchPage(from + pages.size()));
+
+            try {
+                ingest.merge(await(pages.get(i)));
+            }
+            catch (NeoFormatException e) {
+                System.out.printf("Error, JSON exception on page %d.\n",
+                        from + i);
+            }
+            catch (IOException e) {
+                System.out.printf("Error, IO exception on page %d.\n",
+                        from + i);
+            }
+            catch (InterruptedException e) {
+                for (CompletableFuture<NeoColumnStore> page : pages)
+                    page.cancel(true);
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return ingest.finish();
+    }
+
+    /**
+     * Method which merges pages that were already parsed into the database
+     * in the order given, the same way addRange merges downloaded pages
+     * @param pages
+     *  The parsed pages
+     * @return
+     *  How many asteroids were inserted, updated, or already present
+     * @throws IllegalArgumentException
+     *  When pages or one of the pages is null
+     */
+    public NeoIngestReport merge(List<NeoColumnStore> pages)
+            throws IllegalArgumentException {
+        if (pages == null || pages.contains(null))
+            throw new IllegalArgumentException();
+
+        Ingest ingest = new Ingest();
+        for (NeoColumnStore page : pages)
+            ingest.merge(page);
+        return ingest.finish();
+    }
+
+    /**
+     * Method which imports a full NEO dump file, parsing it in chunks on
+     * every processor and merging the chunks in file order like addRange.
+     * If the import fails part way, the chunks merged before the failure
+     * stay in the database.
+     * @param file
+     *  The dump file
+     * @param listener
+     *  What is told about progress after each chunk, or null
+     * @return
+     *  How many chunks were merged, and how many asteroids were inserted,
+     *  updated, or already present
+     * @throws IllegalArgumentException
+     *  When file is null
+     * @throws IOException
+     *  When the file could not be read
+     * @throws NeoFormatException
+     *  When the file is not a dump, or a record is not in the expected
+     *  format
+     */
+    public NeoIngestReport importDump(Path file, NeoImportListener listener)
+            throws IllegalArgumentException, IOException, NeoFormatException {
+        if (file == null)
+            throw new IllegalArgumentException();
+
+        NeoDumpImporter importer = new NeoDumpImporter(file,
+                Runtime.getRuntime().availableProcessors());
+        Ingest ingest = new Ingest();
+        try {
+            importer.run(ingest::merge, listener);
+        }
+        catch (IOException | NeoFormatException e) {
+            ingest.finish();
+            throw e;
+        }
+        return ingest.finish();
+    }
+
+    /**
+     * Method which checks whether an asteroid is in the database
+     * @param referenceID
+     *  The referenceID of the asteroid
+     * @return
+     *  True if a row has that referenceID
+     */
+    public boolean contains(int referenceID) {
+        return rowsByID().get(referenceID) >= 0;
+    }
+
+    /**
+     * Method which loads and parses one page by number without touching
+     * the database, reading it from the page cache if it is fresh there
+     * and downloading it through the fetch client otherwise
+     * @param pageNumber
+     *  The page to load
+     * @return
+     *  A store holding the page's asteroids, in the order they were listed
+     */
+    private CompletableFuture<NeoColumnStore> fetchPage(int pageNumber) {
+        NeoPageCache cache = pageCache;
+        NeoFetchClient client = getFetchClient();
+        byte[] cached = cache == null ? null : cache.get(pageNumber);
+        if (cached != null)
+            return client.parse(cached);
+
+        long start = System.nanoTime();
+        return client.fetchBody(buildQueryURL(pageNumber))
+                .thenCompose(payload -> {
+                    if (cache != null) {
+                        cache.recordNetworkTime(System.nanoTime() - start);
+                        try {
+                            cache.put(pageNumber, payload);
+                        }
+                        catch (IOException e) {
+                            // The page was downloaded, it just won't be
+                            // cached
+                        }
+                    }
+                    return client.parse(payload);
+                });
+    }
+
+    /**
+     * Method which waits for a page and unwraps the exception it failed
+     * with
+     * @param page
+     *  The page being loaded
+     * @return
+     *  The parsed page
+     * @throws IOException
+     *  When the page could not be downloaded
+     * @throws NeoFormatException
+     *  When the page is not in the expected format
+     * @throws InterruptedException
+     *  When the thread was interrupted while waiting
+     */
+    private static NeoColumnStore await(Future<NeoColumnStore> page)
+            throws IOException, NeoFormatException, InterruptedException {
+        try {
+            return page.get();
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            while (cause instanceof CompletionException
+                    && cause.getCause() != null)
+                cause = cause.getCause();
+            if (cause instanceof NeoFormatException)
+                throw (NeoFormatException) cause;
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Method which saves the database and its sort order to a snapshot file
+     * @param path
+     *  The file to write
+     * @throws IllegalArgumentException
+     *  When path is null
+     * @throws IOException
+     *  When the file could not be written
+     */
+    public void saveSnapshot(Path path)
+            throws IllegalArgumentException, IOException {
+        NeoSnapshotFile.save(path, store, currentOrder(), summary);
+    }
+
+    /**
+     * Method which exports the database in its current sort order to a
+     * compressed columnar file, streaming it out a block at a time. The
+     * file is replaced in one step so a failed export never leaves half a
+     * file behind. Only each row's closest approach is exported, like the
+     * table, so importing the file again keeps the approaches the database
+     * has recorded.
+     * @param path
+     *  The file to write
+     * @return
+     *  The number of rows exported
+     * @throws IllegalArgumentException
+     *  When path is null
+     * @throws IOException
+     *  When the file could not be written
+     */
+    public long exportColumnar(Path path)
+            throws IllegalArgumentException, IOException {
+        if (path == null)
+            throw new IllegalArgumentException();
+
+        Path directory = path.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(directory, "export-", ".tmp");
+        try {
+            int[] rows = currentOrder();
+            long count;
+            try (NeoColumnarWriter writer = new NeoColumnarWriter(
+                    new BufferedOutputStream(Files.newOutputStream(temp),
+                            TABLE_BUFFER_SIZE))) {
+                for (int i = 0; i < store.size(); i++)
+                    writer.add(store, rows[i]);
+                count = writer.getRowCount();
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            return count;
+        }
+        finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Method which adds the rows of a columnar file to the database,
+     * merging them on referenceID like addRange. The file is read a block
+     * at a time and each block is merged before the next is read. The file
+     * only holds each row's closest approach, so a row keeps the approaches
+     * it has recorded unless its closest approach changed.
+     * @param path
+     *  The file to read
+     * @return
+     *  How many blocks were merged, and how many asteroids were inserted,
+     *  updated, or already present
+     * @throws IllegalArgumentException
+     *  When path is null
+     * @throws IOException
+     *  When the file could not be read
+     * @throws NeoFormatException
+     *  When the file is not a columnar export or is damaged
+     */
+    public NeoIngestReport importColumnar(Path path)
+            throws IllegalArgumentException, IOException, NeoFormatException {
+        if (path == null)
+            throw new IllegalArgumentException();
+
+        Ingest ingest = new Ingest(false);
+        try (NeoColumnarReader reader = new NeoColumnarReader(
+                new BufferedInputStream(Files.newInputStream(path),
+                        TABLE_BUFFER_SIZE), EnumSet.allOf(NeoColumn.class))) {
+            NeoColumnStore block = new NeoColumnStore();
+            while (reader.next()) {
+                block.add(reader.getReferenceID(), reader.getName(),
+                        reader.getAbsoluteMagnitude(),
+                        reader.getAverageDiameter(), reader.isDangerous(),
+                        reader.getApproachDate(), reader.getMissDistance(),
+                        reader.getOrbitingBody());
+                if (block.size() == NeoColumnarWriter.BLOCK_ROWS) {
+                    ingest.merge(block);
+                    block = new NeoColumnStore();
+                }
+            }
+            if (block.size() > 0)
+                ingest.merge(block);
+        }
+        catch (IOException | NeoFormatException e) {
+            ingest.finish();
+            throw e;
+        }
+        return ingest.finish();
+    }
+
+    /**
+     * Method which replaces the contents of the database with a snapshot
+     * file, the database is left unchanged if the file can't be read
+     * @param path
+     *  The file to read
+     * @throws IllegalArgumentException
+     *  When path is null
+     * @throws IOException
+     *  When the file could not be read or is not a valid snapshot
+     */
+    public void loadSnapshot(Path path)
+            throws IllegalArgumentException, IOException {
+        NeoSnapshotFile snapshot = NeoSnapshotFile.open(path);
+        store = snapshot.getStore();
+        order = snapshot.getOrder();
+        summary = snapshot.getSummary();
+        indexes = new NeoSortedIndex[NeoSortKey.values().length];
+        sortKey = null;
+        rowsByID = null;
+        similarity = null;
+        nameIndex = null;
+        publish();
+    }
+
+    /**
+     * Method which returns the index from referenceID to row, building it
+     * again if rows were changed through their setters since it was built
+     * @return
+     *  An index which covers every row
+     */
+    private NeoIntIndex rowsByID() {
+        if (rowsByID == null || rowsByIDUpdateCount != store.getUpdateCount()) {
+            int size = store.size();
+            rowsByID = new NeoIntIndex(size);
+            for (int row = 0; row < size; row++) {
+                if (rowsByID.get(store.getReferenceID(row)) < 0)
+                    rowsByID.put(store.getReferenceID(row), row);
+            }
+            rowsByIDUpdateCount = store.getUpdateCount();
+        }
+        return rowsByID;
+    }
+
+    /**
+     * Method which returns the index for a key, building it the first time
+     * it is needed and rebuilding it if rows were changed in place
+     * @param key
+     *  The key of the index
+     * @return
+     *  An index which covers every row
+     */
+    private NeoSortedIndex index(NeoSortKey key) {
+        NeoSortedIndex index = indexes[key.ordinal()];
+        if (index == null || index.isStale(store)) {
+            index = new NeoSortedIndex(key, store);
+            indexes[key.ordinal()] = index;
+        }
+        else if (index.size() < store.size()) {
+            index.insertRange(store, index.size(), store.size());
+        }
+        return index;
+    }
+
+    /**
+     * Method which returns the similarity index, building it the first
+     * time it is needed and rebuilding it if rows were changed in place
+     * @return
+     *  An index which covers every row
+     */
+    private NeoKdTree similarity() {
+        if (similarity == null || similarity.isStale(store))
+            similarity = new NeoKdTree(store);
+        else if (similarity.size() < store.size())
+            similarity.insertRange(store, similarity.size(), store.size());
+        return similarity;
+    }
+
+    /**
+     * Method which returns the name index, building it the first time it
+     * is needed and rebuilding it if rows were changed in place
+     * @return
+     *  An index which covers every row
+     */
+    private NeoNameIndex nameIndex() {
+        if (nameIndex == null || nameIndex.isStale(store))
+            nameIndex = new NeoNameIndex(store);
+        else if (nameIndex.size() < store.size())
+            nameIndex.insertRange(store, nameIndex.size(), store.size());
+        return nameIndex;
+    }
+
+    /**
+     * Method which returns the rows in the current sort order
+     * @return
+     *  The rows in the current sort order, only the first size() entries
+     *  are used
+     */
+    private int[] currentOrder() {
+        if (sortKey == null)
+            return order;
+        return index(sortKey).getRows();
+    }
+
+    /**
+     * Method which starts a query over the database, conditions are added
+     * to it and the results are read by iterating over it
+     * @return
+     *  A query which matches every NearEarthObject until conditions are
+     *  added
+     */
+    public NeoQuery query() {
+        return new NeoQuery(this);
+    }
+
+    /**
+     * Method which starts an aggregation over the database, grouping rows
+     * on one column. A column to measure, a histogram, and a condition are
+     * added to it before it is run.
+     * @param group
+     *  The column rows are grouped on
+     * @return
+     *  An aggregation which counts the rows in each group until more is
+     *  added
+     * @throws IllegalArgumentException
+     *  When group is null
+     */
+    public NeoAggregation aggregate(NeoGroupKey group)
+            throws IllegalArgumentException {
+        return new NeoAggregation(this, group);
+    }
+
+    /**
+     * Method which starts a skyline query over the database, finding the
+     * NearEarthObjects no other one beats on diameter, miss distance, and
+     * absolute magnitude at once. Conditions are added to it before it is
+     * run.
+     * @return
+     *  A skyline over every NearEarthObject until conditions are added
+     */
+    public NeoSkyline skyline() {
+        return new NeoSkyline(this);
+    }
+
+    /**
+     * Method which finds every recorded approach to a body between two
+     * dates, across all NearEarthObjects and not just their closest
+     * approaches. It is a single scan over the approach columns of the
+     * latest published version, so the NearEarthObjects are read-only.
+     * @param orbitingBody
+     *  The body being approached, such as Earth
+     * @param from
+     *  The earliest approach date (inclusive)
+     * @param to
+     *  The latest approach date (inclusive)
+     * @return
+     *  The matching approaches, in date order
+     * @throws IllegalArgumentException
+     *  When an argument is null or from is after to
+     */
+    public List<NeoApproach> approachesTo(String orbitingBody, Date from,
+                                          Date to)
+            throws IllegalArgumentException {
+        if (orbitingBody == null || from == null || to == null
+                || from.after(to))
+            throw new IllegalArgumentException();
+
+        NeoColumnStore store = view().getStore();
+        NeoApproachTable table = store.getApproaches();
+        int[] events = store.findApproaches(orbitingBody, from.getTime(),
+                to.getTime());
+        List<NeoApproach> approaches = new ArrayList<>(events.length);
+        for (int event : events) {
+            approaches.add(new NeoApproach(store.view(table.getRow(event)),
+                    new Date(table.getDate(event)),
+                    table.getMissDistance(event),
+                    store.decodeBody(table.getBodyCode(event))));
+        }
+        approaches.sort(Comparator.comparing(NeoApproach::getApproachDate));
+        return approaches;
+    }
+
+    /**
+     * Method which finds the k NearEarthObjects that come first in a
+     * comparator's order, such as the closest approaches, without sorting
+     * the database. It takes O(n log k) time and O(k) extra memory for
+     * each worker, and large databases are split across all cores.
+     * @param comp
+     *  The comparator which decides which NearEarthObjects come first, it
+     *  may be called from several threads at once
+     * @param k
+     *  The number of NearEarthObjects wanted
+     * @param filter
+     *  A condition every result must meet, or null for no condition, it
+     *  may be called from several threads at once
+     * @return
+     *  At most k NearEarthObjects, in comparator order
+     * @throws IllegalArgumentException
+     *  When comp is null or k is negative
+     */
+    public List<NearEarthObject> topK(Comparator<NearEarthObject> comp,
+                                      int k, Predicate<NearEarthObject> filter)
+            throws IllegalArgumentException {
+        return NeoTopK.select(store, comp, k, filter);
+    }
+
+    /**
+     * Method which finds the k NearEarthObjects most like one by absolute
+     * magnitude, average diameter and miss distance, each measured in
+     * standard deviations. A k-d tree is built the first time and kept up
+     * to date as pages are added, so a query takes O(log n) time.
+     * @param neo
+     *  The NearEarthObject to compare against, its own row is left out of
+     *  the results
+     * @param k
+     *  The number of NearEarthObjects wanted
+     * @return
+     *  At most k NearEarthObjects, most similar first
+     * @throws IllegalArgumentException
+     *  When neo is null or missing an attribute, or k is negative
+     */
+    public List<NearEarthObject> similarTo(NearEarthObject neo, int k)
+            throws IllegalArgumentException {
+        if (neo == null || k < 0)
+            throw new IllegalArgumentException();
+
+        int[] rows = similarity().nearest(neo.getAbsoluteMagnitude(),
+                neo.getAverageDiameter(), neo.getMissDistance(),
+                k == Integer.MAX_VALUE ? k : k + 1);
+        return views(rows, neo.getReferenceID(), k);
+    }
+
+    /**
+     * Method which finds every NearEarthObject within a distance of one by
+     * absolute magnitude, average diameter and miss distance. A distance
+     * of 1 is one standard deviation along a single attribute.
+     * @param neo
+     *  The NearEarthObject to compare against, its own row is left out of
+     *  the results
+     * @param radius
+     *  The largest distance (inclusive)
+     * @return
+     *  The NearEarthObjects within the distance, most similar first
+     * @throws IllegalArgumentException
+     *  When neo is null or missing an attribute, or radius is negative
+     */
+    public List<NearEarthObject> withinDistance(NearEarthObject neo,
+                                                double radius)
+            throws IllegalArgumentException {
+        if (neo == null)
+            throw new IllegalArgumentException();
+
+        int[] rows = similarity().within(neo.getAbsoluteMagnitude(),
+                neo.getAverageDiameter(), neo.getMissDistance(), radius);
+        return views(rows, neo.getReferenceID(), rows.length);
+    }
+
+    /**
+     * Method which finds the NearEarthObjects whose name contains a piece
+     * of text, ignoring case, brackets and punctuation, so "2015 AB" finds
+     * "(2015 AB123)" and "eros" finds "433 Eros (A898 PA)"
+     * @param text
+     *  The text to search for
+     * @param limit
+     *  The most referenceIDs wanted
+     * @return
+     *  The referenceIDs of at most limit NearEarthObjects, the ones whose
+     *  name is closest in length to the text first
+     * @throws IllegalArgumentException
+     *  When text is null or limit is negative
+     */
+    public int[] findNames(String text, int limit)
+            throws IllegalArgumentException {
+        return referenceIDs(nameIndex().containing(store, text, limit));
+    }
+
+    /**
+     * Method which finds the NearEarthObjects whose name is most like a
+     * piece of text, so a designation with a typo still finds its
+     * asteroid. Names are compared by the trigrams they share and must
+     * reach NeoNameIndex.DEFAULT_SIMILARITY.
+     * @param text
+     *  The text to compare the names with
+     * @param limit
+     *  The most referenceIDs wanted
+     * @return
+     *  The referenceIDs of at most limit NearEarthObjects, most similar
+     *  first
+     * @throws IllegalArgumentException
+     *  When text is null or limit is negative
+     */
+    public int[] similarNames(String text, int limit)
+            throws IllegalArgumentException {
+        return referenceIDs(nameIndex().similar(store, text,
+                NeoNameIndex.DEFAULT_SIMILARITY, limit));
+    }
+
+    /**
+     * Method which returns the referenceIDs of rows, in the same order
+     */
+    private int[] referenceIDs(int[] rows) {
+        int[] referenceIDs = new int[rows.length];
+        for (int i = 0; i < rows.length; i++)
+            referenceIDs[i] = store.getReferenceID(rows[i]);
+        return referenceIDs;
+    }
+
+    /**
+     * Method which returns views of rows, leaving out the row of one
+     * referenceID
+     * @return
+     *  At most limit views, in the order of the rows
+     */
+    private List<NearEarthObject> views(int[] rows, int excludedID,
+                                        int limit) {
+        List<NearEarthObject> views = new ArrayList<>(Math.min(rows.length,
+                limit));
+        for (int row : rows) {
+            if (views.size() == limit)
+                break;
+            if (store.getReferenceID(row) != excludedID)
+                views.add(store.view(row));
+        }
+        return views;
+    }
+
+    /**
+     * Getter method for the store which holds the data, used by queries
+     * @return
+     *  The store which holds the data
+     */
+    public NeoColumnStore getStore() {
+        return store;
+    }
+
+    /**
+     * Getter method for the summary of the database. Each asteroid is
+     * added when it is first inserted, since a sketch can't take a value
+     * back out, so rows changed later keep their first values in it. The
+     * summary is the copy published with the latest version, so it never
+     * changes and can be read while another thread adds pages.
+     * @return
+     *  The summary of every asteroid inserted, it must only be read
+     */
+    public NeoSummary getSummary() {
+        return view().getSummary();
     }
 
     /**
-     * Method which sorts the database by the specified comparator
+     * Method which returns the up to date sorted index for a key, used by
+     * queries to find a range of rows without scanning
+     * @param key
+     *  The key of the index
+     * @return
+     *  The index, its rows must not be changed
+     * @throws IllegalArgumentException
+     *  When key is null
+     */
+    public NeoSortedIndex getIndex(NeoSortKey key)
+            throws IllegalArgumentException {
+        if (key == null)
+            throw new IllegalArgumentException();
+
+        return index(key);
+    }
+
+    /**
+     * Method which sorts the database by the specified comparator. Sorting
+     * by one of the comparator classes just switches to that key's index.
      * @param comp
      *  The comparator used to sort the database
      * @throws IllegalArgumentException
@@ -151,7 +958,74 @@ public class NeoDatabase {
         if (comp == null)
             throw new IllegalArgumentException();
 
-        Collections.sort(database, comp);
+        NeoSortKey key = NeoSortKey.forComparator(comp);
+        if (key != null) {
+            index(key);
+            sortKey = key;
+            publish();
+            return;
+        }
+
+        int size = store.size();
+        int[] current = currentOrder();
+        NeoRecordView[] views = new NeoRecordView[size];
+        for (int i = 0; i < size; i++)
+            views[i] = store.view(current[i]);
+        Arrays.sort(views, comp);
+        order = new int[size];
+        for (int i = 0; i < size; i++)
+            order[i] = views[i].getRow();
+        sortKey = null;
+        publish();
+    }
+
+    /**
+     * Method which sorts the database on several comparators, the first
+     * comparator decides the order and each later one only breaks ties
+     * left by the ones before it. Rows which are equal on every comparator
+     * keep their current order. When every comparator is one of the
+     * comparator classes the sort runs on primitive keys in parallel.
+     * @param comp
+     *  The most important comparator
+     * @param thenBy
+     *  The comparators used to break ties, in order of importance
+     * @throws IllegalArgumentException
+     *  If a comparator is null
+     */
+    @SafeVarargs
+    public final void sort(Comparator<NearEarthObject> comp,
+                           Comparator<NearEarthObject>... thenBy)
+            throws IllegalArgumentException {
+        if (comp == null || thenBy == null)
+            throw new IllegalArgumentException();
+        if (thenBy.length == 0) {
+            sort(comp);
+            return;
+        }
+
+        NeoSortKey[] keys = new NeoSortKey[thenBy.length + 1];
+        Comparator<NearEarthObject> combined = comp;
+        keys[0] = NeoSortKey.forComparator(comp);
+        boolean primitive = keys[0] != null;
+        for (int i = 0; i < thenBy.length; i++) {
+            if (thenBy[i] == null)
+                throw new IllegalArgumentException();
+            keys[i + 1] = NeoSortKey.forComparator(thenBy[i]);
+            primitive = primitive && keys[i + 1] != null;
+            combined = combined.thenComparing(thenBy[i]);
+        }
+
+        if (primitive) {
+            int size = store.size();
+            int[] rows = Arrays.copyOf(currentOrder(), size);
+            NeoSortEngine.sort(store, rows, size, keys);
+            order = rows;
+            sortKey = null;
+            publish();
+        }
+        else {
+            sort(combined);
+        }
     }
 
     /**
@@ -159,71 +1033,201 @@ public class NeoDatabase {
      * about the NearEarthObject such as ID, name, missDistance, etc.
      */
     public void printTable() {
-        int size = database.size();
-        String tableHead = String.format("%-8s|%-34s|%-6s|%-10s|" +
-                        "%-8s|%-12s|%-11s|%s\n%S",
-                "   ID", "               Name", " Mag.", " Diameter",
-                " Danger", " Close Date", " Miss Dist", " Orbits",
-                "========================================================="
-                        + "===============================================");
-        System.out.println(tableHead);
-
-        for (int i = 0; i < size; i++) {
-            NearEarthObject cursor = database.get(i);
-            Date cursorDate = cursor.getClosestApproachDate();
-            String fullDate = cursorDate.toString();
-            String month = fullDate.substring(4, 7);
-            String day = fullDate.substring(8, 10);
-            String year = fullDate.substring(24, 28);
-            String monthNum;
-            switch (month) {
-                case "Jan":
-                    monthNum = "01";
-                    break;
-                case "Feb":
-                    monthNum = "02";
-                    break;
-                case "Mar":
-                    monthNum = "03";
-                    break;
-                case "Apr":
-                    monthNum = "04";
-                    break;
-                case "May":
-                    monthNum = "05";
-                    break;
-                case "Jun":
-                    monthNum = "06";
-                    break;
-                case "Jul":
-                    monthNum = "07";
-                    break;
-                case "Aug":
-                    monthNum = "08";
-                    break;
-                case "Sep":
-                    monthNum = "09";
-                    break;
-                case "Oct":
-                    monthNum = "10";
-                    break;
-                case "Nov":
-                    monthNum = "11";
-                    break;
-                case "Dec":
-                    monthNum = "12";
-                    break;
-                default:
-                    monthNum = "69";
+        printTable(0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Method which prints one page of the table
+     * @param offset
+     *  The position of the first NearEarthObject to print
+     * @param limit
+     *  The most NearEarthObjects to print
+     * @throws IllegalArgumentException
+     *  When offset or limit is negative
+     */
+    public void printTable(int offset, int limit)
+            throws IllegalArgumentException {
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out),
+                TABLE_BUFFER_SIZE);
+        try {
+            writeTable(out, offset, limit);
+            out.flush();
+        }
+        catch (IOException ex) {
+            System.out.println("Error, IO exception.");
+        }
+    }
+
+    /**
+     * Method which writes the whole table to a file instead of the console
+     * @param file
+     *  The file the table is written to, it is replaced if it exists
+     * @throws IllegalArgumentException
+     *  When file is null
+     * @throws IOException
+     *  When the file could not be written
+     */
+    public void writeTable(Path file)
+            throws IllegalArgumentException, IOException {
+        if (file == null)
+            throw new IllegalArgumentException();
+
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                Files.newOutputStream(file)), TABLE_BUFFER_SIZE)) {
+            writeTable(out, 0, Integer.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Method which writes one page of the table to a writer, rendered from
+     * the latest published version in its sort order
+     * @param out
+     *  Where the table is written, it is not flushed or closed
+     * @param offset
+     *  The position of the first NearEarthObject to write
+     * @param limit
+     *  The most NearEarthObjects to write
+     * @throws IllegalArgumentException
+     *  When out is null, or offset or limit is negative
+     * @throws IOException
+     *  When the table could not be written
+     */
+    public void writeTable(Writer out, int offset, int limit)
+            throws IllegalArgumentException, IOException {
+        view().writeTable(out, offset, limit);
+    }
+
+    /**
+     * Class which merges parsed pages into the database on referenceID for
+     * one call that adds pages, counting what happened to each asteroid.
+     * New rows are appended, and rows whose data changed are overwritten in
+     * place. The indexes are brought up to date and a new version is
+     * published when it finishes, and also part way through once enough
+     * rows have been merged, a quarter of the database or PUBLISH_ROWS,
+     * whichever is more. Each row added or changed is checked by the rule
+     * engine as it is merged. Every new row is added to the database's
+     * summary, and every asteroid on the pages to the summary in the
+     * report. The name index is always kept up to date, the other indexes
+     * only once they have been built.
+     */
+    private class Ingest {
+        private int firstNewRow;
+        private BitSet changed;
+        private int pages;
+        private int inserted;
+        private int updated;
+        private int unchanged;
+        private int published;
+        private NeoRuleEngine rules;
+        private long now;
+        private NeoSummary loaded;
+        private boolean allApproaches;
+
+        private Ingest() {
+            this(true);
+        }
+
+        /**
+         * Constructor for an ingest whose pages either list every approach
+         * or only each asteroid's closest approach
+         */
+        private Ingest(boolean allApproaches) {
+            this.allApproaches = allApproaches;
+            this.firstNewRow = store.size();
+            this.changed = new BitSet();
+            this.rules = ruleEngine;
+            this.now = System.currentTimeMillis();
+            this.loaded = new NeoSummary();
+        }
+
+        /**
+         * Method which merges a parsed page into the database. If the
+         * database is not sorted by an index the new rows go to the end of
+         * the current sort order.
+         * @param page
+         *  The parsed page
+         */
+        private void merge(NeoColumnStore page) {
+            NeoIntIndex ids = rowsByID();
+            int first = store.size();
+            for (int pageRow = 0; pageRow < page.size(); pageRow++) {
+                loaded.add(page, pageRow);
+                int row = ids.get(page.getReferenceID(pageRow));
+                if (row < 0) {
+                    row = store.addRow(page, pageRow);
+                    ids.put(page.getReferenceID(pageRow), row);
+                    summary.add(store, row);
+                    inserted++;
+                }
+                else if (store.rowEquals(row, page, pageRow,
+                        allApproaches)) {
+                    unchanged++;
+                    continue;
+                }
+                else {
+                    store.replaceRow(row, page, pageRow, allApproaches);
+                    if (row < firstNewRow)
+                        changed.set(row);
+                    updated++;
+                }
+                if (rules != null)
+                    rules.evaluate(store, row, now);
             }
+            pages++;
 
-            String simpleDate = monthNum + "-" + day + "-" + year;
+            int size = store.size();
+            if (sortKey == null) {
+                if (order.length < size)
+                    order = Arrays.copyOf(order,
+                            Math.max(size, order.length * 2));
+                for (int row = first; row < size; row++)
+                    order[row] = row;
+            }
+            if (inserted + updated - published >= Math.max(PUBLISH_ROWS,
+                    view().size() / 4))
+                checkpoint();
+        }
+
+        /**
+         * Method which brings the indexes up to date and publishes a new
+         * version if anything was merged since the last one
+         * @return
+         *  The report of what was merged
+         */
+        private NeoIngestReport finish() {
+            if (inserted + updated > published)
+                checkpoint();
+            return new NeoIngestReport(pages, inserted, updated, unchanged,
+                    loaded);
+        }
 
-            System.out.printf("%-10d%-35s%-7.1f%-11.3f%-9b%-13s%-12.0f%s\n",
-                    cursor.getReferenceID(), cursor.getName(),
-                    cursor.getAbsoluteMagnitude(), cursor.getAverageDiameter(),
-                    cursor.isDangerous(), simpleDate,
-                    cursor.getMissDistance(), cursor.getOrbitingBody());
+        /**
+         * Method which moves the changed rows and merges the new rows into
+         * every index that has been built, so each index is only touched
+         * once per batch, and then publishes a new version
+         */
+        private void checkpoint() {
+            int[] rows = changed.stream().toArray();
+            for (NeoSortKey key : NeoSortKey.values()) {
+                NeoSortedIndex index = indexes[key.ordinal()];
+                if (index == null)
+                    continue;
+                if (!index.isStale(store))
+                    index.reinsert(store, rows, rows.length);
+                index(key);
+            }
+            if (similarity != null) {
+                if (!similarity.isStale(store))
+                    similarity.reinsert(store, rows, rows.length);
+                similarity();
+            }
+            if (nameIndex != null && !nameIndex.isStale(store))
+                nameIndex.reinsert(store, rows, rows.length);
+            nameIndex();
+            changed.clear();
+            firstNewRow = store.size();
+            published = inserted + updated;
+            publish();
         }
     }
 }
@@ -0,0 +1,146 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Class which represents one published version of a NeoDatabase. It holds
+ * a frozen NeoColumnStore, and the sort order and a copy of the summary
+ * the database had when it was published, and never changes afterwards,
+ * so any number of threads can read it without locks while the database
+ * keeps ingesting. The database publishes a new version after each batch
+ * of ingestion and after each sort, readers pick up the latest one with
+ * NeoDatabase.view().
+ * NeoAggregation, NeoSkyline and NeoDatabase.approachesTo read it too.
+ *
+ * liwll
+ */
+public class NeoDatabaseView {
+    private NeoColumnStore store;
+    private int[] order;
+    private NeoSummary summary;
+    private long version;
+
+    /**
+     * Default constructor for a version
+     * @param store
+     *  The frozen store, it must never change
+     * @param order
+     *  The rows in sort order, exactly one entry per row, it must never
+     *  change
+     * @param summary
+     *  The summary of the database when it was published, it must never
+     *  change
+     * @param version
+     *  The number of the version, one higher than the version before it
+     * @throws IllegalArgumentException
+     *  When store, order or summary is null or store and order are
+     *  different sizes
+     */
+    public NeoDatabaseView(NeoColumnStore store, int[] order,
+                           NeoSummary summary, long version)
+            throws IllegalArgumentException {
+        if (store == null || order == null || summary == null
+                || order.length != store.size())
+            throw new IllegalArgumentException();
+
+        this.store = store;
+        this.order = order;
+        this.summary = summary;
+        this.version = version;
+    }
+
+    /**
+     * Getter method for the version number
+     * @return
+     *  The number of the version, higher numbers were published later
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Getter method for the number of NearEarthObjects
+     * @return
+     *  The number of NearEarthObjects in this version
+     */
+    public int size() {
+        return order.length;
+    }
+
+    /**
+     * Method which returns the NearEarthObject at a position in the sort
+     * order of this version. The object is a view of the frozen store, so
+     * its setters throw an IllegalStateException.
+     * @param index
+     *  The position in the sort order
+     * @return
+     *  The NearEarthObject at that position
+     * @throws IllegalArgumentException
+     *  When index is out of bounds
+     */
+    public NearEarthObject get(int index) throws IllegalArgumentException {
+        if (index < 0 || index >= order.length)
+            throw new IllegalArgumentException();
+
+        return store.view(order[index]);
+    }
+
+    /**
+     * Getter method for the frozen store, it must only be read
+     * @return
+     *  The store which holds the data of this version
+     */
+    public NeoColumnStore getStore() {
+        return store;
+    }
+
+    /**
+     * Getter method for the summary, it must only be read
+     * @return
+     *  The summary of the database when this version was published
+     */
+    public NeoSummary getSummary() {
+        return summary;
+    }
+
+    /**
+     * Method which finds the k NearEarthObjects that come first in a
+     * comparator's order, see NeoDatabase.topK
+     * @param comp
+     *  The comparator which decides which NearEarthObjects come first
+     * @param k
+     *  The number of NearEarthObjects wanted
+     * @param filter
+     *  A condition every result must meet, or null for no condition
+     * @return
+     *  At most k NearEarthObjects, in comparator order
+     * @throws IllegalArgumentException
+     *  When comp is null or k is negative
+     */
+    public List<NearEarthObject> topK(Comparator<NearEarthObject> comp,
+                                      int k, Predicate<NearEarthObject> filter)
+            throws IllegalArgumentException {
+        return NeoTopK.select(store, comp, k, filter);
+    }
+
+    /**
+     * Method which writes part of the table of this version in its sort
+     * order
+     * @param out
+     *  Where the table is written, it is not flushed or closed
+     * @param offset
+     *  The position of the first NearEarthObject to write
+     * @param limit
+     *  The most NearEarthObjects to write
+     * @throws IllegalArgumentException
+     *  When out is null, or offset or limit is negative
+     * @throws IOException
+     *  When the table could not be written
+     */
+    public void writeTable(Writer out, int offset, int limit)
+            throws IllegalArgumentException, IOException {
+        new NeoTableRenderer(store).render(out, order, offset, limit);
+    }
+}
@@ -0,0 +1,163 @@
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Class which estimates how many distinct values a stream holds, using a
+ * HyperLogLog sketch. Each value is given as a 64-bit hash, the top bits
+ * of which pick one of 2^precision registers, and the register keeps the
+ * longest run of leading zeros seen in the rest. A histogram of register
+ * values is kept as they change, so an estimate never scans the
+ * registers. Two sketches with the same precision can be merged, giving
+ * the sketch of both streams. With the default precision the estimate is
+ * within about 1% and the sketch takes 16 KiB.
+ *
+ * liwll
+ */
+public class NeoDistinctSketch {
+    public static final int DEFAULT_PRECISION = 14;
+    private static final int MIN_PRECISION = 7;
+    private static final int MAX_PRECISION = 18;
+    private int precision;
+    private byte[] registers;
+    private int[] histogram;
+
+    /**
+     * Default constructor for an empty sketch with the default precision
+     */
+    public NeoDistinctSketch() {
+        this(DEFAULT_PRECISION);
+    }
+
+    /**
+     * Constructor for an empty sketch with a chosen precision
+     * @param precision
+     *  The number of hash bits which pick a register, each one more
+     *  doubles the memory and divides the error by the square root of 2
+     * @throws IllegalArgumentException
+     *  When precision is not between 7 and 18
+     */
+    public NeoDistinctSketch(int precision) throws IllegalArgumentException {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION)
+            throw new IllegalArgumentException();
+
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+        this.histogram = new int[Long.SIZE - precision + 2];
+        this.histogram[0] = registers.length;
+    }
+
+    /**
+     * Method which adds a value to the sketch by its hash, adding the same
+     * hash again changes nothing
+     * @param hash
+     *  A well mixed 64-bit hash of the value, such as
+     *  NeoColumnStore.hashName
+     */
+    public void add(long hash) {
+        int register = (int) (hash >>> (Long.SIZE - precision));
+        int zeros = Long.numberOfLeadingZeros(
+                (hash << precision) | (1L << (precision - 1))) + 1;
+        raise(register, zeros);
+    }
+
+    /**
+     * Method which merges another sketch into this one, so this sketch
+     * describes the values added to both. The other sketch is unchanged.
+     * @param other
+     *  The sketch to merge in
+     * @throws IllegalArgumentException
+     *  When other is null or has a different precision
+     */
+    public void merge(NeoDistinctSketch other)
+            throws IllegalArgumentException {
+        if (other == null || other.precision != precision)
+            throw new IllegalArgumentException();
+
+        for (int register = 0; register < registers.length; register++)
+            raise(register, other.registers[register]);
+    }
+
+    /**
+     * Method which copies the sketch
+     * @return
+     *  A sketch with the same precision and registers
+     */
+    public NeoDistinctSketch copy() {
+        NeoDistinctSketch copy = new NeoDistinctSketch(precision);
+        copy.merge(this);
+        return copy;
+    }
+
+    /**
+     * Getter method for the precision
+     * @return
+     *  The number of hash bits which pick a register
+     */
+    public int getPrecision() {
+        return precision;
+    }
+
+    /**
+     * Method which estimates the number of distinct values added, using
+     * linear counting while many registers are still empty
+     * @return
+     *  The estimated number of distinct values
+     */
+    public long estimate() {
+        double m = registers.length;
+        double sum = 0;
+        for (int value = 0; value < histogram.length; value++)
+            sum += histogram[value] * Math.scalb(1.0, -value);
+        double estimate = 0.7213 / (1 + 1.079 / m) * m * m / sum;
+        if (estimate <= 2.5 * m && histogram[0] > 0)
+            estimate = m * Math.log(m / histogram[0]);
+        return Math.round(estimate);
+    }
+
+    /**
+     * Method which writes the sketch as its precision followed by one
+     * byte per register
+     * @param out
+     *  Where the sketch is written
+     * @throws IOException
+     *  When the sketch could not be written
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(precision);
+        out.write(registers);
+    }
+
+    /**
+     * Method which reads a sketch written by writeTo
+     * @param in
+     *  The buffer positioned at the sketch, it is left positioned right
+     *  after it
+     * @return
+     *  The sketch
+     * @throws IllegalArgumentException
+     *  When the buffer does not hold a valid sketch
+     */
+    public static NeoDistinctSketch readFrom(ByteBuffer in)
+            throws IllegalArgumentException {
+        NeoDistinctSketch sketch = new NeoDistinctSketch(in.getInt());
+        byte[] registers = new byte[sketch.registers.length];
+        in.get(registers);
+        for (int register = 0; register < registers.length; register++) {
+            if (registers[register] < 0
+                    || registers[register] >= sketch.histogram.length)
+                throw new IllegalArgumentException();
+            sketch.raise(register, registers[register]);
+        }
+        return sketch;
+    }
+
+    private void raise(int register, int value) {
+        int old = registers[register];
+        if (value <= old)
+            return;
+        histogram[old]--;
+        histogram[value]++;
+        registers[register] = (byte) value;
+    }
+}
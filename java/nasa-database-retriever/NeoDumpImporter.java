@@ -0,0 +1,283 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Class which imports one of NASA's full NEO dumps, a JSON file with the
+ * same layout as a browse page but with every asteroid in it. The file is
+ * memory mapped and scanned once for record boundaries, only tracking
+ * nesting and strings, and the near_earth_objects array is cut into chunks
+ * of whole records. The chunks are parsed in parallel, each from its own
+ * mapping, and handed on in file order. Only a few chunks are in flight at
+ * a time, so the memory the import uses does not grow with the file.
+ *
+ * liwll
+ */
+public class NeoDumpImporter {
+    public static final int DEFAULT_CHUNK_BYTES = 8 * 1024 * 1024;
+    private static final long SCAN_WINDOW_BYTES = 64L * 1024 * 1024;
+    private static final byte[] ARRAY_NAME =
+            "near_earth_objects".getBytes(StandardCharsets.UTF_8);
+    private Path file;
+    private int threads;
+    private int chunkBytes;
+
+    /**
+     * Default constructor for an importer
+     * @param file
+     *  The dump file
+     * @param threads
+     *  The number of chunks parsed at the same time
+     * @throws IllegalArgumentException
+     *  When file is null or threads is less than 1
+     */
+    public NeoDumpImporter(Path file, int threads)
+            throws IllegalArgumentException {
+        this(file, threads, DEFAULT_CHUNK_BYTES);
+    }
+
+    /**
+     * Constructor for an importer with its own chunk size
+     * @param file
+     *  The dump file
+     * @param threads
+     *  The number of chunks parsed at the same time
+     * @param chunkBytes
+     *  Roughly how many bytes of records go in each chunk, a chunk always
+     *  ends on a record boundary
+     * @throws IllegalArgumentException
+     *  When file is null or threads or chunkBytes is less than 1
+     */
+    public NeoDumpImporter(Path file, int threads, int chunkBytes)
+            throws IllegalArgumentException {
+        if (file == null || threads < 1 || chunkBytes < 1)
+            throw new IllegalArgumentException();
+
+        this.file = file;
+        this.threads = threads;
+        this.chunkBytes = chunkBytes;
+    }
+
+    /**
+     * Method which imports the dump, handing each parsed chunk to a sink in
+     * file order on the calling thread
+     * @param sink
+     *  What each parsed chunk is given to
+     * @param listener
+     *  What is told about progress after each chunk, or null
+     * @throws IllegalArgumentException
+     *  When sink is null
+     * @throws IOException
+     *  When the file could not be read
+     * @throws NeoFormatException
+     *  When the file is not a dump, or a record is not in the expected
+     *  format
+     */
+    public void run(Consumer<NeoColumnStore> sink, NeoImportListener listener)
+            throws IllegalArgumentException, IOException, NeoFormatException {
+        if (sink == null)
+            throw new IllegalArgumentException();
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            new Scan(channel, pool, sink, listener).run();
+        }
+        finally {
+            pool.shutdownNow();
+            try {
+                pool.awaitTermination(1, TimeUnit.MINUTES);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Class which walks the file once, finding the records of the
+     * near_earth_objects array and cutting them into chunks
+     */
+    private class Scan {
+        private FileChannel channel;
+        private ExecutorService pool;
+        private Consumer<NeoColumnStore> sink;
+        private NeoImportListener listener;
+        private Deque<Future<NeoColumnStore>> inFlight;
+        private Deque<Long> chunkEnds;
+        private long size;
+        private long records;
+        private int depth;
+        private boolean inString;
+        private boolean escaped;
+        private boolean collecting;
+        private int nameLength;
+        private boolean nameMatched;
+        private int arrayDepth;
+        private long chunkStart;
+        private long lastRecordEnd;
+
+        private Scan(FileChannel channel, ExecutorService pool,
+                     Consumer<NeoColumnStore> sink,
+                     NeoImportListener listener) throws IOException {
+            this.channel = channel;
+            this.pool = pool;
+            this.sink = sink;
+            this.listener = listener;
+            this.inFlight = new ArrayDeque<>();
+            this.chunkEnds = new ArrayDeque<>();
+            this.size = channel.size();
+            this.arrayDepth = -1;
+            this.chunkStart = -1;
+        }
+
+        private void run() throws IOException, NeoFormatException {
+            long position = 0;
+            boolean done = false;
+            while (position < size && !done) {
+                MappedByteBuffer window = channel.map(
+                        FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(SCAN_WINDOW_BYTES, size - position));
+                int length = window.limit();
+                for (int i = 0; i < length && !done; i++)
+                    done = step(window.get(i), position + i);
+                position += length;
+            }
+
+            if (arrayDepth < 0)
+                throw new NeoFormatException("Missing near_earth_objects.");
+            if (!done)
+                throw new NeoFormatException("Dump ends inside the array.");
+            while (!inFlight.isEmpty())
+                drain();
+        }
+
+        /**
+         * Method which moves the scan over one byte
+         * @return
+         *  True once the end of the array has been reached
+         */
+        private boolean step(byte b, long offset)
+                throws IOException, NeoFormatException {
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                }
+                else if (b == '\\') {
+                    escaped = true;
+                }
+                else if (b == '"') {
+                    inString = false;
+                    nameMatched = collecting
+                            && nameLength == ARRAY_NAME.length;
+                }
+                else if (collecting) {
+                    if (nameLength < ARRAY_NAME.length
+                            && ARRAY_NAME[nameLength] == b)
+                        nameLength++;
+                    else
+                        collecting = false;
+                }
+                return false;
+            }
+
+            switch (b) {
+                case '"':
+                    inString = true;
+                    collecting = arrayDepth < 0 && depth == 1;
+                    nameLength = 0;
+                    nameMatched = false;
+                    return false;
+                case '{':
+                case '[':
+                    depth++;
+                    if (b == '{' && nameMatched)
+                        throw new NeoFormatException(
+                                "near_earth_objects is not an array.");
+                    if (b == '[' && nameMatched) {
+                        arrayDepth = depth;
+                        nameMatched = false;
+                    }
+                    else if (b == '{' && depth == arrayDepth + 1
+                            && chunkStart < 0) {
+                        chunkStart = offset;
+                    }
+                    return false;
+                case '}':
+                case ']':
+                    depth--;
+                    if (b == '}' && depth == arrayDepth) {
+                        lastRecordEnd = offset + 1;
+                        if (lastRecordEnd - chunkStart >= chunkBytes)
+                            submit();
+                    }
+                    else if (b == ']' && depth == arrayDepth - 1) {
+                        if (chunkStart >= 0)
+                            submit();
+                        return true;
+                    }
+                    return false;
+                case ':':
+                case ',':
+                case ' ':
+                case '\n':
+                case '\r':
+                case '\t':
+                    return false;
+                default:
+                    if (nameMatched)
+                        throw new NeoFormatException(
+                                "near_earth_objects is not an array.");
+                    return false;
+            }
+        }
+
+        private void submit() throws IOException, NeoFormatException {
+            long start = chunkStart;
+            long end = lastRecordEnd;
+            chunkStart = -1;
+            if (inFlight.size() >= threads * 2)
+                drain();
+
+            inFlight.add(pool.submit(() -> new NeoPageParser(channel.map(
+                    FileChannel.MapMode.READ_ONLY, start, end - start))
+                    .parseRecords()));
+            chunkEnds.add(end);
+        }
+
+        private void drain() throws IOException, NeoFormatException {
+            NeoColumnStore chunk;
+            try {
+                chunk = inFlight.remove().get();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Import interrupted.", e);
+            }
+            catch (ExecutionException e) {
+                if (e.getCause() instanceof NeoFormatException)
+                    throw (NeoFormatException) e.getCause();
+                if (e.getCause() instanceof IOException)
+                    throw (IOException) e.getCause();
+                throw new IOException(e.getCause());
+            }
+
+            sink.accept(chunk);
+            records += chunk.size();
+            long end = chunkEnds.remove();
+            if (listener != null)
+                listener.progress(end, size, records);
+        }
+    }
+}
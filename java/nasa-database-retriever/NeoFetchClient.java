@@ -0,0 +1,256 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class which downloads pages from NASA's API asynchronously. One
+ * HttpClient is shared by every request, so connections are kept alive
+ * and reused, and over HTTP/2 many requests share one connection. Every
+ * request takes a token from a NeoTokenBucket before it is sent, which
+ * keeps the client under the API's rate limit. Requests which fail with
+ * an IO error, 429 Too Many Requests, or a 5xx status are retried after a
+ * jittered exponential backoff, and never before the Retry-After the
+ * server asked for. A Retry-After longer than MAX_RETRY_AFTER is not
+ * waited out, the response is returned as it is. Parsing is handed to a
+ * separate pool sized for the CPU, so parsing one page overlaps with
+ * downloading the next.
+ *
+ * liwll
+ */
+public class NeoFetchClient {
+    public static final double DEFAULT_REQUESTS_PER_SECOND = 1000.0 / 3600;
+    public static final int DEFAULT_BURST = 60;
+    public static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    public static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+    public static final int MAX_ATTEMPTS = 5;
+    public static final Duration MAX_RETRY_AFTER = Duration.ofMinutes(5);
+    private static final long BASE_BACKOFF_MILLIS = 500;
+    private static final long MAX_BACKOFF_MILLIS = 30 * 1000;
+    private static final int TOO_MANY_REQUESTS = 429;
+    private HttpClient client;
+    private NeoTokenBucket bucket;
+    private ExecutorService parsePool;
+
+    /**
+     * Default constructor for a client which stays within the rate limit
+     * of a registered API key
+     */
+    public NeoFetchClient() {
+        this(DEFAULT_REQUESTS_PER_SECOND, DEFAULT_BURST,
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor for a client with its own rate limit and parse pool. The
+     * pool's threads are daemons, so the client never has to be closed.
+     * @param requestsPerSecond
+     *  The steady rate requests are sent at
+     * @param burst
+     *  The number of requests which can be sent back to back
+     * @param parseThreads
+     *  The number of threads pages are parsed on
+     * @throws IllegalArgumentException
+     *  When a limit is not positive
+     */
+    public NeoFetchClient(double requestsPerSecond, int burst,
+                          int parseThreads) throws IllegalArgumentException {
+        if (parseThreads < 1)
+            throw new IllegalArgumentException();
+
+        this.bucket = new NeoTokenBucket(requestsPerSecond, burst);
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(CONNECT_TIMEOUT)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+        this.parsePool = Executors.newFixedThreadPool(parseThreads, task -> {
+            Thread thread = new Thread(task, "neo-parse");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Method which sends a GET request, pacing and retrying it. Responses
+     * which are not worth retrying, such as 304 or 404, are returned as
+     * they are for the caller to look at.
+     * @param url
+     *  The URL to request
+     * @param headers
+     *  Extra request headers, such as If-None-Match
+     * @return
+     *  The final response, or an exception once every attempt failed
+     * @throws IllegalArgumentException
+     *  When url or headers is null or the URL is invalid
+     */
+    public CompletableFuture<HttpResponse<byte[]>> fetch(String url,
+            Map<String, String> headers) throws IllegalArgumentException {
+        if (url == null || headers == null)
+            throw new IllegalArgumentException();
+
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+                .timeout(REQUEST_TIMEOUT)
+                .GET();
+        headers.forEach(builder::header);
+        return send(builder.build(), 1);
+    }
+
+    /**
+     * Method which downloads the body of a URL, anything but 200 OK is
+     * treated as a failure
+     * @param url
+     *  The URL to request
+     * @return
+     *  The body, or an IOException once every attempt failed
+     * @throws IllegalArgumentException
+     *  When url is null or invalid
+     */
+    public CompletableFuture<byte[]> fetchBody(String url)
+            throws IllegalArgumentException {
+        return fetch(url, Map.of()).thenApply(response -> {
+            if (response.statusCode() != 200)
+                throw new CompletionException(new IOException(
+                        "HTTP status " + response.statusCode() + "."));
+            return response.body();
+        });
+    }
+
+    /**
+     * Method which downloads a page and parses it on the parse pool
+     * @param url
+     *  The URL of the page
+     * @return
+     *  A store holding the page's asteroids
+     * @throws IllegalArgumentException
+     *  When url is null or invalid
+     */
+    public CompletableFuture<NeoColumnStore> fetchPage(String url)
+            throws IllegalArgumentException {
+        return fetchBody(url).thenCompose(this::parse);
+    }
+
+    /**
+     * Method which parses a downloaded page on the parse pool
+     * @param payload
+     *  The raw page
+     * @return
+     *  A store holding the page's asteroids, or an IOException or
+     *  NeoFormatException if it could not be parsed
+     * @throws IllegalArgumentException
+     *  When payload is null
+     */
+    public CompletableFuture<NeoColumnStore> parse(byte[] payload)
+            throws IllegalArgumentException {
+        if (payload == null)
+            throw new IllegalArgumentException();
+
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return NeoPageParser.parse(new ByteArrayInputStream(payload));
+            }
+            catch (IOException | NeoFormatException e) {
+                throw new CompletionException(e);
+            }
+        }, parsePool);
+    }
+
+    private CompletableFuture<HttpResponse<byte[]>> send(HttpRequest request,
+                                                         int attempt) {
+        long wait = bucket.reserve();
+        return CompletableFuture.supplyAsync(() -> request,
+                        CompletableFuture.delayedExecutor(wait,
+                                TimeUnit.NANOSECONDS))
+                .thenCompose(r -> client.sendAsync(r,
+                        HttpResponse.BodyHandlers.ofByteArray()))
+                .handle((response, error) -> {
+                    boolean retry = error != null
+                            ? attempt < MAX_ATTEMPTS
+                            : attempt < MAX_ATTEMPTS
+                            && isRetryable(response.statusCode());
+                    long delay = retry ? backoffMillis(attempt, response) : -1;
+                    if (delay >= 0) {
+                        return CompletableFuture.supplyAsync(() -> request,
+                                        CompletableFuture.delayedExecutor(
+                                                delay, TimeUnit.MILLISECONDS))
+                                .thenCompose(r -> send(r, attempt + 1));
+                    }
+                    if (error != null)
+                        return CompletableFuture
+                                .<HttpResponse<byte[]>>failedFuture(error);
+                    return CompletableFuture.completedFuture(response);
+                })
+                .thenCompose(next -> next);
+    }
+
+    private static boolean isRetryable(int status) {
+        return status == TOO_MANY_REQUESTS || status >= 500;
+    }
+
+    /**
+     * Method which picks how long to wait before another attempt, a random
+     * time up to an exponentially growing cap, but never less than the
+     * server's Retry-After. Only the random part is capped.
+     * @return
+     *  The delay in milliseconds, or -1 if the server asked for a wait
+     *  longer than MAX_RETRY_AFTER
+     */
+    private static long backoffMillis(int attempt,
+                                      HttpResponse<byte[]> response) {
+        long cap = Math.min(MAX_BACKOFF_MILLIS,
+                BASE_BACKOFF_MILLIS << Math.min(attempt - 1, 16));
+        long delay = ThreadLocalRandom.current().nextLong(cap + 1);
+        if (response == null)
+            return delay;
+
+        String retryAfter = response.headers().firstValue("Retry-After")
+                .orElse(null);
+        if (retryAfter == null)
+            return delay;
+        long wait = retryAfterMillis(retryAfter.trim());
+        if (wait > MAX_RETRY_AFTER.toMillis())
+            return -1;
+        return Math.max(delay, wait);
+    }
+
+    /**
+     * Method which reads a Retry-After header, given either in seconds or
+     * as an HTTP date
+     * @return
+     *  The wait in milliseconds, Long.MAX_VALUE if it is too long to count,
+     *  or 0 if the header can't be read
+     */
+    private static long retryAfterMillis(String retryAfter) {
+        try {
+            long seconds = Long.parseLong(retryAfter);
+            if (seconds > Long.MAX_VALUE / 1000)
+                return Long.MAX_VALUE;
+            return Math.max(0, seconds * 1000);
+        }
+        catch (NumberFormatException e) {
+            // Not a number of seconds, so it should be an HTTP date
+        }
+        try {
+            ZonedDateTime date = ZonedDateTime.parse(retryAfter,
+                    DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0, date.toInstant().toEpochMilli()
+                    - System.currentTimeMillis());
+        }
+        catch (DateTimeParseException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+/**
+ * This class is a custom exception thrown when
+ * a page of NASA's data is not in the expected JSON format.
+ *
+ * liwll
+ */
+public class NeoFormatException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    public NeoFormatException() {}
+
+    public NeoFormatException(String message) {
+        super(message);
+    }
+}
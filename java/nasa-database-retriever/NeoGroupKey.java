@@ -0,0 +1,64 @@
+import java.time.Instant;
+import java.time.ZoneId;
+
+/**
+ * This class is an enum for the columns an aggregation can group rows on.
+ * Each key turns a row into a small int code, and turns a code back into
+ * the text shown for its group.
+ *
+ * liwll
+ */
+public enum NeoGroupKey {
+    YEAR {
+        public int codeOf(NeoColumnStore store, int row) {
+            return Instant.ofEpochMilli(store.getApproachDate(row))
+                    .atZone(ZoneId.systemDefault()).getYear();
+        }
+
+        public String labelOf(NeoColumnStore store, int code) {
+            return Integer.toString(code);
+        }
+    },
+    ORBITING_BODY {
+        public int codeOf(NeoColumnStore store, int row) {
+            return store.getOrbitingBodyCode(row);
+        }
+
+        public String labelOf(NeoColumnStore store, int code) {
+            return store.decodeBody(code);
+        }
+    },
+    DANGEROUS {
+        public int codeOf(NeoColumnStore store, int row) {
+            return store.isDangerous(row) ? 1 : 0;
+        }
+
+        public String labelOf(NeoColumnStore store, int code) {
+            return Boolean.toString(code == 1);
+        }
+    };
+
+    /**
+     * Method which finds the group a row of a store belongs to. YEAR is
+     * the year of the closest approach in the system time zone, the same
+     * zone the table is printed in.
+     * @param store
+     *  The store which holds the row
+     * @param row
+     *  The row to read
+     * @return
+     *  The code of the row's group
+     */
+    public abstract int codeOf(NeoColumnStore store, int row);
+
+    /**
+     * Method which turns a group code back into text
+     * @param store
+     *  The store the code was read from
+     * @param code
+     *  A code returned by codeOf
+     * @return
+     *  The text shown for the group
+     */
+    public abstract String labelOf(NeoColumnStore store, int code);
+}
@@ -0,0 +1,18 @@
+/**
+ * Interface for objects which want to hear how far a NeoDumpImporter has
+ * got through a dump file.
+ *
+ * liwll
+ */
+public interface NeoImportListener {
+    /**
+     * Method which is called after each chunk of the dump has been merged
+     * @param bytesDone
+     *  How many bytes of the file have been imported
+     * @param totalBytes
+     *  The size of the file
+     * @param records
+     *  How many asteroids have been imported
+     */
+    void progress(long bytesDone, long totalBytes, long records);
+}
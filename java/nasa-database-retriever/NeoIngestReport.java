@@ -0,0 +1,124 @@
+/**
+ * Class which reports what one call that adds pages to a NeoDatabase did.
+ * Each asteroid on the loaded pages was either inserted as a new row,
+ * merged into the row which already had its referenceID, or left alone
+ * because that row already held the same data. The report also holds a
+ * NeoSummary of every asteroid on the loaded pages.
+ *
+ * liwll
+ */
+public class NeoIngestReport {
+    private int pages;
+    private int inserted;
+    private int updated;
+    private int unchanged;
+    private NeoSummary summary;
+
+    /**
+     * Default constructor for a report
+     * @param pages
+     *  The number of pages which were loaded
+     * @param inserted
+     *  The number of asteroids added as new rows
+     * @param updated
+     *  The number of existing rows which were changed
+     * @param unchanged
+     *  The number of asteroids which were already in the database
+     * @throws IllegalArgumentException
+     *  When a count is negative
+     */
+    public NeoIngestReport(int pages, int inserted, int updated,
+                           int unchanged) throws IllegalArgumentException {
+        if (pages < 0 || inserted < 0 || updated < 0 || unchanged < 0)
+            throw new IllegalArgumentException();
+
+        this.pages = pages;
+        this.inserted = inserted;
+        this.updated = updated;
+        this.unchanged = unchanged;
+        this.summary = new NeoSummary();
+    }
+
+    /**
+     * Constructor for a report with a summary of the loaded asteroids
+     * @param pages
+     *  The number of pages which were loaded
+     * @param inserted
+     *  The number of asteroids added as new rows
+     * @param updated
+     *  The number of existing rows which were changed
+     * @param unchanged
+     *  The number of asteroids which were already in the database
+     * @param summary
+     *  The summary of every asteroid on the loaded pages
+     * @throws IllegalArgumentException
+     *  When a count is negative or summary is null
+     */
+    public NeoIngestReport(int pages, int inserted, int updated,
+                           int unchanged, NeoSummary summary)
+            throws IllegalArgumentException {
+        this(pages, inserted, updated, unchanged);
+        if (summary == null)
+            throw new IllegalArgumentException();
+
+        this.summary = summary;
+    }
+
+    /**
+     * Getter method for the number of pages which were loaded
+     * @return
+     *  The number of pages which were loaded
+     */
+    public int getPages() {
+        return pages;
+    }
+
+    /**
+     * Getter method for the number of asteroids added as new rows
+     * @return
+     *  The number of asteroids added as new rows
+     */
+    public int getInserted() {
+        return inserted;
+    }
+
+    /**
+     * Getter method for the number of existing rows which were changed
+     * @return
+     *  The number of existing rows which were changed
+     */
+    public int getUpdated() {
+        return updated;
+    }
+
+    /**
+     * Getter method for the number of asteroids which were already in the
+     * database with the same data
+     * @return
+     *  The number of asteroids which were unchanged
+     */
+    public int getUnchanged() {
+        return unchanged;
+    }
+
+    /**
+     * Getter method for the summary of the loaded asteroids, for a single
+     * page this is the summary of that page
+     * @return
+     *  The summary of every asteroid on the loaded pages, whether it was
+     *  inserted, updated, or unchanged
+     */
+    public NeoSummary getSummary() {
+        return summary;
+    }
+
+    /**
+     * Method which returns the report as one line of text
+     * @return
+     *  The counts in the report
+     */
+    public String toString() {
+        return String.format("%d pages: %d inserted, %d updated, " +
+                "%d unchanged", pages, inserted, updated, unchanged);
+    }
+}
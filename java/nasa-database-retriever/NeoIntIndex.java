@@ -0,0 +1,128 @@
+import java.util.Arrays;
+
+/**
+ * Class which maps int keys to rows with open addressing on two primitive
+ * arrays, so looking up a reference ID never boxes it or allocates. Slots
+ * are probed linearly and the table doubles before it gets half full, which
+ * keeps every lookup O(1) on average.
+ *
+ * liwll
+ */
+public class NeoIntIndex {
+    private static final int EMPTY = -1;
+    private static final int INITIAL_CAPACITY = 16;
+    private int[] keys;
+    private int[] values;
+    private int size;
+
+    /**
+     * Default constructor for an empty index
+     */
+    public NeoIntIndex() {
+        this(INITIAL_CAPACITY / 2);
+    }
+
+    /**
+     * Constructor for an index which can hold a number of keys before it
+     * has to grow
+     * @param expected
+     *  The number of keys expected
+     * @throws IllegalArgumentException
+     *  When expected is negative
+     */
+    public NeoIntIndex(int expected) throws IllegalArgumentException {
+        if (expected < 0)
+            throw new IllegalArgumentException();
+
+        int capacity = INITIAL_CAPACITY;
+        while (capacity < expected * 2L && capacity < (1 << 30))
+            capacity <<= 1;
+        this.keys = new int[capacity];
+        this.values = new int[capacity];
+        Arrays.fill(values, EMPTY);
+    }
+
+    /**
+     * Method which finds the row stored for a key
+     * @param key
+     *  The key being searched for
+     * @return
+     *  The row stored for the key, or -1 if there is none
+     */
+    public int get(int key) {
+        int mask = keys.length - 1;
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            if (values[slot] == EMPTY)
+                return EMPTY;
+            if (keys[slot] == key)
+                return values[slot];
+        }
+    }
+
+    /**
+     * Method which stores the row for a key, replacing any row already
+     * stored for it
+     * @param key
+     *  The key
+     * @param value
+     *  The row to store
+     * @return
+     *  The row which was stored for the key before, or -1 if there was none
+     * @throws IllegalArgumentException
+     *  When value is negative
+     */
+    public int put(int key, int value) throws IllegalArgumentException {
+        if (value < 0)
+            throw new IllegalArgumentException();
+
+        if ((size + 1) * 2L > keys.length)
+            grow();
+        int mask = keys.length - 1;
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            if (values[slot] == EMPTY) {
+                keys[slot] = key;
+                values[slot] = value;
+                size++;
+                return EMPTY;
+            }
+            if (keys[slot] == key) {
+                int previous = values[slot];
+                values[slot] = value;
+                return previous;
+            }
+        }
+    }
+
+    /**
+     * Getter method for the number of keys in the index
+     * @return
+     *  The number of keys in the index
+     */
+    public int size() {
+        return size;
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        Arrays.fill(values, EMPTY);
+
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] == EMPTY)
+                continue;
+            int slot = hash(oldKeys[i]) & mask;
+            while (values[slot] != EMPTY)
+                slot = (slot + 1) & mask;
+            keys[slot] = oldKeys[i];
+            values[slot] = oldValues[i];
+        }
+    }
+}
@@ -0,0 +1,595 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Class which reads JSON one token at a time straight from a byte stream.
+ * Nothing is turned into an object unless it is asked for, names are
+ * matched as bytes, and numbers are parsed from the bytes they arrive in.
+ *
+ * liwll
+ */
+public class NeoJsonReader {
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+    private InputStream in;
+    private ByteBuffer source;
+    private byte[] buffer;
+    private int position;
+    private int limit;
+    private byte[] scratch;
+    private int scratchLength;
+
+    /**
+     * Constructor for a reader which pulls from a stream
+     * @param in
+     *  The stream which contains the JSON text
+     */
+    public NeoJsonReader(InputStream in) {
+        this.in = in;
+        this.buffer = new byte[BUFFER_SIZE];
+        this.scratch = new byte[256];
+    }
+
+    /**
+     * Constructor for a reader which pulls from a buffer, such as part of
+     * a memory mapped file
+     * @param source
+     *  The buffer which contains the JSON text between its position and
+     *  limit, it is consumed as the reader goes
+     */
+    public NeoJsonReader(ByteBuffer source) {
+        this.source = source;
+        this.buffer = new byte[BUFFER_SIZE];
+        this.scratch = new byte[256];
+    }
+
+    /**
+     * Method which consumes the start of an object
+     * @throws IOException
+     *  When the stream could not be read
+     * @throws NeoFormatException
+     *  When the next token is not '{'
+     */
+    public void beginObject() throws IOException, NeoFormatException {
+        expect('{');
+    }
+
+    /**
+     * Method which consumes the end of an object
+     * @throws IOException
+     *  When the stream could not be read
+     * @throws NeoFormatException
+     *  When the next token is not '}'
+     */
+    public void endObject() throws IOException, NeoFormatException {
+        expect('}');
+    }
+
+    /**
+     * Method which consumes the start of an array
+     * @throws IOException
+     *  When the stream could not be read
+     * @throws NeoFormatException
+     *  When the next token is not '['
+     */
+    public void beginArray() throws IOException, NeoFormatException {
+        expect('[');
+    }
+
+    /**
+     * Method which consumes the end of an array
+     * @throws IOException
+     *  When the stream could not be read
+     * @throws NeoFormatException
+     *  When the next token is not ']'
+     */
+    public void endArray() throws IOException, NeoFormatException {
+        expect(']');
+    }
+
+    /**
+     * Method which checks whether the current object or array has another
+     * member, skipping the comma in front of it
+     * @return
+     *  True if there is another member, false if the container has ended
+     * @throws IOException
+     *  When the stream could not be read
+     */
+    public boolean hasNext() throws IOException {
+        int next = peek();
+        if (next == ',') {
+            position++;
+            next = peek();
+        }
+        return next != '}' && next != ']' && next != -1;
+    }
+
+    /**
+     * Method which checks whether the next value is the literal null
+     * @return
+     *  True if the next value is null
+     * @throws IOException
+     *  When the stream could not be read
+     */
+    public boolean peekNull() throws IOException {
+        return peek() == 'n';
+    }
+
+    /**
+     * Method which reads the name of the next member of an object and
+     * matches it against a set of names without creating a String
+     * @param names
+     *  The names being looked for, encoded as UTF-8
+     * @return
+     *  The index of the matching name, or -1 if no name matched
+     * @throws IOException
+     *  When the stream could not be read
+     * @throws NeoFormatException
+     *  When the next token is not a name
+     */
+    public int nextName(byte[][] names)
+            throws IOException, NeoFormatException {
+        readStringBytes();
+        expect(':');
+
+        for (int i = 0; i < names.length; i++) {
+            if (scratchEquals(names[i]))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Method which reads a string value
+     * @return
+     *  The string, or null if the value was the literal null
+     * @throws IOException
+     *  When the stream could not be read
+     * @throws NeoFormatException
+     *  When the next value is not a string
+     */
+    public String nextString() throws IOException, NeoFormatException {
+        if (peekNull()) {
+            skipLiteral("null");
+            return null;
+        }
+        readStringBytes();
+        return new String(scratch, 0, scratchLength, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Method which reads a string value and returns the cached copy when it
+     * is the same as the cached one, so repeated values are not duplicated
+     * @param cached
+     *  The string returned for the previous value
+     * @return
+     *  The cached string if it is equal to the value, or a new string
+     * @throws IOException
+     *  When the stream could not be read
+     * @throws NeoFormatException
+     *  When the next value is not a string
+     */
+    public String nextString(String cached)
+            throws IOException, NeoFormatException {
+        if (peekNull()) {
+            skipLiteral("null");
+            return null;
+        }
+        readStringBytes();
+        if (cached != null && cached.length() == scratchLength) {
+            boolean same = true;
+            for (int i = 0; i < scratchLength && same; i++)
+                same = cached.charAt(i) == scratch[i];
+            if (same)
+                return cached;
+        }
+        return new String(scratch, 0, scratchLength, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Method which reads a boolean value
+     * @return
+     *  The boolean value
+     * @throws IOException
+     *  When the stream could not be read
+     * @throws NeoFormatException
+     *  When the next value is not a boolean
+     */
+    public boolean nextBoolean() throws IOException, NeoFormatException {
+        if (peek() == 't') {
+            skipLiteral("true");
+            return true;
+        }
+        skipLiteral("false");
+        return false;
+    }
+
+    /**
+     * Method which reads a number, which NASA sometimes sends as a string
+     * @return
+     *  The number, or NaN if the value was the literal null
+     * @throws IOException
+     *  When the stream could not be read
+     * @throws NeoFormatException
+     *  When the next value is not a number
+     */
+    public double nextDouble() throws IOException, NeoFormatException {
+        if (peekNull()) {
+            skipLiteral("null");
+            return Double.NaN;
+        }
+        readNumberBytes();
+
+        int i = 0;
+        boolean negative = scratch[0] == '-';
+        if (negative)
+            i++;
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean exact = true;
+        boolean fraction = false;
+        int wholeDigits = 0;
+        int fractionDigits = 0;
+        for (; i < scratchLength; i++) {
+            byte b = scratch[i];
+            if (b == '.') {
+                if (fraction || wholeDigits == 0)
+                    throw new NeoFormatException("Malformed number.");
+                fraction = true;
+            }
+            else if (b >= '0' && b <= '9') {
+                if (fraction)
+                    fractionDigits++;
+                else
+                    wholeDigits++;
+                if (mantissa != 0 || b != '0')
+                    digits++;
+                if (digits <= 18) {
+                    mantissa = mantissa * 10 + (b - '0');
+                    if (fraction)
+                        exponent--;
+                }
+                else {
+                    exact = false;
+                    if (!fraction)
+                        exponent++;
+                }
+            }
+            else if (b == 'e' || b == 'E') {
+                exponent += parseExponent(i + 1);
+                break;
+            }
+            else {
+                throw new NeoFormatException("Malformed number.");
+            }
+        }
+        if (wholeDigits == 0 || (fraction && fractionDigits == 0))
+            throw new NeoFormatException("Malformed number.");
+
+        double value;
+        if (exact && mantissa < (1L << 53) && exponent >= -22
+                && exponent <= 22) {
+            value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent]
+                    : mantissa * POWERS_OF_TEN[exponent];
+        }
+        else {
+            try {
+                value = Double.parseDouble(new String(scratch, 0,
+                        scratchLength, StandardCharsets.US_ASCII));
+                return value;
+            }
+            catch (NumberFormatException e) {
+                throw new NeoFormatException("Malformed number.");
+            }
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Method which reads a whole number, which NASA sometimes sends as
+     * a string
+     * @return
+     *  The number
+     * @throws IOException
+     *  When the stream could not be read
+     * @throws NeoFormatException
+     *  When the next value is not a whole number
+     */
+    public long nextLong() throws IOException, NeoFormatException {
+        readNumberBytes();
+
+        int i = 0;
+        boolean negative = scratch[0] == '-';
+        if (negative)
+            i++;
+        if (i == scratchLength || scratchLength - i > 18)
+            throw new NeoFormatException("Malformed whole number.");
+        long value = 0;
+        for (; i < scratchLength; i++) {
+            byte b = scratch[i];
+            if (b < '0' || b > '9')
+                throw new NeoFormatException("Malformed whole number.");
+            value = value * 10 + (b - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Method which reads a whole number that fits in an int
+     * @return
+     *  The number
+     * @throws IOException
+     *  When the stream could not be read
+     * @throws NeoFormatException
+     *  When the next value is not a whole number or is out of range
+     */
+    public int nextInt() throws IOException, NeoFormatException {
+        long value = nextLong();
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)
+            throw new NeoFormatException("Number out of range.");
+        return (int) value;
+    }
+
+    /**
+     * Method which skips the next value, including everything nested in it
+     * @throws IOException
+     *  When the stream could not be read
+     * @throws NeoFormatException
+     *  When the value is malformed
+     */
+    public void skipValue() throws IOException, NeoFormatException {
+        int depth = 0;
+        do {
+            int next = peek();
+            switch (next) {
+                case '{':
+                case '[':
+                    position++;
+                    depth++;
+                    break;
+                case '}':
+                case ']':
+                    position++;
+                    depth--;
+                    break;
+                case ',':
+                case ':':
+                    position++;
+                    break;
+                case '"':
+                    skipString();
+                    break;
+                case -1:
+                    throw new NeoFormatException("Unexpected end of input.");
+                default:
+                    while (next != -1 && next != ',' && next != '}'
+                            && next != ']' && next > ' ') {
+                        position++;
+                        next = fill() ? buffer[position] : -1;
+                    }
+            }
+        } while (depth > 0);
+    }
+
+    private int parseExponent(int start) throws NeoFormatException {
+        int i = start;
+        boolean negative = false;
+        if (i < scratchLength && (scratch[i] == '-' || scratch[i] == '+')) {
+            negative = scratch[i] == '-';
+            i++;
+        }
+        if (i == scratchLength)
+            throw new NeoFormatException("Malformed number.");
+        int exponent = 0;
+        for (; i < scratchLength; i++) {
+            byte b = scratch[i];
+            if (b < '0' || b > '9')
+                throw new NeoFormatException("Malformed number.");
+            exponent = Math.min(exponent * 10 + (b - '0'), 10000);
+        }
+        return negative ? -exponent : exponent;
+    }
+
+    private void readNumberBytes() throws IOException, NeoFormatException {
+        boolean quoted = peek() == '"';
+        if (quoted)
+            position++;
+
+        scratchLength = 0;
+        while (fill()) {
+            byte b = buffer[position];
+            if ((b >= '0' && b <= '9') || b == '-' || b == '+' || b == '.'
+                    || b == 'e' || b == 'E') {
+                appendScratch(b);
+                position++;
+            }
+            else {
+                break;
+            }
+        }
+        if (scratchLength == 0)
+            throw new NeoFormatException("Expected a number.");
+        if (quoted)
+            expect('"');
+    }
+
+    private void readStringBytes() throws IOException, NeoFormatException {
+        expect('"');
+        scratchLength = 0;
+        while (true) {
+            if (!fill())
+                throw new NeoFormatException("Unterminated string.");
+            byte b = buffer[position++];
+            if (b == '"')
+                return;
+            if (b != '\\') {
+                appendScratch(b);
+                continue;
+            }
+
+            if (!fill())
+                throw new NeoFormatException("Unterminated string.");
+            byte escaped = buffer[position++];
+            switch (escaped) {
+                case 'b':
+                    appendScratch((byte) '\b');
+                    break;
+                case 'f':
+                    appendScratch((byte) '\f');
+                    break;
+                case 'n':
+                    appendScratch((byte) '\n');
+                    break;
+                case 'r':
+                    appendScratch((byte) '\r');
+                    break;
+                case 't':
+                    appendScratch((byte) '\t');
+                    break;
+                case 'u':
+                    appendCodePoint(readUnicodeEscape());
+                    break;
+                default:
+                    appendScratch(escaped);
+            }
+        }
+    }
+
+    private int readUnicodeEscape() throws IOException, NeoFormatException {
+        int high = readHex();
+        if (!Character.isHighSurrogate((char) high))
+            return high;
+
+        if (!fill() || buffer[position] != '\\')
+            return high;
+        position++;
+        if (!fill() || buffer[position] != 'u')
+            throw new NeoFormatException("Malformed escape.");
+        position++;
+        int low = readHex();
+        if (!Character.isLowSurrogate((char) low))
+            throw new NeoFormatException("Malformed escape.");
+        return Character.toCodePoint((char) high, (char) low);
+    }
+
+    private int readHex() throws IOException, NeoFormatException {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            if (!fill())
+                throw new NeoFormatException("Malformed escape.");
+            int digit = Character.digit(buffer[position++], 16);
+            if (digit < 0)
+                throw new NeoFormatException("Malformed escape.");
+            value = value * 16 + digit;
+        }
+        return value;
+    }
+
+    private void appendCodePoint(int codePoint) {
+        if (codePoint < 0x80) {
+            appendScratch((byte) codePoint);
+        }
+        else if (codePoint < 0x800) {
+            appendScratch((byte) (0xC0 | (codePoint >> 6)));
+            appendScratch((byte) (0x80 | (codePoint & 0x3F)));
+        }
+        else if (codePoint < 0x10000) {
+            appendScratch((byte) (0xE0 | (codePoint >> 12)));
+            appendScratch((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+            appendScratch((byte) (0x80 | (codePoint & 0x3F)));
+        }
+        else {
+            appendScratch((byte) (0xF0 | (codePoint >> 18)));
+            appendScratch((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+            appendScratch((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+            appendScratch((byte) (0x80 | (codePoint & 0x3F)));
+        }
+    }
+
+    private void appendScratch(byte b) {
+        if (scratchLength == scratch.length) {
+            byte[] larger = new byte[scratch.length * 2];
+            System.arraycopy(scratch, 0, larger, 0, scratchLength);
+            scratch = larger;
+        }
+        scratch[scratchLength++] = b;
+    }
+
+    private boolean scratchEquals(byte[] name) {
+        if (name.length != scratchLength)
+            return false;
+        for (int i = 0; i < scratchLength; i++) {
+            if (scratch[i] != name[i])
+                return false;
+        }
+        return true;
+    }
+
+    private void skipString() throws IOException, NeoFormatException {
+        position++;
+        while (true) {
+            if (!fill())
+                throw new NeoFormatException("Unterminated string.");
+            byte b = buffer[position++];
+            if (b == '"')
+                return;
+            if (b == '\\') {
+                if (!fill())
+                    throw new NeoFormatException("Unterminated string.");
+                position++;
+            }
+        }
+    }
+
+    private void skipLiteral(String literal)
+            throws IOException, NeoFormatException {
+        peek();
+        for (int i = 0; i < literal.length(); i++) {
+            if (!fill() || buffer[position] != literal.charAt(i))
+                throw new NeoFormatException("Expected " + literal + ".");
+            position++;
+        }
+    }
+
+    private void expect(char token) throws IOException, NeoFormatException {
+        if (peek() != token)
+            throw new NeoFormatException("Expected '" + token + "'.");
+        position++;
+    }
+
+    private int peek() throws IOException {
+        while (fill()) {
+            byte b = buffer[position];
+            if (b != ' ' && b != '\n' && b != '\r' && b != '\t')
+                return b;
+            position++;
+        }
+        return -1;
+    }
+
+    private boolean fill() throws IOException {
+        if (position < limit)
+            return true;
+        if (source != null) {
+            int read = Math.min(source.remaining(), buffer.length);
+            source.get(buffer, 0, read);
+            position = 0;
+            limit = read;
+            return read > 0;
+        }
+        if (in == null)
+            return false;
+
+        int read = in.read(buffer, 0, buffer.length);
+        while (read == 0)
+            read = in.read(buffer, 0, buffer.length);
+        position = 0;
+        limit = Math.max(read, 0);
+        return read > 0;
+    }
+}
@@ -0,0 +1,547 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Class which indexes the rows of a NeoColumnStore on their physical
+ * attributes, absolute magnitude, average diameter and miss distance, so
+ * the rows most like a given one are found without a scan. Each attribute
+ * is normalized by the mean and standard deviation of the rows at the last
+ * full build, so the three count equally towards the distance between two
+ * rows. Rows are kept in balanced k-d trees laid out in arrays, split on
+ * the median of the attribute with the widest spread, and a query only
+ * visits the branches that could hold a closer row.
+ * Rows added or changed later are built into a small tree of their own.
+ * Whenever a tree is no larger than the one being built it is folded into
+ * it, so there are O(log n) trees and each row is rebuilt O(log n) times.
+ * A changed row's entry in its old tree is skipped until that tree is
+ * next rebuilt. Rows with a missing attribute are left out.
+ *
+ * liwll
+ */
+public class NeoKdTree {
+    public static final int DIMENSIONS = 3;
+    private static final int LEAF_SIZE = 8;
+    private double[] means;
+    private double[] scales;
+    private List<Tree> trees;
+    private int[] owners;
+    private int nextTreeID;
+    private int size;
+    private long updateCount;
+
+    /**
+     * Default constructor for an index, it starts out covering every row
+     * already in the store
+     * @param store
+     *  The store being indexed
+     * @throws IllegalArgumentException
+     *  When store is null
+     */
+    public NeoKdTree(NeoColumnStore store) throws IllegalArgumentException {
+        if (store == null)
+            throw new IllegalArgumentException();
+
+        build(store);
+    }
+
+    /**
+     * Method which adds rows that were added to the end of the store to
+     * the index
+     * @param store
+     *  The store being indexed
+     * @param fromRow
+     *  The first new row
+     * @param toRow
+     *  One past the last new row
+     */
+    public void insertRange(NeoColumnStore store, int fromRow, int toRow) {
+        int added = toRow - fromRow;
+        if (added <= 0)
+            return;
+
+        int[] batch = new int[added];
+        for (int i = 0; i < added; i++)
+            batch[i] = fromRow + i;
+        size = toRow;
+        insert(store, batch, added);
+    }
+
+    /**
+     * Method which moves rows whose attributes were changed in place. Their
+     * old entries are skipped and they are added again as new rows.
+     * @param store
+     *  The store being indexed
+     * @param changed
+     *  The changed rows, each one at most once, all already in the index
+     * @param count
+     *  The number of changed rows at the front of the array
+     */
+    public void reinsert(NeoColumnStore store, int[] changed, int count) {
+        if (count <= 0)
+            return;
+
+        insert(store, Arrays.copyOf(changed, count), count);
+    }
+
+    /**
+     * Method which checks whether rows were changed through their setters
+     * since the index was built, in which case it must be built again
+     * @param store
+     *  The store being indexed
+     * @return
+     *  True if the index is out of date
+     */
+    public boolean isStale(NeoColumnStore store) {
+        return store.getUpdateCount() != updateCount;
+    }
+
+    /**
+     * Getter method for the number of store rows the index covers
+     * @return
+     *  One past the last row the index has seen
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Method which finds the k rows nearest to a point, after each of its
+     * attributes is normalized the same way as the rows
+     * @param absoluteMagnitude
+     *  The absolute magnitude of the point
+     * @param averageDiameter
+     *  The average diameter of the point (km)
+     * @param missDistance
+     *  The miss distance of the point
+     * @param k
+     *  The number of rows wanted
+     * @return
+     *  At most k rows, nearest first
+     * @throws IllegalArgumentException
+     *  When an attribute is not a number or k is negative
+     */
+    public int[] nearest(double absoluteMagnitude, double averageDiameter,
+                         double missDistance, int k)
+            throws IllegalArgumentException {
+        if (k < 0)
+            throw new IllegalArgumentException();
+
+        Search search = new Search(normalize(absoluteMagnitude,
+                averageDiameter, missDistance), k);
+        if (k > 0) {
+            for (Tree tree : trees)
+                nearest(tree, 0, tree.rows.length, search);
+        }
+        return search.sorted();
+    }
+
+    /**
+     * Method which finds every row within a normalized distance of a point.
+     * A distance of 1 is one standard deviation along a single attribute.
+     * @param absoluteMagnitude
+     *  The absolute magnitude of the point
+     * @param averageDiameter
+     *  The average diameter of the point (km)
+     * @param missDistance
+     *  The miss distance of the point
+     * @param radius
+     *  The largest distance from the point (inclusive)
+     * @return
+     *  The rows within the distance, nearest first
+     * @throws IllegalArgumentException
+     *  When an attribute or the radius is not a number, or the radius is
+     *  negative
+     */
+    public int[] within(double absoluteMagnitude, double averageDiameter,
+                        double missDistance, double radius)
+            throws IllegalArgumentException {
+        if (!(radius >= 0))
+            throw new IllegalArgumentException();
+
+        Search search = new Search(normalize(absoluteMagnitude,
+                averageDiameter, missDistance), 0);
+        for (Tree tree : trees)
+            within(tree, 0, tree.rows.length, radius * radius, search);
+        return search.sorted();
+    }
+
+    /**
+     * Method which builds the index from scratch as a single tree, working
+     * out the normalization again from every row
+     */
+    private void build(NeoColumnStore store) {
+        size = store.size();
+        updateCount = store.getUpdateCount();
+        owners = new int[Math.max(size, 16)];
+        Arrays.fill(owners, -1);
+        trees = new ArrayList<>();
+
+        double[] sums = new double[DIMENSIONS];
+        double[] squares = new double[DIMENSIONS];
+        int[] rows = new int[size];
+        int count = 0;
+        double[] point = new double[DIMENSIONS];
+        for (int row = 0; row < size; row++) {
+            if (!attributes(store, row, point))
+                continue;
+            rows[count++] = row;
+            for (int d = 0; d < DIMENSIONS; d++) {
+                sums[d] += point[d];
+                squares[d] += point[d] * point[d];
+            }
+        }
+
+        means = new double[DIMENSIONS];
+        scales = new double[DIMENSIONS];
+        for (int d = 0; d < DIMENSIONS; d++) {
+            means[d] = count > 0 ? sums[d] / count : 0;
+            double variance = count > 0
+                    ? squares[d] / count - means[d] * means[d] : 0;
+            scales[d] = variance > 0 ? 1 / Math.sqrt(variance) : 1;
+        }
+        trees.add(newTree(store, rows, count));
+    }
+
+    /**
+     * Method which builds a batch of rows into a new tree, folding in every
+     * tree that is no larger. When that would fold in every tree the index
+     * is built from scratch instead.
+     */
+    private void insert(NeoColumnStore store, int[] batch, int count) {
+        if (owners.length < size)
+            growOwners(size);
+        for (int i = 0; i < count; i++)
+            owners[batch[i]] = -1;
+
+        int entries = count;
+        int folded = trees.size();
+        while (folded > 0 && trees.get(folded - 1).rows.length <= entries)
+            entries += trees.get(--folded).rows.length;
+        if (folded == 0) {
+            build(store);
+            return;
+        }
+
+        int[] rows = new int[entries];
+        int kept = 0;
+        double[] point = new double[DIMENSIONS];
+        for (int i = 0; i < count; i++) {
+            if (attributes(store, batch[i], point))
+                rows[kept++] = batch[i];
+        }
+        while (trees.size() > folded) {
+            Tree tree = trees.remove(trees.size() - 1);
+            for (int row : tree.rows) {
+                if (owners[row] == tree.id)
+                    rows[kept++] = row;
+            }
+        }
+        trees.add(newTree(store, rows, kept));
+    }
+
+    /**
+     * Method which builds a tree over rows, reading their attributes from
+     * the store, and makes it the owner of those rows
+     */
+    private Tree newTree(NeoColumnStore store, int[] rows, int count) {
+        Tree tree = new Tree(nextTreeID++, Arrays.copyOf(rows, count));
+        double[] point = new double[DIMENSIONS];
+        for (int i = 0; i < count; i++) {
+            attributes(store, tree.rows[i], point);
+            for (int d = 0; d < DIMENSIONS; d++)
+                tree.points[i * DIMENSIONS + d] =
+                        (point[d] - means[d]) * scales[d];
+            owners[tree.rows[i]] = tree.id;
+        }
+        split(tree, 0, count);
+        return tree;
+    }
+
+    /**
+     * Method which arranges a range of a tree so its middle entry is the
+     * median on the widest attribute, with smaller entries before it and
+     * larger ones after, and then does the same for each half
+     */
+    private static void split(Tree tree, int lo, int hi) {
+        while (hi - lo > LEAF_SIZE) {
+            int dimension = 0;
+            double widest = -1;
+            for (int d = 0; d < DIMENSIONS; d++) {
+                double min = Double.POSITIVE_INFINITY;
+                double max = Double.NEGATIVE_INFINITY;
+                for (int i = lo; i < hi; i++) {
+                    double value = tree.points[i * DIMENSIONS + d];
+                    min = Math.min(min, value);
+                    max = Math.max(max, value);
+                }
+                if (max - min > widest) {
+                    widest = max - min;
+                    dimension = d;
+                }
+            }
+
+            int mid = (lo + hi) >>> 1;
+            select(tree, lo, hi, mid, dimension);
+            tree.splits[mid] = (byte) dimension;
+            split(tree, lo, mid);
+            lo = mid + 1;
+        }
+    }
+
+    /**
+     * Method which moves the entry that belongs at a position on one
+     * attribute there, quickselect style
+     */
+    private static void select(Tree tree, int lo, int hi, int target,
+                               int dimension) {
+        double[] points = tree.points;
+        hi--;
+        while (lo < hi) {
+            double pivot = points[((lo + hi) >>> 1) * DIMENSIONS + dimension];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (points[i * DIMENSIONS + dimension] < pivot)
+                    i++;
+                while (points[j * DIMENSIONS + dimension] > pivot)
+                    j--;
+                if (i <= j)
+                    tree.swap(i++, j--);
+            }
+            if (target <= j)
+                hi = j;
+            else if (target >= i)
+                lo = i;
+            else
+                return;
+        }
+    }
+
+    private void nearest(Tree tree, int lo, int hi, Search search) {
+        if (hi - lo <= LEAF_SIZE) {
+            for (int i = lo; i < hi; i++)
+                search.offer(tree, i);
+            return;
+        }
+
+        int mid = (lo + hi) >>> 1;
+        int dimension = tree.splits[mid];
+        double difference = search.point[dimension]
+                - tree.points[mid * DIMENSIONS + dimension];
+        search.offer(tree, mid);
+        if (difference < 0) {
+            nearest(tree, lo, mid, search);
+            if (difference * difference < search.bound())
+                nearest(tree, mid + 1, hi, search);
+        }
+        else {
+            nearest(tree, mid + 1, hi, search);
+            if (difference * difference < search.bound())
+                nearest(tree, lo, mid, search);
+        }
+    }
+
+    private void within(Tree tree, int lo, int hi, double bound,
+                        Search search) {
+        if (hi - lo <= LEAF_SIZE) {
+            for (int i = lo; i < hi; i++)
+                search.collect(tree, i, bound);
+            return;
+        }
+
+        int mid = (lo + hi) >>> 1;
+        int dimension = tree.splits[mid];
+        double difference = search.point[dimension]
+                - tree.points[mid * DIMENSIONS + dimension];
+        search.collect(tree, mid, bound);
+        if (difference <= 0 || difference * difference <= bound)
+            within(tree, lo, mid, bound, search);
+        if (difference >= 0 || difference * difference <= bound)
+            within(tree, mid + 1, hi, bound, search);
+    }
+
+    private double[] normalize(double absoluteMagnitude,
+                               double averageDiameter, double missDistance)
+            throws IllegalArgumentException {
+        double[] point = {absoluteMagnitude, averageDiameter, missDistance};
+        for (int d = 0; d < DIMENSIONS; d++) {
+            if (Double.isNaN(point[d]))
+                throw new IllegalArgumentException();
+            point[d] = (point[d] - means[d]) * scales[d];
+        }
+        return point;
+    }
+
+    /**
+     * Method which reads the attributes of a row
+     * @return
+     *  False if the row is missing one of them
+     */
+    private static boolean attributes(NeoColumnStore store, int row,
+                                      double[] point) {
+        point[0] = store.getAbsoluteMagnitude(row);
+        point[1] = store.getAverageDiameter(row);
+        point[2] = store.getMissDistance(row);
+        return !Double.isNaN(point[0]) && !Double.isNaN(point[1])
+                && !Double.isNaN(point[2]);
+    }
+
+    private void growOwners(int capacity) {
+        int length = owners.length;
+        owners = Arrays.copyOf(owners, Math.max(capacity, length * 2));
+        Arrays.fill(owners, length, owners.length, -1);
+    }
+
+    /**
+     * Class for one tree, its rows and their normalized points are kept in
+     * tree order with the split attribute of each inner node
+     */
+    private static class Tree {
+        private int id;
+        private int[] rows;
+        private double[] points;
+        private byte[] splits;
+
+        private Tree(int id, int[] rows) {
+            this.id = id;
+            this.rows = rows;
+            this.points = new double[rows.length * DIMENSIONS];
+            this.splits = new byte[rows.length];
+        }
+
+        private void swap(int i, int j) {
+            int row = rows[i];
+            rows[i] = rows[j];
+            rows[j] = row;
+            for (int d = 0; d < DIMENSIONS; d++) {
+                double value = points[i * DIMENSIONS + d];
+                points[i * DIMENSIONS + d] = points[j * DIMENSIONS + d];
+                points[j * DIMENSIONS + d] = value;
+            }
+        }
+    }
+
+    /**
+     * Class for the state of one query, a bounded max-heap of the nearest
+     * rows for k nearest, or every row found for a radius
+     */
+    private class Search {
+        private double[] point;
+        private int k;
+        private int[] rows;
+        private double[] distances;
+        private int count;
+
+        private Search(double[] point, int k) {
+            this.point = point;
+            this.k = k;
+            this.rows = new int[Math.min(Math.max(k, 16), 1 << 16)];
+            this.distances = new double[rows.length];
+        }
+
+        private double distance(Tree tree, int i) {
+            double sum = 0;
+            for (int d = 0; d < DIMENSIONS; d++) {
+                double difference = point[d]
+                        - tree.points[i * DIMENSIONS + d];
+                sum += difference * difference;
+            }
+            return sum;
+        }
+
+        /**
+         * Method which returns the squared distance a row must beat to be
+         * one of the k nearest
+         */
+        private double bound() {
+            return count < k ? Double.POSITIVE_INFINITY : distances[0];
+        }
+
+        private void offer(Tree tree, int i) {
+            int row = tree.rows[i];
+            if (owners[row] != tree.id)
+                return;
+            double distance = distance(tree, i);
+            if (count < k) {
+                if (count == rows.length)
+                    grow();
+                rows[count] = row;
+                distances[count] = distance;
+                siftUp(count++);
+            }
+            else if (distance < distances[0]) {
+                rows[0] = row;
+                distances[0] = distance;
+                siftDown(0, count);
+            }
+        }
+
+        private void collect(Tree tree, int i, double bound) {
+            int row = tree.rows[i];
+            if (owners[row] != tree.id)
+                return;
+            double distance = distance(tree, i);
+            if (distance > bound)
+                return;
+            if (count == rows.length)
+                grow();
+            rows[count] = row;
+            distances[count] = distance;
+            siftUp(count++);
+        }
+
+        /**
+         * Method which empties the heap from the back, so the rows come
+         * out nearest first
+         */
+        private int[] sorted() {
+            int[] result = new int[count];
+            for (int end = count - 1; end >= 0; end--) {
+                result[end] = rows[0];
+                rows[0] = rows[end];
+                distances[0] = distances[end];
+                siftDown(0, end);
+            }
+            return result;
+        }
+
+        private void grow() {
+            rows = Arrays.copyOf(rows, count * 2);
+            distances = Arrays.copyOf(distances, count * 2);
+        }
+
+        private boolean above(int i, int j) {
+            return distances[i] > distances[j]
+                    || distances[i] == distances[j] && rows[i] > rows[j];
+        }
+
+        private void siftUp(int i) {
+            while (i > 0 && above(i, (i - 1) / 2)) {
+                swap(i, (i - 1) / 2);
+                i = (i - 1) / 2;
+            }
+        }
+
+        private void siftDown(int i, int end) {
+            while (2 * i + 1 < end) {
+                int child = 2 * i + 1;
+                if (child + 1 < end && above(child + 1, child))
+                    child++;
+                if (!above(child, i))
+                    return;
+                swap(i, child);
+                i = child;
+            }
+        }
+
+        private void swap(int i, int j) {
+            int row = rows[i];
+            rows[i] = rows[j];
+            rows[j] = row;
+            double distance = distances[i];
+            distances[i] = distances[j];
+            distances[j] = distance;
+        }
+    }
+}
@@ -0,0 +1,351 @@
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Class which stores one name per row as bytes in a single shared array,
+ * instead of one String object per row. Names are almost always plain
+ * ASCII, so they are stored as Latin-1, one byte per character. A name
+ * with a character Latin-1 cannot hold is stored as UTF-8 and flagged.
+ * Each row only keeps the offset and length of its bytes. A name which is
+ * replaced leaves its old bytes behind, and the array is compacted once
+ * more than half of it is dead. Names are decoded when they are asked for.
+ * An arena can be shared with a read-only copy, which sees the names as
+ * they were when it was made.
+ *
+ * liwll
+ */
+public class NeoNameArena {
+    private static final int UTF8 = 1 << 31;
+    private static final int LENGTH_MASK = ~UTF8;
+    private static final int COMPACT_MIN_DEAD = 1 << 16;
+    private static final int INITIAL_CAPACITY = 64;
+    private byte[] bytes;
+    private int used;
+    private int dead;
+    private int[] offsets;
+    private int[] lengths;
+    private int rows;
+    private boolean shared;
+
+    /**
+     * Default constructor for an empty arena
+     */
+    public NeoNameArena() {
+        this.bytes = new byte[INITIAL_CAPACITY * 16];
+        this.offsets = new int[INITIAL_CAPACITY];
+        this.lengths = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Method which sets the name of a row, a row one past the last adds a
+     * row
+     * @param row
+     *  The row to set
+     * @param name
+     *  The name of the row
+     * @throws IllegalArgumentException
+     *  When name is null or the row is beyond the next row
+     */
+    public void set(int row, String name) throws IllegalArgumentException {
+        if (name == null || row < 0 || row > rows)
+            throw new IllegalArgumentException();
+
+        int length = name.length();
+        boolean latin1 = true;
+        for (int i = 0; i < length && latin1; i++)
+            latin1 = name.charAt(i) <= 0xFF;
+
+        if (latin1) {
+            int offset = reserve(row, length);
+            for (int i = 0; i < length; i++)
+                bytes[offset + i] = (byte) name.charAt(i);
+            lengths[row] = length;
+        }
+        else {
+            byte[] encoded = name.getBytes(StandardCharsets.UTF_8);
+            int offset = reserve(row, encoded.length);
+            System.arraycopy(encoded, 0, bytes, offset, encoded.length);
+            lengths[row] = encoded.length | UTF8;
+        }
+    }
+
+    /**
+     * Method which sets the name of a row to the name of a row in another
+     * arena, copying its bytes without decoding them
+     * @param row
+     *  The row to set, a row one past the last adds a row
+     * @param other
+     *  The arena which holds the name
+     * @param otherRow
+     *  The row of the other arena
+     * @throws IllegalArgumentException
+     *  When other is null or a row does not exist
+     */
+    public void copy(int row, NeoNameArena other, int otherRow)
+            throws IllegalArgumentException {
+        if (other == null || row < 0 || row > rows || otherRow < 0
+                || otherRow >= other.rows)
+            throw new IllegalArgumentException();
+
+        int length = other.lengths[otherRow] & LENGTH_MASK;
+        int from = other.offsets[otherRow];
+        byte[] source = other.bytes;
+        int offset = reserve(row, length);
+        System.arraycopy(source, from, bytes, offset, length);
+        lengths[row] = other.lengths[otherRow];
+    }
+
+    /**
+     * Method which decodes the name of a row
+     * @param row
+     *  The row to read
+     * @return
+     *  The name of the row
+     * @throws IllegalArgumentException
+     *  When the row does not exist
+     */
+    public String get(int row) throws IllegalArgumentException {
+        checkRow(row);
+        int length = lengths[row] & LENGTH_MASK;
+        return new String(bytes, offsets[row], length,
+                (lengths[row] & UTF8) == 0 ? StandardCharsets.ISO_8859_1
+                        : StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Method which appends the name of a row to a StringBuilder without
+     * creating a String for it when it is stored as Latin-1
+     * @param row
+     *  The row to read
+     * @param out
+     *  Where the name is appended
+     * @throws IllegalArgumentException
+     *  When out is null or the row does not exist
+     */
+    public void appendTo(int row, StringBuilder out)
+            throws IllegalArgumentException {
+        if (out == null)
+            throw new IllegalArgumentException();
+        checkRow(row);
+
+        if ((lengths[row] & UTF8) != 0) {
+            out.append(get(row));
+            return;
+        }
+        int end = offsets[row] + lengths[row];
+        for (int i = offsets[row]; i < end; i++)
+            out.append((char) (bytes[i] & 0xFF));
+    }
+
+    /**
+     * Method which checks whether a row has the same name as a row of
+     * another arena, comparing their bytes
+     * @param row
+     *  The row of this arena
+     * @param other
+     *  The arena which holds the other row
+     * @param otherRow
+     *  The row of the other arena
+     * @return
+     *  True if the names are equal
+     * @throws IllegalArgumentException
+     *  When other is null or a row does not exist
+     */
+    public boolean nameEquals(int row, NeoNameArena other, int otherRow)
+            throws IllegalArgumentException {
+        if (other == null)
+            throw new IllegalArgumentException();
+        checkRow(row);
+        other.checkRow(otherRow);
+
+        if (lengths[row] != other.lengths[otherRow])
+            return false;
+        int length = lengths[row] & LENGTH_MASK;
+        return Arrays.equals(bytes, offsets[row], offsets[row] + length,
+                other.bytes, other.offsets[otherRow],
+                other.offsets[otherRow] + length);
+    }
+
+    /**
+     * Method which hashes the name of a row from its bytes, without
+     * decoding it. Equal names always have equal hashes, since a name is
+     * always stored the same way.
+     * @param row
+     *  The row to read
+     * @return
+     *  A well mixed 64-bit hash of the name
+     * @throws IllegalArgumentException
+     *  When the row does not exist
+     */
+    public long hash(int row) throws IllegalArgumentException {
+        checkRow(row);
+        long hash = 0xCBF29CE484222325L ^ lengths[row];
+        int end = offsets[row] + (lengths[row] & LENGTH_MASK);
+        for (int i = offsets[row]; i < end; i++)
+            hash = (hash ^ (bytes[i] & 0xFF)) * 0x100000001B3L;
+        hash = (hash ^ (hash >>> 33)) * 0xFF51AFD7ED558CCDL;
+        hash = (hash ^ (hash >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return hash ^ (hash >>> 33);
+    }
+
+    /**
+     * Method which returns a copy of the arena which shares its arrays, for
+     * a frozen NeoColumnStore. Names added later are written past the end
+     * the copy can see, and the first time a name is replaced afterwards
+     * this arena copies its offsets and lengths, so the copy is never
+     * changed.
+     * @return
+     *  A copy of the arena, it must only be read
+     */
+    public NeoNameArena share() {
+        NeoNameArena copy = new NeoNameArena();
+        copy.bytes = bytes;
+        copy.used = used;
+        copy.dead = dead;
+        copy.offsets = offsets;
+        copy.lengths = lengths;
+        copy.rows = rows;
+        copy.shared = true;
+        shared = true;
+        return copy;
+    }
+
+    /**
+     * Getter method for the number of rows
+     * @return
+     *  The number of rows with a name
+     */
+    public int size() {
+        return rows;
+    }
+
+    /**
+     * Getter method for the bytes the names take up, not counting the
+     * per-row offsets and lengths
+     * @return
+     *  The number of bytes held by live names
+     */
+    public long getByteSize() {
+        return used - dead;
+    }
+
+    /**
+     * Method which writes the arena as a row count, each row's length with
+     * its UTF-8 flag, and the live bytes in row order
+     * @param out
+     *  Where the arena is written
+     * @throws IOException
+     *  When the arena could not be written
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(rows);
+        for (int row = 0; row < rows; row++)
+            out.writeInt(lengths[row]);
+        out.writeInt(used - dead);
+        for (int row = 0; row < rows; row++)
+            out.write(bytes, offsets[row], lengths[row] & LENGTH_MASK);
+    }
+
+    /**
+     * Method which reads an arena written by writeTo, the bytes are copied
+     * out of the buffer in one bulk operation
+     * @param in
+     *  The buffer positioned at the arena, it is left positioned right
+     *  after it
+     * @return
+     *  The arena
+     * @throws IllegalArgumentException
+     *  When the buffer does not hold a valid arena
+     */
+    public static NeoNameArena readFrom(ByteBuffer in)
+            throws IllegalArgumentException {
+        NeoNameArena arena = new NeoNameArena();
+        int rows = in.getInt();
+        if (rows < 0 || rows > in.remaining() / Integer.BYTES)
+            throw new IllegalArgumentException();
+        int capacity = Math.max(rows, INITIAL_CAPACITY);
+        arena.rows = rows;
+        arena.lengths = new int[capacity];
+        in.asIntBuffer().get(arena.lengths, 0, rows);
+        in.position(in.position() + rows * Integer.BYTES);
+
+        arena.offsets = new int[capacity];
+        long offset = 0;
+        for (int row = 0; row < rows; row++) {
+            arena.offsets[row] = (int) offset;
+            offset += arena.lengths[row] & LENGTH_MASK;
+        }
+
+        arena.used = in.getInt();
+        if (arena.used < 0 || arena.used > in.remaining()
+                || offset != arena.used)
+            throw new IllegalArgumentException();
+        arena.bytes = new byte[Math.max(arena.used, INITIAL_CAPACITY * 16)];
+        in.get(arena.bytes, 0, arena.used);
+        return arena;
+    }
+
+    /**
+     * Method which makes room for a row's new bytes at the end of the
+     * array, marking its old bytes as dead
+     * @return
+     *  The offset the bytes go at
+     */
+    private int reserve(int row, int length) {
+        if (row == rows) {
+            if (rows == offsets.length) {
+                offsets = Arrays.copyOf(offsets, rows * 2);
+                lengths = Arrays.copyOf(lengths, rows * 2);
+            }
+            lengths[row] = 0;
+            rows++;
+        }
+        else {
+            if (shared) {
+                offsets = Arrays.copyOf(offsets, offsets.length);
+                lengths = Arrays.copyOf(lengths, lengths.length);
+                shared = false;
+            }
+            dead += lengths[row] & LENGTH_MASK;
+            lengths[row] = 0;
+            if (dead > COMPACT_MIN_DEAD && dead * 2 > used)
+                compact();
+        }
+
+        if (used + length > bytes.length)
+            bytes = Arrays.copyOf(bytes,
+                    Math.max(used + length, bytes.length * 2));
+        offsets[row] = used;
+        used += length;
+        return offsets[row];
+    }
+
+    /**
+     * Method which moves every live name to the front of the array in row
+     * order, dropping the dead bytes
+     */
+    private void compact() {
+        if (dead == 0)
+            return;
+
+        byte[] live = new byte[Math.max(used - dead, INITIAL_CAPACITY * 16)];
+        int offset = 0;
+        for (int row = 0; row < rows; row++) {
+            int length = lengths[row] & LENGTH_MASK;
+            System.arraycopy(bytes, offsets[row], live, offset, length);
+            offsets[row] = offset;
+            offset += length;
+        }
+        bytes = live;
+        used = offset;
+        dead = 0;
+    }
+
+    private void checkRow(int row) throws IllegalArgumentException {
+        if (row < 0 || row >= rows)
+            throw new IllegalArgumentException();
+    }
+}
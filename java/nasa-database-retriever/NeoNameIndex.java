@@ -0,0 +1,699 @@
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Class which indexes the names of the rows of a NeoColumnStore by their
+ * trigrams, so names can be searched by part of a designation or by a
+ * misspelling without a scan. A name is normalized to lower case letters
+ * and digits, with every run of other characters turned into one space,
+ * and the trigrams of the name padded with a space at each end are its
+ * keys. Letters outside ASCII are all treated as one symbol. Each
+ * trigram's posting list holds the rows whose name contains it in row
+ * order, stored as variable length gaps, with the first row of every
+ * block of 64 kept aside so a list can be skipped through without
+ * decoding it.
+ * A substring search walks the rarest of the query's trigrams, skips
+ * through the others, and checks what is left against the names. A fuzzy
+ * search ranks names by the Dice coefficient of their trigrams with the
+ * query's. It only reads the lists a match has to appear in, looks the
+ * most promising names up in the rest, and stops once no other name could
+ * make the ranking. Rows whose name is changed in place are kept on a
+ * short list which every search checks directly, and their old entries
+ * are skipped until that list grows large enough to rebuild the index.
+ *
+ * liwll
+ */
+public class NeoNameIndex {
+    public static final double DEFAULT_SIMILARITY = 0.5;
+    private static final int ALPHABET = 38;
+    private static final int OTHER = ALPHABET - 1;
+    private static final int BLOCK_SIZE = 64;
+    private static final int MIN_OVERFLOW = 256;
+    private static final int SEED_ROWS = 4096;
+    private Posting[] postings;
+    private short[] trigramCounts;
+    private int[] nameHashes;
+    private BitSet moved;
+    private int[] overflow;
+    private int overflowCount;
+    private int size;
+    private long updateCount;
+    private StringBuilder name;
+    private byte[] codes;
+    private int[] trigrams;
+    private int[] rows;
+
+    /**
+     * Default constructor for an index, it starts out covering every row
+     * already in the store
+     * @param store
+     *  The store being indexed
+     * @throws IllegalArgumentException
+     *  When store is null
+     */
+    public NeoNameIndex(NeoColumnStore store) throws IllegalArgumentException {
+        if (store == null)
+            throw new IllegalArgumentException();
+
+        this.name = new StringBuilder(64);
+        this.codes = new byte[64];
+        this.trigrams = new int[64];
+        this.rows = new int[64];
+        build(store);
+    }
+
+    /**
+     * Method which adds rows that were added to the end of the store to
+     * the index
+     * @param store
+     *  The store being indexed
+     * @param fromRow
+     *  The first new row
+     * @param toRow
+     *  One past the last new row
+     */
+    public synchronized void insertRange(NeoColumnStore store, int fromRow,
+                                         int toRow) {
+        if (toRow <= fromRow)
+            return;
+
+        ensureRows(toRow);
+        for (int row = fromRow; row < toRow; row++)
+            index(store, row);
+        size = toRow;
+    }
+
+    /**
+     * Method which moves rows which were changed in place. Rows whose name
+     * is still the same are left where they are, the others are put on
+     * the list every search checks directly.
+     * @param store
+     *  The store being indexed
+     * @param changed
+     *  The changed rows, each one at most once, all already in the index
+     * @param count
+     *  The number of changed rows at the front of the array
+     */
+    public synchronized void reinsert(NeoColumnStore store, int[] changed,
+                                      int count) {
+        for (int i = 0; i < count; i++) {
+            int row = changed[i];
+            if ((int) store.hashName(row) == nameHashes[row])
+                continue;
+
+            nameHashes[row] = (int) store.hashName(row);
+            trigramCounts[row] = (short) Math.min(trigramsOf(store, row),
+                    Short.MAX_VALUE);
+            if (moved.get(row))
+                continue;
+            moved.set(row);
+            if (overflowCount == overflow.length)
+                overflow = Arrays.copyOf(overflow, overflowCount * 2);
+            overflow[overflowCount++] = row;
+        }
+        if (overflowCount > Math.max(MIN_OVERFLOW, size >> 10))
+            build(store);
+    }
+
+    /**
+     * Method which checks whether rows were changed through their setters
+     * since the index was built, in which case it must be built again
+     * @param store
+     *  The store being indexed
+     * @return
+     *  True if the index no longer matches the store
+     */
+    public boolean isStale(NeoColumnStore store) {
+        return store.getUpdateCount() != updateCount;
+    }
+
+    /**
+     * Getter method for the number of store rows the index covers
+     * @return
+     *  One past the last row the index has seen
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Method which finds the rows whose normalized name contains the
+     * normalized text, so "2015 ab" finds "(2015 AB123)"
+     * @param store
+     *  The store being indexed
+     * @param text
+     *  The text to search for, a query of one or two letters or digits
+     *  has no trigram and is checked against every name, and one with no
+     *  letters or digits at all matches nothing
+     * @param limit
+     *  The most rows wanted
+     * @return
+     *  At most limit rows, the shortest names first since the text covers
+     *  more of them, then in row order
+     * @throws IllegalArgumentException
+     *  When store or text is null, or limit is negative
+     */
+    public synchronized int[] containing(NeoColumnStore store, String text,
+                                         int limit)
+            throws IllegalArgumentException {
+        if (store == null || text == null || limit < 0)
+            throw new IllegalArgumentException();
+
+        byte[] query = Arrays.copyOf(codes, normalize(text));
+        if (query.length == 0 || limit == 0)
+            return new int[0];
+
+        Matches matches = new Matches(limit);
+        int count = trigrams(query.length, false);
+        if (count == 0) {
+            for (int row = 0; row < size; row++)
+                matches.add(contains(store, row, query), row);
+            return matches.top();
+        }
+
+        Posting[] lists = lists(count);
+        if (lists[0] != null) {
+            int candidates = lists[0].decode(this);
+            for (int i = 1; i < count && candidates > 0; i++) {
+                Cursor cursor = new Cursor(lists[i]);
+                int kept = 0;
+                for (int j = 0; j < candidates; j++) {
+                    if (cursor.advanceTo(rows[j]))
+                        rows[kept++] = rows[j];
+                }
+                candidates = kept;
+            }
+            int[] found = Arrays.copyOf(rows, candidates);
+            for (int row : found) {
+                if (!moved.get(row))
+                    matches.add(contains(store, row, query), row);
+            }
+        }
+        for (int i = 0; i < overflowCount; i++)
+            matches.add(contains(store, overflow[i], query), overflow[i]);
+        return matches.top();
+    }
+
+    /**
+     * Method which finds the rows whose name is most like the text, by the
+     * Dice coefficient of their trigrams, twice the number of trigrams
+     * they share over the number each one has
+     * @param store
+     *  The store being indexed
+     * @param text
+     *  The text to compare the names with
+     * @param minSimilarity
+     *  The lowest coefficient a name may have, above 0 and at most 1
+     * @param limit
+     *  The most rows wanted
+     * @return
+     *  At most limit rows, most similar first, then in row order
+     * @throws IllegalArgumentException
+     *  When store or text is null, minSimilarity is out of range, or
+     *  limit is negative
+     */
+    public synchronized int[] similar(NeoColumnStore store, String text,
+                                      double minSimilarity, int limit)
+            throws IllegalArgumentException {
+        if (store == null || text == null
+                || !(minSimilarity > 0 && minSimilarity <= 1) || limit < 0)
+            throw new IllegalArgumentException();
+
+        int count = trigrams(normalize(text), true);
+        int[] query = Arrays.copyOf(trigrams, count);
+        if (count == 0 || limit == 0)
+            return new int[0];
+
+        Posting[] lists = lists(count);
+        int missing = 0;
+        while (missing < count && lists[missing] == null)
+            missing++;
+        int listCount = count - missing;
+        Cursor[] cursors = new Cursor[listCount];
+        for (int i = 0; i < listCount; i++)
+            cursors[i] = new Cursor(lists[missing + i]);
+
+        Matches matches = new Matches(limit);
+        for (int i = 0; i < overflowCount; i++) {
+            int row = overflow[i];
+            int length = trigramsOf(store, row);
+            int shared = 0;
+            for (int j = 0, k = 0; j < length && k < count; ) {
+                if (trigrams[j] == query[k]) {
+                    shared++;
+                    j++;
+                    k++;
+                }
+                else if (trigrams[j] < query[k])
+                    j++;
+                else
+                    k++;
+            }
+            matches.add(2.0 * shared / (count + length), minSimilarity, row);
+        }
+
+        // The rows of the rarest list are scored first when it is short,
+        // they are the likeliest to be good matches and fill the ranking
+        // early
+        boolean seeded = listCount > 0 && cursors[0].posting.count
+                <= SEED_ROWS;
+        if (seeded) {
+            Cursor[] probes = new Cursor[listCount];
+            for (int i = 0; i < listCount; i++)
+                probes[i] = new Cursor(cursors[i].posting);
+            for (; probes[0].row != Integer.MAX_VALUE; probes[0].next()) {
+                int row = probes[0].row;
+                if (!moved.get(row))
+                    score(row, 1, probes, 1, count, minSimilarity, matches);
+            }
+        }
+
+        // Rows are visited in order through the rarest lists only. The
+        // commoner lists are left out of the walk while a row found only
+        // in them could not make the ranking, and a visited row is looked
+        // up in them, which leaves out more of them as the ranking fills
+        int walked = listCount;
+        while (true) {
+            while (walked > 0 && !matches.canEnter(2.0
+                    * (listCount - walked + 1)
+                    / (count + listCount - walked + 1), minSimilarity))
+                walked--;
+            int row = Integer.MAX_VALUE;
+            for (int i = 0; i < walked; i++)
+                row = Math.min(row, cursors[i].row);
+            if (row == Integer.MAX_VALUE)
+                break;
+
+            boolean scored = seeded && cursors[0].row == row;
+            int shared = 0;
+            for (int i = 0; i < walked; i++) {
+                if (cursors[i].row == row) {
+                    shared++;
+                    cursors[i].next();
+                }
+            }
+            if (!scored && !moved.get(row))
+                score(row, shared, cursors, walked, count, minSimilarity,
+                        matches);
+        }
+        return matches.top();
+    }
+
+    /**
+     * Method which finishes scoring a row by looking it up in the lists it
+     * has not been checked against, giving up once it could no longer make
+     * the ranking
+     * @param row
+     *  The row being scored
+     * @param shared
+     *  The number of lists already found to hold the row
+     * @param cursors
+     *  The cursors of every list, rarest first
+     * @param from
+     *  The first cursor the row has not been checked against
+     * @param count
+     *  The number of trigrams in the query
+     */
+    private void score(int row, int shared, Cursor[] cursors, int from,
+                       int count, double minSimilarity, Matches matches) {
+        int length = trigramCounts[row];
+        int total = count + length;
+        for (int i = from; i < cursors.length; i++) {
+            if (!matches.canEnter(2.0 * Math.min(length,
+                    shared + cursors.length - i) / total, minSimilarity))
+                return;
+            if (cursors[i].advanceTo(row))
+                shared++;
+        }
+        matches.add(2.0 * shared / total, minSimilarity, row);
+    }
+
+    /**
+     * Method which builds the index from scratch over every row
+     */
+    private void build(NeoColumnStore store) {
+        size = 0;
+        updateCount = store.getUpdateCount();
+        postings = new Posting[ALPHABET * ALPHABET * ALPHABET];
+        trigramCounts = new short[16];
+        nameHashes = new int[16];
+        moved = new BitSet();
+        overflow = new int[16];
+        overflowCount = 0;
+        insertRange(store, 0, store.size());
+    }
+
+    private void ensureRows(int capacity) {
+        if (capacity <= trigramCounts.length)
+            return;
+        int length = Math.max(capacity, trigramCounts.length * 2);
+        trigramCounts = Arrays.copyOf(trigramCounts, length);
+        nameHashes = Arrays.copyOf(nameHashes, length);
+    }
+
+    private void index(NeoColumnStore store, int row) {
+        int count = trigramsOf(store, row);
+        for (int i = 0; i < count; i++) {
+            Posting posting = postings[trigrams[i]];
+            if (posting == null) {
+                posting = new Posting();
+                postings[trigrams[i]] = posting;
+            }
+            posting.add(row);
+        }
+        trigramCounts[row] = (short) Math.min(count, Short.MAX_VALUE);
+        nameHashes[row] = (int) store.hashName(row);
+    }
+
+    /**
+     * Method which returns the posting lists of the trigrams at the front
+     * of the trigram buffer, rarest first with missing lists at the front
+     */
+    private Posting[] lists(int count) {
+        Posting[] lists = new Posting[count];
+        for (int i = 0; i < count; i++)
+            lists[i] = postings[trigrams[i]];
+        Arrays.sort(lists, (left, right) -> Integer.compare(
+                left == null ? 0 : left.count,
+                right == null ? 0 : right.count));
+        return lists;
+    }
+
+    /**
+     * Method which checks whether the normalized name of a row contains a
+     * normalized query
+     * @return
+     *  The length of the normalized name, or -1 if it does not contain it
+     */
+    private int contains(NeoColumnStore store, int row, byte[] query) {
+        name.setLength(0);
+        store.appendName(row, name);
+        int length = normalize(name);
+        for (int start = 0; start + query.length <= length; start++) {
+            int i = 0;
+            while (i < query.length && codes[start + i] == query[i])
+                i++;
+            if (i == query.length)
+                return length;
+        }
+        return -1;
+    }
+
+    private int trigramsOf(NeoColumnStore store, int row) {
+        name.setLength(0);
+        store.appendName(row, name);
+        return trigrams(normalize(name), true);
+    }
+
+    /**
+     * Method which normalizes text into the code buffer, a code for each
+     * letter or digit and a single space code between words
+     * @return
+     *  The number of codes
+     */
+    private int normalize(CharSequence text) {
+        if (codes.length < text.length())
+            codes = new byte[text.length() * 2];
+
+        int length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            int code = code(text.charAt(i));
+            if (code == 0 && (length == 0 || codes[length - 1] == 0))
+                continue;
+            codes[length++] = (byte) code;
+        }
+        if (length > 0 && codes[length - 1] == 0)
+            length--;
+        return length;
+    }
+
+    private static int code(char c) {
+        if (c >= '0' && c <= '9')
+            return 1 + c - '0';
+        if (c >= 'a' && c <= 'z')
+            return 11 + c - 'a';
+        if (c >= 'A' && c <= 'Z')
+            return 11 + c - 'A';
+        return Character.isLetterOrDigit(c) ? OTHER : 0;
+    }
+
+    /**
+     * Method which fills the trigram buffer with the distinct trigrams of
+     * the codes in the code buffer, in ascending order
+     * @return
+     *  The number of trigrams
+     */
+    private int trigrams(int length, boolean padded) {
+        int first = padded ? -1 : 0;
+        int end = padded ? length + 1 : length;
+        if (trigrams.length < end - first)
+            trigrams = new int[(end - first) * 2];
+
+        int count = 0;
+        for (int i = first; i + 3 <= end; i++)
+            trigrams[count++] = (codeAt(i, length) * ALPHABET
+                    + codeAt(i + 1, length)) * ALPHABET
+                    + codeAt(i + 2, length);
+        Arrays.sort(trigrams, 0, count);
+
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || trigrams[distinct - 1] != trigrams[i])
+                trigrams[distinct++] = trigrams[i];
+        }
+        return distinct;
+    }
+
+    private int codeAt(int position, int length) {
+        return position < 0 || position >= length ? 0 : codes[position];
+    }
+
+    /**
+     * Class which holds the rows of one trigram in ascending order, as the
+     * gaps between them in a variable length byte encoding. The first row
+     * of each block is kept whole, along with where its block starts.
+     */
+    private static class Posting {
+        private byte[] data;
+        private int bytes;
+        private int count;
+        private int last;
+        private int[] blockRows;
+        private int[] blockOffsets;
+
+        private Posting() {
+            this.data = new byte[8];
+            this.blockRows = new int[1];
+            this.blockOffsets = new int[1];
+        }
+
+        private void add(int row) {
+            if (count % BLOCK_SIZE == 0) {
+                int block = count / BLOCK_SIZE;
+                if (block == blockRows.length) {
+                    blockRows = Arrays.copyOf(blockRows, block * 2);
+                    blockOffsets = Arrays.copyOf(blockOffsets, block * 2);
+                }
+                blockRows[block] = row;
+                blockOffsets[block] = bytes;
+            }
+            else {
+                if (data.length - bytes < 5)
+                    data = Arrays.copyOf(data, data.length * 2);
+                int gap = row - last;
+                while (gap >= 0x80) {
+                    data[bytes++] = (byte) (gap | 0x80);
+                    gap >>>= 7;
+                }
+                data[bytes++] = (byte) gap;
+            }
+            last = row;
+            count++;
+        }
+
+        private int blocks() {
+            return (count + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        }
+
+        private int blockEnd(int block) {
+            return block + 1 < blocks() ? blockOffsets[block + 1] : bytes;
+        }
+
+        /**
+         * Method which decodes every row into the index's row buffer
+         * @return
+         *  The number of rows
+         */
+        private int decode(NeoNameIndex index) {
+            if (index.rows.length < count)
+                index.rows = new int[Math.max(count, index.rows.length * 2)];
+
+            int[] rows = index.rows;
+            int length = 0;
+            int offset = 0;
+            for (int block = 0; block < blocks(); block++) {
+                int row = blockRows[block];
+                rows[length++] = row;
+                int end = blockEnd(block);
+                while (offset < end) {
+                    byte b = data[offset++];
+                    int gap = b & 0x7F;
+                    for (int shift = 7; b < 0; shift += 7) {
+                        b = data[offset++];
+                        gap |= (b & 0x7F) << shift;
+                    }
+                    row += gap;
+                    rows[length++] = row;
+                }
+            }
+            return length;
+        }
+    }
+
+    /**
+     * Class which walks forward through a posting list, jumping over whole
+     * blocks by their first row
+     */
+    private static class Cursor {
+        private Posting posting;
+        private int block;
+        private int offset;
+        private int end;
+        private int row;
+
+        private Cursor(Posting posting) {
+            this.posting = posting;
+            jump(0);
+        }
+
+        /**
+         * Method which moves to the next row, or past the end where the
+         * row is Integer.MAX_VALUE
+         */
+        private void next() {
+            if (offset == end) {
+                if (block + 1 < posting.blocks())
+                    jump(block + 1);
+                else
+                    row = Integer.MAX_VALUE;
+                return;
+            }
+
+            byte[] data = posting.data;
+            byte b = data[offset++];
+            int gap = b & 0x7F;
+            for (int shift = 7; b < 0; shift += 7) {
+                b = data[offset++];
+                gap |= (b & 0x7F) << shift;
+            }
+            row += gap;
+        }
+
+        /**
+         * Method which moves to the first row at or after a target, the
+         * targets must not go down between calls
+         * @return
+         *  True if the target is in the list
+         */
+        private boolean advanceTo(int target) {
+            if (row >= target)
+                return row == target;
+
+            int blocks = posting.blocks();
+            if (block + 1 < blocks && posting.blockRows[block + 1] <= target) {
+                int low = block + 1;
+                int high = blocks - 1;
+                while (low < high) {
+                    int middle = (low + high + 1) >>> 1;
+                    if (posting.blockRows[middle] <= target)
+                        low = middle;
+                    else
+                        high = middle - 1;
+                }
+                jump(low);
+            }
+            while (row < target)
+                next();
+            return row == target;
+        }
+
+        private void jump(int block) {
+            this.block = block;
+            row = posting.blockRows[block];
+            offset = posting.blockOffsets[block];
+            end = posting.blockEnd(block);
+        }
+    }
+
+    /**
+     * Class which keeps the best matching rows up to a limit, each with a
+     * rank in the high half of a long and the row in the low half, so the
+     * worst one is at the top of a heap and ranking them is one sort of
+     * primitives
+     */
+    private static class Matches {
+        private long[] keys;
+        private int size;
+        private int limit;
+
+        private Matches(int limit) {
+            this.keys = new long[16];
+            this.limit = limit;
+        }
+
+        private void add(int rank, int row) {
+            if (rank < 0)
+                return;
+            long key = (long) rank << 32 | row;
+            if (size < limit) {
+                if (size == keys.length)
+                    keys = Arrays.copyOf(keys, size * 2);
+                int child = size++;
+                while (child > 0 && keys[(child - 1) / 2] < key) {
+                    keys[child] = keys[(child - 1) / 2];
+                    child = (child - 1) / 2;
+                }
+                keys[child] = key;
+            }
+            else if (key < keys[0]) {
+                int parent = 0;
+                while (parent * 2 + 1 < size) {
+                    int child = parent * 2 + 1;
+                    if (child + 1 < size && keys[child + 1] > keys[child])
+                        child++;
+                    if (keys[child] <= key)
+                        break;
+                    keys[parent] = keys[child];
+                    parent = child;
+                }
+                keys[parent] = key;
+            }
+        }
+
+        private void add(double similarity, double minSimilarity, int row) {
+            if (similarity >= minSimilarity)
+                add(rank(similarity), row);
+        }
+
+        /**
+         * Method which checks whether a row with a similarity could still
+         * be among the best
+         */
+        private boolean canEnter(double similarity, double minSimilarity) {
+            return similarity >= minSimilarity && (size < limit
+                    || rank(similarity) <= (int) (keys[0] >>> 32));
+        }
+
+        private static int rank(double similarity) {
+            return (int) Math.round((1 - similarity) * 1_000_000);
+        }
+
+        private int[] top() {
+            Arrays.sort(keys, 0, size);
+            int[] rows = new int[size];
+            for (int i = 0; i < size; i++)
+                rows[i] = (int) keys[i];
+            return rows;
+        }
+    }
+}
@@ -0,0 +1,310 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class which keeps the raw pages downloaded from NASA in a directory, so
+ * loading a page again costs a local read instead of a network round trip.
+ * Each file starts with the time the page was fetched. Pages older than
+ * the freshness limit are treated as missing, and the least recently used
+ * pages are deleted when the directory grows past its size limit.
+ *
+ * liwll
+ */
+public class NeoPageCache {
+    private static final String PREFIX = "page-";
+    private static final String SUFFIX = ".cache";
+    private Path directory;
+    private long maxBytes;
+    private long maxAgeMillis;
+    private Map<Integer, Long> sizes;
+    private Map<Integer, Long> lastUsed;
+    private long totalBytes;
+    private AtomicLong hits;
+    private AtomicLong misses;
+    private AtomicLong evictions;
+    private AtomicLong networkNanos;
+    private AtomicLong networkFetches;
+
+    /**
+     * Default constructor for a cache, pages already in the directory are
+     * picked up so they survive between runs
+     * @param directory
+     *  The directory the pages are kept in, it is created if needed
+     * @param maxBytes
+     *  The most bytes the cached pages may take up
+     * @param maxAgeMillis
+     *  How long a page stays fresh after it was fetched
+     * @throws IllegalArgumentException
+     *  When directory is null or a limit is not positive
+     * @throws IOException
+     *  When the directory could not be created or read
+     */
+    public NeoPageCache(Path directory, long maxBytes, long maxAgeMillis)
+            throws IllegalArgumentException, IOException {
+        if (directory == null || maxBytes <= 0 || maxAgeMillis <= 0)
+            throw new IllegalArgumentException();
+
+        this.directory = Files.createDirectories(directory);
+        this.maxBytes = maxBytes;
+        this.maxAgeMillis = maxAgeMillis;
+        this.sizes = new HashMap<>();
+        this.lastUsed = new HashMap<>();
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+        this.evictions = new AtomicLong();
+        this.networkNanos = new AtomicLong();
+        this.networkFetches = new AtomicLong();
+
+        String glob = PREFIX + "*" + SUFFIX;
+        try (DirectoryStream<Path> files =
+                     Files.newDirectoryStream(directory, glob)) {
+            for (Path file : files) {
+                String fileName = file.getFileName().toString();
+                try {
+                    int page = Integer.parseInt(fileName.substring(
+                            PREFIX.length(),
+                            fileName.length() - SUFFIX.length()));
+                    long size = Files.size(file);
+                    sizes.put(page, size);
+                    lastUsed.put(page,
+                            Files.getLastModifiedTime(file).toMillis());
+                    totalBytes += size;
+                }
+                catch (NumberFormatException e) {
+                    // Not one of our files, leave it alone
+                }
+            }
+        }
+        evict();
+    }
+
+    /**
+     * Method which returns a cached page if it is present and still fresh.
+     * A file that is gone was evicted by another thread, which already
+     * forgot it, so that is a plain miss. Any other read failure forgets
+     * the page.
+     * @param pageNumber
+     *  The page to look up
+     * @return
+     *  The raw page, or null if it has to be downloaded
+     */
+    public byte[] get(int pageNumber) {
+        synchronized (this) {
+            if (!sizes.containsKey(pageNumber)) {
+                misses.incrementAndGet();
+                return null;
+            }
+        }
+
+        Path file = pathFor(pageNumber);
+        try (DataInputStream in =
+                     new DataInputStream(Files.newInputStream(file))) {
+            long fetchedAt = in.readLong();
+            if (System.currentTimeMillis() - fetchedAt > maxAgeMillis) {
+                misses.incrementAndGet();
+                return null;
+            }
+
+            byte[] payload = in.readAllBytes();
+            long now = System.currentTimeMillis();
+            Files.setLastModifiedTime(file, FileTime.fromMillis(now));
+            synchronized (this) {
+                lastUsed.put(pageNumber, now);
+            }
+            hits.incrementAndGet();
+            return payload;
+        }
+        catch (NoSuchFileException e) {
+            misses.incrementAndGet();
+            return null;
+        }
+        catch (IOException e) {
+            remove(pageNumber);
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * Method which stores a freshly downloaded page, evicting the least
+     * recently used pages if the cache is over its size limit
+     * @param pageNumber
+     *  The page being stored
+     * @param payload
+     *  The raw page
+     * @throws IllegalArgumentException
+     *  When payload is null
+     * @throws IOException
+     *  When the page could not be written
+     */
+    public void put(int pageNumber, byte[] payload)
+            throws IllegalArgumentException, IOException {
+        if (payload == null)
+            throw new IllegalArgumentException();
+
+        Path file = pathFor(pageNumber);
+        Path temp = Files.createTempFile(directory, PREFIX, ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temp);
+                 DataOutputStream data = new DataOutputStream(out)) {
+                data.writeLong(System.currentTimeMillis());
+                data.write(payload);
+            }
+            synchronized (this) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+                Long old = sizes.put(pageNumber, Files.size(file));
+                totalBytes += sizes.get(pageNumber) - (old == null ? 0 : old);
+                lastUsed.put(pageNumber, System.currentTimeMillis());
+            }
+        }
+        finally {
+            Files.deleteIfExists(temp);
+        }
+        evict();
+    }
+
+    /**
+     * Method which records how long one page took to download
+     * @param nanos
+     *  The download time in nanoseconds
+     */
+    public void recordNetworkTime(long nanos) {
+        networkNanos.addAndGet(nanos);
+        networkFetches.incrementAndGet();
+    }
+
+    /**
+     * Method which deletes every cached page
+     * @throws IOException
+     *  When a page could not be deleted
+     */
+    public synchronized void clear() throws IOException {
+        for (int page : sizes.keySet())
+            Files.deleteIfExists(pathFor(page));
+        sizes.clear();
+        lastUsed.clear();
+        totalBytes = 0;
+    }
+
+    /**
+     * Getter method for the number of pages served from the cache
+     * @return
+     *  The number of cache hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Getter method for the number of pages which had to be downloaded
+     * @return
+     *  The number of cache misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Getter method for the number of pages deleted to save space
+     * @return
+     *  The number of evictions
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Getter method for the space the cached pages take up
+     * @return
+     *  The total size of the cached pages in bytes
+     */
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * Getter method for the time spent downloading pages
+     * @return
+     *  The total download time in milliseconds
+     */
+    public long getNetworkMillis() {
+        return networkNanos.get() / 1_000_000;
+    }
+
+    /**
+     * Method which estimates the network time saved by the cache, using the
+     * average download time of the pages that did have to be downloaded
+     * @return
+     *  The estimated time saved in milliseconds
+     */
+    public long getEstimatedSavedMillis() {
+        long fetches = networkFetches.get();
+        if (fetches == 0)
+            return 0;
+        return hits.get() * (networkNanos.get() / fetches) / 1_000_000;
+    }
+
+    /**
+     * Method which returns the cache statistics as a String
+     * @return
+     *  A formatted summary of the hits, misses, and time saved
+     */
+    public String toString() {
+        return String.format("Hits: %d, Misses: %d, Evictions: %d, " +
+                        "Size: %d KB, Network time: %d ms, " +
+                        "Estimated time saved: %d ms",
+                getHits(), getMisses(), getEvictions(),
+                getTotalBytes() / 1024, getNetworkMillis(),
+                getEstimatedSavedMillis());
+    }
+
+    /**
+     * Method which deletes the least recently used pages until the cache
+     * is within its size limit. Each victim is chosen and removed under
+     * the same lock, so a page stored again meanwhile is never evicted by
+     * mistake and two threads never evict the same page.
+     */
+    private synchronized void evict() {
+        while (totalBytes > maxBytes && !lastUsed.isEmpty()) {
+            int oldest = -1;
+            long oldestTime = Long.MAX_VALUE;
+            for (Map.Entry<Integer, Long> entry : lastUsed.entrySet()) {
+                if (entry.getValue() < oldestTime) {
+                    oldestTime = entry.getValue();
+                    oldest = entry.getKey();
+                }
+            }
+            remove(oldest);
+            evictions.incrementAndGet();
+        }
+    }
+
+    private synchronized void remove(int pageNumber) {
+        Long size = sizes.remove(pageNumber);
+        lastUsed.remove(pageNumber);
+        if (size != null)
+            totalBytes -= size;
+        try {
+            Files.deleteIfExists(pathFor(pageNumber));
+        }
+        catch (IOException e) {
+            // The file is forgotten either way, it will be overwritten
+        }
+    }
+
+    private Path pathFor(int pageNumber) {
+        return directory.resolve(PREFIX + pageNumber + SUFFIX);
+    }
+}
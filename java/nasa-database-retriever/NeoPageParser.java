@@ -0,0 +1,271 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Class which turns a page of NASA's browse API into rows of a
+ * NeoColumnStore in a single pass over the bytes. Only the fields a
+ * NearEarthObject needs are read, everything else is skipped without
+ * being built. Every close approach is kept, the first one listed is used
+ * as the asteroid's closest approach.
+ *
+ * liwll
+ */
+public class NeoPageParser {
+    private static final byte[][] ROOT_FIELDS = names("near_earth_objects");
+    private static final byte[][] NEO_FIELDS = names("neo_reference_id",
+            "name", "absolute_magnitude_h", "estimated_diameter",
+            "is_potentially_hazardous_asteroid", "close_approach_data");
+    private static final byte[][] DIAMETER_UNITS = names("kilometers");
+    private static final byte[][] DIAMETER_FIELDS = names(
+            "estimated_diameter_min", "estimated_diameter_max");
+    private static final byte[][] APPROACH_FIELDS = names(
+            "epoch_date_close_approach", "miss_distance", "orbiting_body");
+    private static final byte[][] DISTANCE_UNITS = names("kilometers");
+    private static final long MISSING_DATE = Long.MIN_VALUE;
+    private NeoJsonReader reader;
+    private String lastOrbitingBody;
+    private int refID;
+    private String name;
+    private double absoluteMagnitude;
+    private double minDiameter;
+    private double maxDiameter;
+    private boolean isDangerous;
+    private long[] approachDates;
+    private double[] missDistances;
+    private String[] orbitingBodies;
+    private int approachCount;
+
+    /**
+     * Constructor for a parser which reads one page from a stream
+     * @param in
+     *  The stream which contains the page
+     */
+    public NeoPageParser(InputStream in) {
+        this.reader = new NeoJsonReader(in);
+        this.approachDates = new long[8];
+        this.missDistances = new double[8];
+        this.orbitingBodies = new String[8];
+    }
+
+    /**
+     * Constructor for a parser which reads from a buffer
+     * @param in
+     *  The buffer which contains the JSON text
+     */
+    public NeoPageParser(ByteBuffer in) {
+        this.reader = new NeoJsonReader(in);
+        this.approachDates = new long[8];
+        this.missDistances = new double[8];
+        this.orbitingBodies = new String[8];
+    }
+
+    /**
+     * Method which parses a whole page from a stream
+     * @param in
+     *  The stream which contains the page
+     * @return
+     *  A store holding the page's asteroids, in the order they were listed
+     * @throws IOException
+     *  When the stream could not be read
+     * @throws NeoFormatException
+     *  When the page is not in the expected format
+     */
+    public static NeoColumnStore parse(InputStream in)
+            throws IOException, NeoFormatException {
+        return new NeoPageParser(in).parsePage();
+    }
+
+    /**
+     * Method which parses the page this parser was created for
+     * @return
+     *  A store holding the page's asteroids, in the order they were listed
+     * @throws IOException
+     *  When the stream could not be read
+     * @throws NeoFormatException
+     *  When the page is not in the expected format
+     */
+    public NeoColumnStore parsePage()
+            throws IOException, NeoFormatException {
+        NeoColumnStore page = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName(ROOT_FIELDS) == 0) {
+                page = new NeoColumnStore();
+                reader.beginArray();
+                while (reader.hasNext())
+                    parseObject(page);
+                reader.endArray();
+            }
+            else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (page == null)
+            throw new NeoFormatException("Missing near_earth_objects.");
+        return page;
+    }
+
+    /**
+     * Method which parses a run of asteroid objects separated by commas,
+     * such as a slice cut out of the near_earth_objects array of a dump
+     * @return
+     *  A store holding the asteroids, in the order they were listed
+     * @throws IOException
+     *  When the input could not be read
+     * @throws NeoFormatException
+     *  When an object is not in the expected format
+     */
+    public NeoColumnStore parseRecords()
+            throws IOException, NeoFormatException {
+        NeoColumnStore page = new NeoColumnStore();
+        while (reader.hasNext())
+            parseObject(page);
+        return page;
+    }
+
+    private void parseObject(NeoColumnStore page)
+            throws IOException, NeoFormatException {
+        int seen = 0;
+        approachCount = 0;
+        name = null;
+        minDiameter = Double.NaN;
+        maxDiameter = Double.NaN;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            int field = reader.nextName(NEO_FIELDS);
+            switch (field) {
+                case 0:
+                    refID = reader.nextInt();
+                    break;
+                case 1:
+                    name = reader.nextString();
+                    break;
+                case 2:
+                    absoluteMagnitude = reader.nextDouble();
+                    break;
+                case 3:
+                    parseDiameter();
+                    break;
+                case 4:
+                    isDangerous = reader.nextBoolean();
+                    break;
+                case 5:
+                    parseApproaches();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+            if (field >= 0)
+                seen |= 1 << field;
+        }
+        reader.endObject();
+
+        if (seen != (1 << NEO_FIELDS.length) - 1 || approachCount == 0)
+            throw new NeoFormatException("Incomplete near earth object.");
+        if (name == null)
+            throw new NeoFormatException("Missing name.");
+        if (Double.isNaN(minDiameter) || Double.isNaN(maxDiameter))
+            throw new NeoFormatException("Missing diameter in kilometers.");
+        for (int i = 0; i < approachCount; i++) {
+            if (orbitingBodies[i] == null)
+                throw new NeoFormatException("Missing orbiting body.");
+            if (approachDates[i] == MISSING_DATE)
+                throw new NeoFormatException("Missing approach date.");
+            if (Double.isNaN(missDistances[i]))
+                throw new NeoFormatException("Missing miss distance.");
+        }
+        int row = page.add(refID, name, absoluteMagnitude,
+                (minDiameter + maxDiameter) / 2, isDangerous,
+                approachDates[0], missDistances[0], orbitingBodies[0]);
+        for (int i = 1; i < approachCount; i++)
+            page.addApproach(row, approachDates[i], missDistances[i],
+                    orbitingBodies[i]);
+    }
+
+    private void parseDiameter() throws IOException, NeoFormatException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName(DIAMETER_UNITS) != 0) {
+                reader.skipValue();
+                continue;
+            }
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName(DIAMETER_FIELDS)) {
+                    case 0:
+                        minDiameter = reader.nextDouble();
+                        break;
+                    case 1:
+                        maxDiameter = reader.nextDouble();
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        reader.endObject();
+    }
+
+    private void parseApproaches() throws IOException, NeoFormatException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (approachCount == approachDates.length) {
+                approachDates = Arrays.copyOf(approachDates, approachCount * 2);
+                missDistances = Arrays.copyOf(missDistances, approachCount * 2);
+                orbitingBodies = Arrays.copyOf(orbitingBodies,
+                        approachCount * 2);
+            }
+            orbitingBodies[approachCount] = null;
+            approachDates[approachCount] = MISSING_DATE;
+            missDistances[approachCount] = Double.NaN;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName(APPROACH_FIELDS)) {
+                    case 0:
+                        approachDates[approachCount] = reader.nextLong();
+                        break;
+                    case 1:
+                        parseMissDistance();
+                        break;
+                    case 2:
+                        lastOrbitingBody = reader.nextString(lastOrbitingBody);
+                        orbitingBodies[approachCount] = lastOrbitingBody;
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+            approachCount++;
+        }
+        reader.endArray();
+    }
+
+    private void parseMissDistance() throws IOException, NeoFormatException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName(DISTANCE_UNITS) == 0)
+                missDistances[approachCount] = reader.nextDouble();
+            else
+                reader.skipValue();
+        }
+        reader.endObject();
+    }
+
+    private static byte[][] names(String... names) {
+        byte[][] encoded = new byte[names.length][];
+        for (int i = 0; i < names.length; i++)
+            encoded[i] = names[i].getBytes(StandardCharsets.UTF_8);
+        return encoded;
+    }
+}
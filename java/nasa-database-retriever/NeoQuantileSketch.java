@@ -0,0 +1,375 @@
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Class which estimates the quantiles of a stream of doubles in a small,
+ * fixed amount of memory, using a KLL sketch. Values are kept in a stack
+ * of compactors, a value on level h standing in for 2^h of the values
+ * added. When the sketch is full the lowest compactor over its capacity
+ * is sorted and every other value is promoted to the level above, and the
+ * capacities shrink geometrically further down the stack. Two sketches
+ * with the same k can be merged, giving the sketch of both streams. With
+ * the default k a quantile is within about 1.5% of the true rank. The
+ * smallest and largest values are kept exactly, and NaN is ignored.
+ *
+ * liwll
+ */
+public class NeoQuantileSketch {
+    public static final int DEFAULT_K = 200;
+    private static final double CAPACITY_DECAY = 2.0 / 3;
+    private int k;
+    private double[][] levels;
+    private int[] sizes;
+    private int retained;
+    private int capacity;
+    private long count;
+    private double min;
+    private double max;
+    private long random;
+    private double[] sortedValues;
+    private long[] cumulativeWeights;
+
+    /**
+     * Default constructor for an empty sketch with the default accuracy
+     */
+    public NeoQuantileSketch() {
+        this(DEFAULT_K);
+    }
+
+    /**
+     * Constructor for an empty sketch with a chosen accuracy
+     * @param k
+     *  The capacity of the top compactor, larger is more accurate and
+     *  uses more memory
+     * @throws IllegalArgumentException
+     *  When k is less than 8
+     */
+    public NeoQuantileSketch(int k) throws IllegalArgumentException {
+        if (k < 8)
+            throw new IllegalArgumentException();
+
+        this.k = k;
+        this.levels = new double[0][];
+        this.sizes = new int[0];
+        this.min = Double.NaN;
+        this.max = Double.NaN;
+        this.random = 0x9E3779B97F4A7C15L;
+        grow();
+    }
+
+    /**
+     * Method which adds a value to the sketch
+     * @param value
+     *  The value to add, NaN is ignored
+     */
+    public void add(double value) {
+        if (Double.isNaN(value))
+            return;
+
+        if (count == 0 || value < min)
+            min = value;
+        if (count == 0 || value > max)
+            max = value;
+        count++;
+        append(0, value);
+        if (retained >= capacity)
+            compress();
+        sortedValues = null;
+    }
+
+    /**
+     * Method which merges another sketch into this one, so this sketch
+     * describes the values added to both. The other sketch is unchanged.
+     * @param other
+     *  The sketch to merge in
+     * @throws IllegalArgumentException
+     *  When other is null or was made with a different k
+     */
+    public void merge(NeoQuantileSketch other)
+            throws IllegalArgumentException {
+        if (other == null || other.k != k)
+            throw new IllegalArgumentException();
+        if (other.count == 0)
+            return;
+
+        while (levels.length < other.levels.length)
+            grow();
+        for (int h = 0; h < other.levels.length; h++) {
+            for (int i = 0; i < other.sizes[h]; i++)
+                append(h, other.levels[h][i]);
+        }
+        min = count == 0 ? other.min : Math.min(min, other.min);
+        max = count == 0 ? other.max : Math.max(max, other.max);
+        count += other.count;
+        while (retained >= capacity)
+            compress();
+        sortedValues = null;
+    }
+
+    /**
+     * Getter method for the number of values added
+     * @return
+     *  The number of values added, not counting NaN
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Getter method for the smallest value added
+     * @return
+     *  The smallest value, or NaN if the sketch is empty
+     */
+    public double getMin() {
+        return min;
+    }
+
+    /**
+     * Getter method for the largest value added
+     * @return
+     *  The largest value, or NaN if the sketch is empty
+     */
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * Method which estimates a quantile. The retained values are sorted
+     * once after the sketch changes, after that each call is a binary
+     * search whose cost does not depend on how many values were added.
+     * @param fraction
+     *  The quantile wanted, 0.5 for the median
+     * @return
+     *  A value which about that fraction of the values are at or below,
+     *  or NaN if the sketch is empty
+     * @throws IllegalArgumentException
+     *  When fraction is not between 0 and 1
+     */
+    public double getQuantile(double fraction)
+            throws IllegalArgumentException {
+        if (!(fraction >= 0 && fraction <= 1))
+            throw new IllegalArgumentException();
+        if (count == 0)
+            return Double.NaN;
+        if (fraction == 0)
+            return min;
+        if (fraction == 1)
+            return max;
+
+        summarize();
+        long target = Math.max(1, (long) Math.ceil(fraction * count));
+        int low = 0;
+        int high = cumulativeWeights.length - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (cumulativeWeights[middle] < target)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return sortedValues[low];
+    }
+
+    /**
+     * Method which estimates the fraction of the values at or below a
+     * value, the reverse of getQuantile
+     * @param value
+     *  The value to rank
+     * @return
+     *  The estimated fraction of values at or below it, 0 if the sketch
+     *  is empty
+     */
+    public double getRank(double value) {
+        if (count == 0 || Double.isNaN(value))
+            return 0;
+
+        summarize();
+        int low = 0;
+        int high = sortedValues.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sortedValues[middle] <= value)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low == 0 ? 0 : (double) cumulativeWeights[low - 1] / count;
+    }
+
+    /**
+     * Method which copies the sketch. The retained values of the copy are
+     * already sorted, so reading it changes nothing and any number of
+     * threads can read it at once while nothing is added to it.
+     * @return
+     *  A sketch which holds the same values
+     */
+    public NeoQuantileSketch copy() {
+        NeoQuantileSketch copy = new NeoQuantileSketch(k);
+        copy.merge(this);
+        copy.summarize();
+        return copy;
+    }
+
+    /**
+     * Method which writes the sketch as k, the count, the smallest and
+     * largest values, and each compactor's values from the bottom up
+     * @param out
+     *  Where the sketch is written
+     * @throws IOException
+     *  When the sketch could not be written
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(k);
+        out.writeLong(count);
+        out.writeDouble(min);
+        out.writeDouble(max);
+        out.writeInt(levels.length);
+        for (int h = 0; h < levels.length; h++) {
+            out.writeInt(sizes[h]);
+            for (int i = 0; i < sizes[h]; i++)
+                out.writeDouble(levels[h][i]);
+        }
+    }
+
+    /**
+     * Method which reads a sketch written by writeTo
+     * @param in
+     *  The buffer positioned at the sketch, it is left positioned right
+     *  after it
+     * @return
+     *  The sketch
+     * @throws IllegalArgumentException
+     *  When the buffer does not hold a valid sketch
+     */
+    public static NeoQuantileSketch readFrom(ByteBuffer in)
+            throws IllegalArgumentException {
+        NeoQuantileSketch sketch = new NeoQuantileSketch(in.getInt());
+        sketch.count = in.getLong();
+        sketch.min = in.getDouble();
+        sketch.max = in.getDouble();
+        int levelCount = in.getInt();
+        if (sketch.count < 0 || levelCount < 1 || levelCount > Long.SIZE)
+            throw new IllegalArgumentException();
+
+        while (sketch.levels.length < levelCount)
+            sketch.grow();
+        for (int h = 0; h < levelCount; h++) {
+            int size = in.getInt();
+            if (size < 0 || size > in.remaining() / Double.BYTES)
+                throw new IllegalArgumentException();
+            for (int i = 0; i < size; i++)
+                sketch.append(h, in.getDouble());
+        }
+        return sketch;
+    }
+
+    private void append(int level, double value) {
+        if (sizes[level] == levels[level].length)
+            levels[level] = Arrays.copyOf(levels[level],
+                    Math.max(8, sizes[level] * 2));
+        levels[level][sizes[level]++] = value;
+        retained++;
+    }
+
+    /**
+     * Method which adds a compactor on top of the stack, which lowers the
+     * capacity of every compactor below it
+     */
+    private void grow() {
+        int height = levels.length + 1;
+        levels = Arrays.copyOf(levels, height);
+        sizes = Arrays.copyOf(sizes, height);
+        levels[height - 1] = new double[8];
+        capacity = 0;
+        for (int h = 0; h < height; h++)
+            capacity += levelCapacity(h);
+    }
+
+    private int levelCapacity(int level) {
+        int depth = levels.length - level - 1;
+        return Math.max(2, (int) Math.ceil(k
+                * Math.pow(CAPACITY_DECAY, depth)));
+    }
+
+    /**
+     * Method which compacts compactors from the bottom up until the sketch
+     * is below its capacity again
+     */
+    private void compress() {
+        for (int h = 0; h < levels.length; h++) {
+            if (sizes[h] < levelCapacity(h))
+                continue;
+            if (h + 1 == levels.length)
+                grow();
+            compact(h);
+            if (retained < capacity)
+                return;
+        }
+    }
+
+    /**
+     * Method which sorts a compactor and promotes either the odd or the
+     * even values of each pair to the level above, chosen at random. An
+     * odd value out stays behind.
+     */
+    private void compact(int level) {
+        double[] values = levels[level];
+        int size = sizes[level];
+        Arrays.sort(values, 0, size);
+
+        random ^= random << 13;
+        random ^= random >>> 7;
+        random ^= random << 17;
+        int leftover = size & 1;
+        int offset = leftover + (int) (random & 1);
+        for (int i = offset; i < size; i += 2)
+            append(level + 1, values[i]);
+        retained -= size - leftover;
+        sizes[level] = leftover;
+    }
+
+    /**
+     * Method which sorts every retained value with its weight and builds
+     * the running total of the weights, if the sketch changed since it
+     * was last done
+     */
+    private void summarize() {
+        if (sortedValues != null)
+            return;
+
+        double[] values = new double[retained];
+        long[] weights = new long[retained];
+        double[] merged = new double[retained];
+        long[] mergedWeights = new long[retained];
+        int size = 0;
+        for (int h = 0; h < levels.length; h++) {
+            Arrays.sort(levels[h], 0, sizes[h]);
+            int i = 0;
+            int j = 0;
+            int out = 0;
+            while (i < size || j < sizes[h]) {
+                if (j == sizes[h] || (i < size && values[i] <= levels[h][j])) {
+                    merged[out] = values[i];
+                    mergedWeights[out++] = weights[i++];
+                }
+                else {
+                    merged[out] = levels[h][j++];
+                    mergedWeights[out++] = 1L << h;
+                }
+            }
+            double[] swapValues = values;
+            long[] swapWeights = weights;
+            values = merged;
+            weights = mergedWeights;
+            merged = swapValues;
+            mergedWeights = swapWeights;
+            size = out;
+        }
+        for (int i = 1; i < size; i++)
+            weights[i] += weights[i - 1];
+        cumulativeWeights = weights;
+        sortedValues = values;
+    }
+}
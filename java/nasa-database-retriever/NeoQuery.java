@@ -0,0 +1,227 @@
+import java.util.Date;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Class which represents a query over a NeoDatabase. Conditions are added
+ * one at a time, and the results are found lazily while iterating.
+ * When iteration starts the query works out how many rows each condition
+ * allows, using binary searches on the sorted indexes and the count of
+ * dangerous rows, and only walks the smallest of those candidate sets.
+ * The other conditions are checked on each candidate.
+ *
+ * liwll
+ */
+public class NeoQuery implements Iterable<NearEarthObject> {
+    private NeoDatabase database;
+    private long approachFrom;
+    private long approachTo;
+    private double missDistanceLimit;
+    private boolean hazardousOnly;
+    private double minDiameter;
+    private double maxDiameter;
+
+    /**
+     * Default constructor for a query which matches everything
+     * @param database
+     *  The database being queried
+     * @throws IllegalArgumentException
+     *  When database is null
+     */
+    public NeoQuery(NeoDatabase database) throws IllegalArgumentException {
+        if (database == null)
+            throw new IllegalArgumentException();
+
+        this.database = database;
+        this.approachFrom = Long.MIN_VALUE;
+        this.approachTo = Long.MAX_VALUE;
+        this.missDistanceLimit = Double.POSITIVE_INFINITY;
+        this.minDiameter = Double.NEGATIVE_INFINITY;
+        this.maxDiameter = Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Method which limits the query to closest approaches between two dates
+     * @param from
+     *  The earliest approach date (inclusive)
+     * @param to
+     *  The latest approach date (inclusive)
+     * @return
+     *  This query
+     * @throws IllegalArgumentException
+     *  When a date is null or from is after to
+     */
+    public NeoQuery approachBetween(Date from, Date to)
+            throws IllegalArgumentException {
+        if (from == null || to == null || from.after(to))
+            throw new IllegalArgumentException();
+
+        approachFrom = Math.max(approachFrom, from.getTime());
+        approachTo = Math.min(approachTo, to.getTime());
+        return this;
+    }
+
+    /**
+     * Method which limits the query to miss distances below a limit
+     * @param kilometers
+     *  The miss distance every result must be below
+     * @return
+     *  This query
+     */
+    public NeoQuery missDistanceBelow(double kilometers) {
+        missDistanceLimit = Math.min(missDistanceLimit, kilometers);
+        return this;
+    }
+
+    /**
+     * Method which limits the query to dangerous asteroids
+     * @return
+     *  This query
+     */
+    public NeoQuery hazardousOnly() {
+        hazardousOnly = true;
+        return this;
+    }
+
+    /**
+     * Method which limits the query to average diameters in a range
+     * @param min
+     *  The smallest diameter (inclusive)
+     * @param max
+     *  The largest diameter (inclusive)
+     * @return
+     *  This query
+     * @throws IllegalArgumentException
+     *  When min is greater than max
+     */
+    public NeoQuery diameterBetween(double min, double max)
+            throws IllegalArgumentException {
+        if (min > max)
+            throw new IllegalArgumentException();
+
+        minDiameter = Math.max(minDiameter, min);
+        maxDiameter = Math.min(maxDiameter, max);
+        return this;
+    }
+
+    /**
+     * Method which counts the results without creating any objects
+     * @return
+     *  The number of NearEarthObjects which match the query
+     */
+    public int count() {
+        Results results = new Results();
+        int count = 0;
+        while (results.nextRow() >= 0)
+            count++;
+        return count;
+    }
+
+    /**
+     * Method which starts going through the results, they are found as
+     * the iterator is advanced
+     * @return
+     *  An iterator over views of the matching NearEarthObjects
+     */
+    public Iterator<NearEarthObject> iterator() {
+        return new Results();
+    }
+
+    private boolean matches(NeoColumnStore store, int row) {
+        long date = store.getApproachDate(row);
+        double diameter = store.getAverageDiameter(row);
+        return date >= approachFrom && date <= approachTo
+                && store.getMissDistance(row) < missDistanceLimit
+                && (!hazardousOnly || store.isDangerous(row))
+                && diameter >= minDiameter && diameter <= maxDiameter;
+    }
+
+    /**
+     * Class which walks the smallest candidate set the query found and
+     * yields the rows that pass every condition
+     */
+    private class Results implements Iterator<NearEarthObject> {
+        private NeoColumnStore store;
+        private int[] rows;
+        private int position;
+        private int end;
+        private boolean dangerousScan;
+        private int next;
+
+        private Results() {
+            store = database.getStore();
+            end = store.size();
+            next = -1;
+
+            if (approachFrom != Long.MIN_VALUE || approachTo != Long.MAX_VALUE)
+                consider(database.getIndex(NeoSortKey.APPROACH_DATE),
+                        approachFrom, true, approachTo, true);
+            if (missDistanceLimit != Double.POSITIVE_INFINITY)
+                consider(database.getIndex(NeoSortKey.MISS_DISTANCE),
+                        Double.NEGATIVE_INFINITY, true,
+                        missDistanceLimit, false);
+            if (minDiameter != Double.NEGATIVE_INFINITY
+                    || maxDiameter != Double.POSITIVE_INFINITY)
+                consider(database.getIndex(NeoSortKey.DIAMETER),
+                        minDiameter, true, maxDiameter, true);
+            if (hazardousOnly && store.countDangerous() < end - position) {
+                rows = null;
+                position = 0;
+                end = store.size();
+                dangerousScan = true;
+            }
+        }
+
+        private void consider(NeoSortedIndex index, double low,
+                              boolean lowInclusive, double high,
+                              boolean highInclusive) {
+            int from = lowInclusive ? index.lowerBound(store, low)
+                    : index.upperBound(store, low);
+            int to = highInclusive ? index.upperBound(store, high)
+                    : index.lowerBound(store, high);
+            if (to - from < end - position) {
+                rows = index.getRows();
+                position = from;
+                end = Math.max(from, to);
+            }
+        }
+
+        private int nextRow() {
+            if (next >= 0) {
+                int row = next;
+                next = -1;
+                return row;
+            }
+
+            while (true) {
+                int row;
+                if (dangerousScan) {
+                    row = store.nextDangerous(position);
+                    if (row < 0)
+                        return -1;
+                    position = row + 1;
+                }
+                else {
+                    if (position >= end)
+                        return -1;
+                    row = rows == null ? position : rows[position];
+                    position++;
+                }
+                if (matches(store, row))
+                    return row;
+            }
+        }
+
+        public boolean hasNext() {
+            if (next < 0)
+                next = nextRow();
+            return next >= 0;
+        }
+
+        public NearEarthObject next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            return store.view(nextRow());
+        }
+    }
+}
@@ -0,0 +1,124 @@
+import java.util.Date;
+
+/**
+ * This class is a NearEarthObject which holds no data of its own.
+ * Every getter and setter reads or writes one row of a NeoColumnStore,
+ * so views are cheap to create and always show the current data.
+ *
+ * liwll
+ */
+public class NeoRecordView extends NearEarthObject {
+    private NeoColumnStore store;
+    private int row;
+
+    /**
+     * Default constructor for a view
+     * @param store
+     *  The store which holds the data
+     * @param row
+     *  The row of the store this view shows
+     */
+    public NeoRecordView(NeoColumnStore store, int row) {
+        this.store = store;
+        this.row = row;
+    }
+
+    /**
+     * Setter method for the row this view shows, which lets one view be
+     * moved along the store as a cursor instead of creating one per row
+     * @param row
+     *  The row of the store this view shows
+     */
+    public void setRow(int row) {
+        this.row = row;
+    }
+
+    /**
+     * Getter method for the row this view shows
+     * @return
+     *  The row of the store this view shows
+     */
+    public int getRow() {
+        return row;
+    }
+
+    @Override
+    public int getReferenceID() {
+        return store.getReferenceID(row);
+    }
+
+    @Override
+    public void setReferenceID(int referenceID) {
+        store.setReferenceID(row, referenceID);
+    }
+
+    @Override
+    public String getName() {
+        return store.getName(row);
+    }
+
+    @Override
+    public void setName(String name) {
+        store.setName(row, name);
+    }
+
+    @Override
+    public double getAbsoluteMagnitude() {
+        return store.getAbsoluteMagnitude(row);
+    }
+
+    @Override
+    public void setAbsoluteMagnitude(double absoluteMagnitude) {
+        store.setAbsoluteMagnitude(row, absoluteMagnitude);
+    }
+
+    @Override
+    public double getAverageDiameter() {
+        return store.getAverageDiameter(row);
+    }
+
+    @Override
+    public void setAverageDiameter(double averageDiameter) {
+        store.setAverageDiameter(row, averageDiameter);
+    }
+
+    @Override
+    public boolean isDangerous() {
+        return store.isDangerous(row);
+    }
+
+    @Override
+    public void setDangerous(boolean dangerous) {
+        store.setDangerous(row, dangerous);
+    }
+
+    @Override
+    public Date getClosestApproachDate() {
+        return new Date(store.getApproachDate(row));
+    }
+
+    @Override
+    public void setClosestApproachDate(Date closestApproachDate) {
+        store.setApproachDate(row, closestApproachDate.getTime());
+    }
+
+    @Override
+    public double getMissDistance() {
+        return store.getMissDistance(row);
+    }
+
+    @Override
+    public void setMissDistance(double missDistance) {
+        store.setMissDistance(row, missDistance);
+    }
+
+    @Override
+    public String getOrbitingBody() {
+        return store.getOrbitingBody(row);
+    }
+
+    @Override
+    public void setOrbitingBody(String orbitingBody) {
+        store.setOrbitingBody(row, orbitingBody);
+    }
+}
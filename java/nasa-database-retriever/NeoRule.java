@@ -0,0 +1,235 @@
+import java.util.Date;
+
+/**
+ * Class which represents a named watch rule for a NeoRuleEngine. Like a
+ * NeoQuery, conditions are added one at a time and a NearEarthObject
+ * matches the rule when it meets all of them. A rule with no conditions
+ * matches every NearEarthObject.
+ *
+ * liwll
+ */
+public class NeoRule {
+    public static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+    private String name;
+    private long approachFrom;
+    private long approachTo;
+    private long approachWithin;
+    private double missDistanceLimit;
+    private boolean hazardousOnly;
+    private double minDiameter;
+    private double maxDiameter;
+    private String orbitingBody;
+
+    /**
+     * Default constructor for a rule which matches everything
+     * @param name
+     *  The name the rule is reported under
+     * @throws IllegalArgumentException
+     *  When name is null
+     */
+    public NeoRule(String name) throws IllegalArgumentException {
+        if (name == null)
+            throw new IllegalArgumentException();
+
+        this.name = name;
+        this.approachFrom = Long.MIN_VALUE;
+        this.approachTo = Long.MAX_VALUE;
+        this.approachWithin = -1;
+        this.missDistanceLimit = Double.POSITIVE_INFINITY;
+        this.minDiameter = Double.NEGATIVE_INFINITY;
+        this.maxDiameter = Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Method which limits the rule to closest approaches between two dates
+     * @param from
+     *  The earliest approach date (inclusive)
+     * @param to
+     *  The latest approach date (inclusive)
+     * @return
+     *  This rule
+     * @throws IllegalArgumentException
+     *  When a date is null or from is after to
+     */
+    public NeoRule approachBetween(Date from, Date to)
+            throws IllegalArgumentException {
+        if (from == null || to == null || from.after(to))
+            throw new IllegalArgumentException();
+
+        approachFrom = Math.max(approachFrom, from.getTime());
+        approachTo = Math.min(approachTo, to.getTime());
+        return this;
+    }
+
+    /**
+     * Method which limits the rule to closest approaches from the time a
+     * NearEarthObject is ingested up to a number of days after it
+     * @param days
+     *  The number of days ahead (inclusive)
+     * @return
+     *  This rule
+     * @throws IllegalArgumentException
+     *  When days is negative
+     */
+    public NeoRule approachWithinDays(int days)
+            throws IllegalArgumentException {
+        if (days < 0)
+            throw new IllegalArgumentException();
+
+        long within = days * DAY_MILLIS;
+        approachWithin = approachWithin < 0 ? within
+                : Math.min(approachWithin, within);
+        return this;
+    }
+
+    /**
+     * Method which limits the rule to miss distances below a limit
+     * @param kilometers
+     *  The miss distance every match must be below
+     * @return
+     *  This rule
+     */
+    public NeoRule missDistanceBelow(double kilometers) {
+        missDistanceLimit = Math.min(missDistanceLimit, kilometers);
+        return this;
+    }
+
+    /**
+     * Method which limits the rule to dangerous asteroids
+     * @return
+     *  This rule
+     */
+    public NeoRule hazardousOnly() {
+        hazardousOnly = true;
+        return this;
+    }
+
+    /**
+     * Method which limits the rule to average diameters in a range
+     * @param min
+     *  The smallest diameter (inclusive)
+     * @param max
+     *  The largest diameter (inclusive)
+     * @return
+     *  This rule
+     * @throws IllegalArgumentException
+     *  When min is greater than max
+     */
+    public NeoRule diameterBetween(double min, double max)
+            throws IllegalArgumentException {
+        if (min > max)
+            throw new IllegalArgumentException();
+
+        minDiameter = Math.max(minDiameter, min);
+        maxDiameter = Math.min(maxDiameter, max);
+        return this;
+    }
+
+    /**
+     * Method which limits the rule to asteroids orbiting one body
+     * @param body
+     *  The orbital body, such as Earth
+     * @return
+     *  This rule
+     * @throws IllegalArgumentException
+     *  When body is null
+     */
+    public NeoRule orbiting(String body) throws IllegalArgumentException {
+        if (body == null)
+            throw new IllegalArgumentException();
+
+        orbitingBody = body;
+        return this;
+    }
+
+    /**
+     * Getter method for the name
+     * @return
+     *  The name the rule is reported under
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Getter method for the earliest approach date
+     * @return
+     *  The date in epoch milliseconds, Long.MIN_VALUE if there is none
+     */
+    public long getApproachFrom() {
+        return approachFrom;
+    }
+
+    /**
+     * Getter method for the latest approach date
+     * @return
+     *  The date in epoch milliseconds, Long.MAX_VALUE if there is none
+     */
+    public long getApproachTo() {
+        return approachTo;
+    }
+
+    /**
+     * Getter method for how soon after ingestion the approach must be
+     * @return
+     *  The time in milliseconds, negative if there is no limit
+     */
+    public long getApproachWithin() {
+        return approachWithin;
+    }
+
+    /**
+     * Getter method for the miss distance limit
+     * @return
+     *  The miss distance matches must be below, infinite if there is none
+     */
+    public double getMissDistanceLimit() {
+        return missDistanceLimit;
+    }
+
+    /**
+     * Getter method for whether only dangerous asteroids match
+     * @return
+     *  True if only dangerous asteroids match
+     */
+    public boolean isHazardousOnly() {
+        return hazardousOnly;
+    }
+
+    /**
+     * Getter method for the smallest diameter
+     * @return
+     *  The smallest diameter, negative infinity if there is none
+     */
+    public double getMinDiameter() {
+        return minDiameter;
+    }
+
+    /**
+     * Getter method for the largest diameter
+     * @return
+     *  The largest diameter, infinity if there is none
+     */
+    public double getMaxDiameter() {
+        return maxDiameter;
+    }
+
+    /**
+     * Getter method for the orbiting body
+     * @return
+     *  The body matches must orbit, or null for any body
+     */
+    public String getOrbitingBody() {
+        return orbitingBody;
+    }
+
+    /**
+     * Method which returns the name of the rule
+     * @return
+     *  The name of the rule
+     */
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,362 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class which checks rows against a set of NeoRules as they are ingested
+ * and tells a listener about every match. The rules are compiled into a
+ * shared network instead of being checked one by one:
+ * <ul>
+ *     <li>Every condition is split into one sided tests, such as miss
+ *     distance below a limit, and equal tests from different rules become
+ *     one node, so each is evaluated once per row.</li>
+ *     <li>The nodes on one column are sorted by their limit, so the nodes
+ *     a row passes are found with a binary search instead of trying each
+ *     one.</li>
+ *     <li>Each node passed adds one to the count of every rule that uses
+ *     it, and a rule matches when its count reaches its number of
+ *     conditions.</li>
+ * </ul>
+ * The cost of a row therefore depends on the conditions it passes rather
+ * than on the number of rules.
+ *
+ * liwll
+ */
+public class NeoRuleEngine {
+    private NeoRule[] rules;
+    private NeoAlertListener listener;
+    private int[] needed;
+    private int[] counts;
+    private int[] stamps;
+    private int stamp;
+    private int[] matched;
+    private Threshold[] lowers;
+    private Threshold[] uppers;
+    private int[] unconditional;
+    private int[] hazardous;
+    private Map<String, int[]> bodies;
+    private int conditionCount;
+
+    /**
+     * Default constructor for an engine, the rules are compiled straight
+     * away and cannot be changed afterwards
+     * @param rules
+     *  The rules to check, in the order their matches are reported
+     * @param listener
+     *  The listener told about every match
+     * @throws IllegalArgumentException
+     *  When rules or listener is null, or a rule is null
+     */
+    public NeoRuleEngine(Collection<NeoRule> rules,
+                         NeoAlertListener listener)
+            throws IllegalArgumentException {
+        if (rules == null || listener == null || rules.contains(null))
+            throw new IllegalArgumentException();
+
+        this.rules = rules.toArray(new NeoRule[0]);
+        this.listener = listener;
+        this.needed = new int[this.rules.length];
+        this.counts = new int[this.rules.length];
+        this.stamps = new int[this.rules.length];
+        this.matched = new int[this.rules.length];
+        compile();
+    }
+
+    /**
+     * Method which checks a row against every rule and tells the listener
+     * about each rule it matches, in rule order
+     * @param store
+     *  The store which holds the row
+     * @param row
+     *  The row to check
+     * @param now
+     *  The time of ingestion in epoch milliseconds, which rules about
+     *  approaches in the coming days count from
+     * @return
+     *  The number of rules the row matched
+     * @throws IllegalArgumentException
+     *  When store is null or the row does not exist
+     */
+    public synchronized int evaluate(NeoColumnStore store, int row, long now)
+            throws IllegalArgumentException {
+        if (store == null || row < 0 || row >= store.size())
+            throw new IllegalArgumentException();
+
+        if (++stamp == 0) {
+            Arrays.fill(stamps, 0);
+            stamp = 1;
+        }
+        int matches = 0;
+        for (int rule : unconditional)
+            matched[matches++] = rule;
+
+        for (Measure measure : Measure.values()) {
+            double value = measure.valueOf(store, row, now);
+            if (Double.isNaN(value))
+                continue;
+            matches = lowers[measure.ordinal()].passBelow(value, this,
+                    matches);
+            matches = uppers[measure.ordinal()].passAbove(value, this,
+                    matches);
+        }
+        if (store.isDangerous(row))
+            matches = pass(hazardous, matches);
+        int[] body = bodies.get(store.getOrbitingBody(row));
+        if (body != null)
+            matches = pass(body, matches);
+
+        if (matches > 0) {
+            Arrays.sort(matched, 0, matches);
+            NearEarthObject neo = store.view(row);
+            for (int i = 0; i < matches; i++)
+                listener.matched(rules[matched[i]], neo);
+        }
+        return matches;
+    }
+
+    /**
+     * Getter method for the number of rules
+     * @return
+     *  The number of rules being checked
+     */
+    public int getRuleCount() {
+        return rules.length;
+    }
+
+    /**
+     * Getter method for the number of distinct conditions, each of which
+     * is evaluated at most once per row however many rules share it
+     * @return
+     *  The number of nodes in the network
+     */
+    public int getConditionCount() {
+        return conditionCount;
+    }
+
+    /**
+     * Method which counts a row towards every rule that uses a node it
+     * passed, adding the rules whose count is complete to the matches
+     * @return
+     *  The new number of matches
+     */
+    private int pass(int[] users, int matches) {
+        for (int rule : users) {
+            if (stamps[rule] != stamp) {
+                stamps[rule] = stamp;
+                counts[rule] = 0;
+            }
+            if (++counts[rule] == needed[rule])
+                matched[matches++] = rule;
+        }
+        return matches;
+    }
+
+    /**
+     * Method which splits every rule into its tests and merges the equal
+     * ones into shared nodes
+     */
+    private void compile() {
+        List<List<Test>> lowerTests = new ArrayList<>();
+        List<List<Test>> upperTests = new ArrayList<>();
+        for (int i = 0; i < Measure.values().length; i++) {
+            lowerTests.add(new ArrayList<>());
+            upperTests.add(new ArrayList<>());
+        }
+        List<Integer> always = new ArrayList<>();
+        List<Integer> dangerous = new ArrayList<>();
+        Map<String, List<Integer>> orbiting = new HashMap<>();
+
+        for (int rule = 0; rule < rules.length; rule++) {
+            NeoRule r = rules[rule];
+            List<Test> lower = new ArrayList<>();
+            List<Test> upper = new ArrayList<>();
+            if (r.getApproachFrom() != Long.MIN_VALUE)
+                lower.add(new Test(Measure.APPROACH_DATE,
+                        r.getApproachFrom(), true, rule));
+            if (r.getApproachTo() != Long.MAX_VALUE)
+                upper.add(new Test(Measure.APPROACH_DATE, r.getApproachTo(),
+                        true, rule));
+            if (r.getApproachWithin() >= 0) {
+                lower.add(new Test(Measure.APPROACH_IN, 0, true, rule));
+                upper.add(new Test(Measure.APPROACH_IN,
+                        r.getApproachWithin(), true, rule));
+            }
+            if (r.getMissDistanceLimit() != Double.POSITIVE_INFINITY)
+                upper.add(new Test(Measure.MISS_DISTANCE,
+                        r.getMissDistanceLimit(), false, rule));
+            if (r.getMinDiameter() != Double.NEGATIVE_INFINITY)
+                lower.add(new Test(Measure.DIAMETER, r.getMinDiameter(),
+                        true, rule));
+            if (r.getMaxDiameter() != Double.POSITIVE_INFINITY)
+                upper.add(new Test(Measure.DIAMETER, r.getMaxDiameter(),
+                        true, rule));
+
+            for (Test test : lower)
+                lowerTests.get(test.measure.ordinal()).add(test);
+            for (Test test : upper)
+                upperTests.get(test.measure.ordinal()).add(test);
+            needed[rule] = lower.size() + upper.size();
+            if (r.isHazardousOnly()) {
+                dangerous.add(rule);
+                needed[rule]++;
+            }
+            if (r.getOrbitingBody() != null) {
+                orbiting.computeIfAbsent(r.getOrbitingBody(),
+                        body -> new ArrayList<>()).add(rule);
+                needed[rule]++;
+            }
+            if (needed[rule] == 0)
+                always.add(rule);
+        }
+
+        lowers = new Threshold[Measure.values().length];
+        uppers = new Threshold[Measure.values().length];
+        for (int i = 0; i < lowers.length; i++) {
+            lowers[i] = new Threshold(lowerTests.get(i));
+            uppers[i] = new Threshold(upperTests.get(i));
+            conditionCount += lowers[i].limits.length
+                    + uppers[i].limits.length;
+        }
+        unconditional = toArray(always);
+        hazardous = toArray(dangerous);
+        bodies = new HashMap<>();
+        orbiting.forEach((body, users) -> bodies.put(body, toArray(users)));
+        conditionCount += (hazardous.length > 0 ? 1 : 0) + bodies.size();
+    }
+
+    private static int[] toArray(List<Integer> values) {
+        return values.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * This enum is for the columns rules test against a limit
+     */
+    private enum Measure {
+        APPROACH_DATE {
+            double valueOf(NeoColumnStore store, int row, long now) {
+                return store.getApproachDate(row);
+            }
+        },
+        APPROACH_IN {
+            double valueOf(NeoColumnStore store, int row, long now) {
+                return store.getApproachDate(row) - now;
+            }
+        },
+        MISS_DISTANCE {
+            double valueOf(NeoColumnStore store, int row, long now) {
+                return store.getMissDistance(row);
+            }
+        },
+        DIAMETER {
+            double valueOf(NeoColumnStore store, int row, long now) {
+                return store.getAverageDiameter(row);
+            }
+        };
+
+        abstract double valueOf(NeoColumnStore store, int row, long now);
+    }
+
+    /**
+     * Class for one rule's test of a column against a limit
+     */
+    private static class Test {
+        private Measure measure;
+        private double limit;
+        private boolean inclusive;
+        private int rule;
+
+        private Test(Measure measure, double limit, boolean inclusive,
+                     int rule) {
+            this.measure = measure;
+            this.limit = limit;
+            this.inclusive = inclusive;
+            this.rule = rule;
+        }
+    }
+
+    /**
+     * Class for the nodes testing one column on one side, sorted by their
+     * limit, each with the rules that use it
+     */
+    private static class Threshold {
+        private double[] limits;
+        private boolean[] inclusive;
+        private int[][] users;
+
+        private Threshold(List<Test> tests) {
+            tests.sort(Comparator.<Test>comparingDouble(test -> test.limit)
+                    .thenComparing(test -> test.inclusive));
+            int nodes = 0;
+            limits = new double[tests.size()];
+            inclusive = new boolean[tests.size()];
+            users = new int[tests.size()][];
+            for (int i = 0; i < tests.size(); ) {
+                Test first = tests.get(i);
+                int end = i;
+                while (end < tests.size()
+                        && tests.get(end).limit == first.limit
+                        && tests.get(end).inclusive == first.inclusive)
+                    end++;
+                limits[nodes] = first.limit;
+                inclusive[nodes] = first.inclusive;
+                users[nodes] = new int[end - i];
+                for (int j = i; j < end; j++)
+                    users[nodes][j - i] = tests.get(j).rule;
+                nodes++;
+                i = end;
+            }
+            limits = Arrays.copyOf(limits, nodes);
+            inclusive = Arrays.copyOf(inclusive, nodes);
+            users = Arrays.copyOf(users, nodes);
+        }
+
+        /**
+         * Method which passes a value through the nodes that need it to be
+         * at least their limit, which are the ones with limits below it
+         */
+        private int passBelow(double value, NeoRuleEngine engine,
+                              int matches) {
+            int end = bound(value, false);
+            for (int node = 0; node < end; node++) {
+                if (limits[node] < value || inclusive[node])
+                    matches = engine.pass(users[node], matches);
+            }
+            return matches;
+        }
+
+        /**
+         * Method which passes a value through the nodes that need it to be
+         * at most their limit, which are the ones with limits above it
+         */
+        private int passAbove(double value, NeoRuleEngine engine,
+                              int matches) {
+            for (int node = bound(value, true); node < limits.length;
+                 node++) {
+                if (limits[node] > value || inclusive[node])
+                    matches = engine.pass(users[node], matches);
+            }
+            return matches;
+        }
+
+        /**
+         * Method which finds the first node whose limit is at least a
+         * value when lower is set, or above it otherwise
+         */
+        private int bound(double value, boolean lower) {
+            int low = 0;
+            int high = limits.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (lower ? limits[mid] < value : limits[mid] <= value)
+                    low = mid + 1;
+                else
+                    high = mid;
+            }
+            return low;
+        }
+    }
+}
@@ -0,0 +1,236 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Class which represents a skyline query over a NeoDatabase, the
+ * NearEarthObjects which no other one beats on every danger attribute at
+ * once. One NearEarthObject dominates another when its diameter is at
+ * least as large, its miss distance at least as small, and its absolute
+ * magnitude at least as small (brighter), and it is strictly better on one
+ * of them. The store is split across a fork-join pool and each worker
+ * keeps a window of the rows no other row in its range dominates, a block
+ * nested loop over the primitive columns. As workers join, each window is
+ * checked against the other, since a row in the skyline of the whole
+ * store is always in the skyline of its own range. Rows with a missing
+ * attribute are left out. The skyline is taken over the version of the
+ * database that was published when it was started, so it can run while
+ * another thread adds pages, and its results are read-only.
+ *
+ * liwll
+ */
+public class NeoSkyline {
+    public static final int PARALLEL_THRESHOLD = 1 << 15;
+    private NeoColumnStore store;
+    private boolean hazardousOnly;
+    private long approachFrom;
+    private long approachTo;
+
+    /**
+     * Default constructor for a skyline over every NearEarthObject
+     * @param database
+     *  The database being queried
+     * @throws IllegalArgumentException
+     *  When database is null
+     */
+    public NeoSkyline(NeoDatabase database) throws IllegalArgumentException {
+        if (database == null)
+            throw new IllegalArgumentException();
+
+        this.store = database.view().getStore();
+        this.approachFrom = Long.MIN_VALUE;
+        this.approachTo = Long.MAX_VALUE;
+    }
+
+    /**
+     * Method which limits the skyline to dangerous asteroids
+     * @return
+     *  This skyline
+     */
+    public NeoSkyline hazardousOnly() {
+        hazardousOnly = true;
+        return this;
+    }
+
+    /**
+     * Method which limits the skyline to closest approaches between two
+     * dates
+     * @param from
+     *  The earliest approach date (inclusive)
+     * @param to
+     *  The latest approach date (inclusive)
+     * @return
+     *  This skyline
+     * @throws IllegalArgumentException
+     *  When a date is null or from is after to
+     */
+    public NeoSkyline approachBetween(Date from, Date to)
+            throws IllegalArgumentException {
+        if (from == null || to == null || from.after(to))
+            throw new IllegalArgumentException();
+
+        approachFrom = Math.max(approachFrom, from.getTime());
+        approachTo = Math.min(approachTo, to.getTime());
+        return this;
+    }
+
+    /**
+     * Method which runs the query
+     * @return
+     *  Views of the NearEarthObjects in the skyline, largest diameter
+     *  first, then smallest miss distance, then brightest
+     */
+    public List<NearEarthObject> run() {
+        Window skyline = new Worker(this, 0, store.size()).invoke();
+        Integer[] slots = new Integer[skyline.size];
+        for (int slot = 0; slot < slots.length; slot++)
+            slots[slot] = slot;
+        Arrays.sort(slots, (left, right) -> {
+            int result = Double.compare(skyline.diameters[right],
+                    skyline.diameters[left]);
+            if (result == 0)
+                result = Double.compare(skyline.missDistances[left],
+                        skyline.missDistances[right]);
+            if (result == 0)
+                result = Double.compare(skyline.magnitudes[left],
+                        skyline.magnitudes[right]);
+            if (result == 0)
+                result = Integer.compare(skyline.rows[left],
+                        skyline.rows[right]);
+            return result;
+        });
+
+        List<NearEarthObject> results = new ArrayList<>(slots.length);
+        for (int slot : slots)
+            results.add(store.view(skyline.rows[slot]));
+        return results;
+    }
+
+    private boolean matches(int row) {
+        long date = store.getApproachDate(row);
+        return date >= approachFrom && date <= approachTo
+                && (!hazardousOnly || store.isDangerous(row));
+    }
+
+    /**
+     * Method which checks whether one set of attributes dominates another,
+     * being at least as good on all of them and better on one
+     */
+    private static boolean dominates(double diameter, double missDistance,
+                                     double magnitude, double otherDiameter,
+                                     double otherMissDistance,
+                                     double otherMagnitude) {
+        return diameter >= otherDiameter && missDistance <= otherMissDistance
+                && magnitude <= otherMagnitude
+                && (diameter > otherDiameter
+                || missDistance < otherMissDistance
+                || magnitude < otherMagnitude);
+    }
+
+    /**
+     * Class which holds the rows no other row seen so far dominates, with
+     * their attributes copied out column by column
+     */
+    private static class Window {
+        private int[] rows;
+        private double[] diameters;
+        private double[] missDistances;
+        private double[] magnitudes;
+        private int size;
+
+        private Window() {
+            this.rows = new int[16];
+            this.diameters = new double[16];
+            this.missDistances = new double[16];
+            this.magnitudes = new double[16];
+        }
+
+        /**
+         * Method which adds a row unless a row in the window dominates it,
+         * dropping every row in the window it dominates
+         */
+        private void offer(int row, double diameter, double missDistance,
+                           double magnitude) {
+            for (int i = 0; i < size; i++) {
+                if (dominates(diameters[i], missDistances[i], magnitudes[i],
+                        diameter, missDistance, magnitude))
+                    return;
+            }
+
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (dominates(diameter, missDistance, magnitude,
+                        diameters[i], missDistances[i], magnitudes[i]))
+                    continue;
+                rows[kept] = rows[i];
+                diameters[kept] = diameters[i];
+                missDistances[kept] = missDistances[i];
+                magnitudes[kept] = magnitudes[i];
+                kept++;
+            }
+            size = kept;
+
+            if (size == rows.length) {
+                rows = Arrays.copyOf(rows, size * 2);
+                diameters = Arrays.copyOf(diameters, size * 2);
+                missDistances = Arrays.copyOf(missDistances, size * 2);
+                magnitudes = Arrays.copyOf(magnitudes, size * 2);
+            }
+            rows[size] = row;
+            diameters[size] = diameter;
+            missDistances[size] = missDistance;
+            magnitudes[size] = magnitude;
+            size++;
+        }
+    }
+
+    /**
+     * Class which finds the skyline of a range of rows, splitting the range
+     * in half while it is larger than the parallel threshold
+     */
+    private static class Worker extends RecursiveTask<Window> {
+        private static final long serialVersionUID = 1L;
+        private NeoSkyline skyline;
+        private int fromRow;
+        private int toRow;
+
+        private Worker(NeoSkyline skyline, int fromRow, int toRow) {
+            this.skyline = skyline;
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+        }
+
+        protected Window compute() {
+            if (toRow - fromRow <= PARALLEL_THRESHOLD)
+                return scan();
+
+            int middle = (fromRow + toRow) >>> 1;
+            Worker left = new Worker(skyline, fromRow, middle);
+            Worker right = new Worker(skyline, middle, toRow);
+            left.fork();
+            Window merged = right.compute();
+            Window other = left.join();
+            for (int i = 0; i < other.size; i++)
+                merged.offer(other.rows[i], other.diameters[i],
+                        other.missDistances[i], other.magnitudes[i]);
+            return merged;
+        }
+
+        private Window scan() {
+            NeoColumnStore store = skyline.store;
+            Window window = new Window();
+            for (int row = fromRow; row < toRow; row++) {
+                double diameter = store.getAverageDiameter(row);
+                double missDistance = store.getMissDistance(row);
+                double magnitude = store.getAbsoluteMagnitude(row);
+                if (Double.isNaN(diameter) || Double.isNaN(missDistance)
+                        || Double.isNaN(magnitude) || !skyline.matches(row))
+                    continue;
+                window.offer(row, diameter, missDistance, magnitude);
+            }
+            return window;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Class which saves a NeoDatabase to a binary snapshot and opens it again
+ * through a memory mapped file. The file starts with a magic number and a
+ * format version, followed by the store's fixed width columns, its name
+ * arena and body dictionary, its approach table, the sort order that was
+ * in use when it was saved, and the database's NeoSummary.
+ *
+ * liwll
+ */
+public class NeoSnapshotFile {
+    public static final int MAGIC = 0x4E454F53;
+    public static final int VERSION = 4;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private NeoColumnStore store;
+    private int[] order;
+    private NeoSummary summary;
+
+    private NeoSnapshotFile(NeoColumnStore store, int[] order,
+                            NeoSummary summary) {
+        this.store = store;
+        this.order = order;
+        this.summary = summary;
+    }
+
+    /**
+     * Method which writes a snapshot, the file is replaced in one step so a
+     * failed save never leaves half a snapshot behind
+     * @param path
+     *  The file to write
+     * @param store
+     *  The store being saved
+     * @param order
+     *  The sort order, as row numbers, with one entry per row
+     * @param summary
+     *  The summary of the database
+     * @throws IllegalArgumentException
+     *  When an argument is null or order does not match the store
+     * @throws IOException
+     *  When the file could not be written
+     */
+    public static void save(Path path, NeoColumnStore store, int[] order,
+                            NeoSummary summary)
+            throws IllegalArgumentException, IOException {
+        if (path == null || store == null || order == null
+                || order.length < store.size() || summary == null)
+            throw new IllegalArgumentException();
+
+        Path directory = path.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(directory, "snapshot-", ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temp),
+                            BUFFER_SIZE))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                store.writeTo(out);
+                for (int i = 0; i < store.size(); i++)
+                    out.writeInt(order[i]);
+                summary.writeTo(out);
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Method which maps a snapshot into memory and reads it
+     * @param path
+     *  The file to open
+     * @return
+     *  The opened snapshot
+     * @throws IllegalArgumentException
+     *  When path is null
+     * @throws IOException
+     *  When the file could not be read or is not a snapshot this version
+     *  understands
+     */
+    public static NeoSnapshotFile open(Path path)
+            throws IllegalArgumentException, IOException {
+        if (path == null)
+            throw new IllegalArgumentException();
+
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException("Snapshot is too large to map.");
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY,
+                    0, channel.size());
+
+            if (in.remaining() < 8 || in.getInt() != MAGIC)
+                throw new IOException("Not a NEO snapshot.");
+            int version = in.getInt();
+            if (version != VERSION)
+                throw new IOException("Unsupported snapshot version "
+                        + version + ".");
+
+            try {
+                NeoColumnStore store = NeoColumnStore.readFrom(in);
+                int[] order = new int[store.size()];
+                in.asIntBuffer().get(order);
+                in.position(in.position() + order.length * Integer.BYTES);
+                for (int row : order)
+                    if (row < 0 || row >= order.length)
+                        throw new IllegalArgumentException();
+                NeoSummary summary = NeoSummary.readFrom(in);
+                return new NeoSnapshotFile(store, order, summary);
+            }
+            catch (RuntimeException e) {
+                throw new IOException("Snapshot is truncated or corrupt.", e);
+            }
+        }
+    }
+
+    /**
+     * Getter method for the store held in the snapshot
+     * @return
+     *  The store
+     */
+    public NeoColumnStore getStore() {
+        return store;
+    }
+
+    /**
+     * Getter method for the sort order held in the snapshot
+     * @return
+     *  The sort order, as row numbers
+     */
+    public int[] getOrder() {
+        return order;
+    }
+
+    /**
+     * Getter method for the summary held in the snapshot
+     * @return
+     *  The summary of the database when it was saved
+     */
+    public NeoSummary getSummary() {
+        return summary;
+    }
+}
@@ -0,0 +1,241 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Class which sorts rows of a NeoColumnStore on primitive keys instead of
+ * comparing NearEarthObjects. The keys are copied out of the store into an
+ * array next to the rows, then the rows are sorted along with them.
+ * Reference IDs and dates are sorted with a parallel LSD radix sort, and
+ * diameters and miss distances with a fork-join merge sort. Every sort is
+ * stable, so sorting on several keys is done one key at a time, starting
+ * with the least important one.
+ *
+ * liwll
+ */
+public class NeoSortEngine {
+    public static final int PARALLEL_THRESHOLD = 1 << 15;
+    private static final int RADIX_BITS = 8;
+    private static final int BUCKETS = 1 << RADIX_BITS;
+
+    private NeoSortEngine() {}
+
+    /**
+     * Method which sorts rows on one or more keys, rows which are equal on
+     * every key keep the order they were given in
+     * @param store
+     *  The store which holds the rows
+     * @param rows
+     *  The rows to sort, sorted in place
+     * @param n
+     *  The number of rows at the front of the array to sort
+     * @param keys
+     *  The keys to sort on, the first key is the most important
+     * @throws IllegalArgumentException
+     *  When an argument is null or n is out of bounds
+     */
+    public static void sort(NeoColumnStore store, int[] rows, int n,
+                            NeoSortKey... keys)
+            throws IllegalArgumentException {
+        if (store == null || rows == null || keys == null || n < 0
+                || n > rows.length)
+            throw new IllegalArgumentException();
+
+        for (int k = keys.length - 1; k >= 0; k--) {
+            switch (keys[k]) {
+                case REFERENCE_ID:
+                case APPROACH_DATE:
+                    radixSort(store, rows, n, keys[k]);
+                    break;
+                case DIAMETER:
+                case MISS_DISTANCE:
+                    mergeSort(store, rows, n, keys[k]);
+                    break;
+                default:
+                    throw new IllegalArgumentException();
+            }
+        }
+    }
+
+    private static void radixSort(NeoColumnStore store, int[] rows, int n,
+                                  NeoSortKey key) {
+        long[] keys = new long[n];
+        parallelFor(n, i -> {
+            long value = key == NeoSortKey.REFERENCE_ID
+                    ? store.getReferenceID(rows[i])
+                    : store.getApproachDate(rows[i]);
+            keys[i] = value ^ Long.MIN_VALUE;
+        });
+
+        int chunks = n < PARALLEL_THRESHOLD ? 1
+                : Math.min(ForkJoinPool.getCommonPoolParallelism() * 4,
+                n / (PARALLEL_THRESHOLD / 4));
+        int chunkSize = (n + chunks - 1) / Math.max(chunks, 1);
+        long[] keyBuffer = new long[n];
+        int[] rowBuffer = new int[n];
+        long[] sourceKeys = keys;
+        int[] sourceRows = rows;
+        long[] targetKeys = keyBuffer;
+        int[] targetRows = rowBuffer;
+
+        for (int shift = 0; shift < Long.SIZE; shift += RADIX_BITS) {
+            int digitShift = shift;
+            long[] fromKeys = sourceKeys;
+            int[][] counts = new int[chunks][BUCKETS];
+            forEachChunk(chunks, c -> {
+                int end = Math.min(n, (c + 1) * chunkSize);
+                int[] count = counts[c];
+                for (int i = c * chunkSize; i < end; i++)
+                    count[(int) (fromKeys[i] >>> digitShift)
+                            & (BUCKETS - 1)]++;
+            });
+
+            int[][] offsets = new int[chunks][BUCKETS];
+            int position = 0;
+            boolean oneBucket = false;
+            for (int b = 0; b < BUCKETS; b++) {
+                int bucketStart = position;
+                for (int c = 0; c < chunks; c++) {
+                    offsets[c][b] = position;
+                    position += counts[c][b];
+                }
+                if (position - bucketStart == n)
+                    oneBucket = true;
+            }
+            if (oneBucket)
+                continue;
+
+            int[] fromRows = sourceRows;
+            long[] toKeys = targetKeys;
+            int[] toRows = targetRows;
+            forEachChunk(chunks, c -> {
+                int end = Math.min(n, (c + 1) * chunkSize);
+                int[] offset = offsets[c];
+                for (int i = c * chunkSize; i < end; i++) {
+                    int digit = (int) (fromKeys[i] >>> digitShift)
+                            & (BUCKETS - 1);
+                    int to = offset[digit]++;
+                    toKeys[to] = fromKeys[i];
+                    toRows[to] = fromRows[i];
+                }
+            });
+
+            sourceKeys = toKeys;
+            sourceRows = toRows;
+            targetKeys = fromKeys;
+            targetRows = fromRows;
+        }
+
+        if (sourceRows != rows)
+            System.arraycopy(sourceRows, 0, rows, 0, n);
+    }
+
+    private static void mergeSort(NeoColumnStore store, int[] rows, int n,
+                                  NeoSortKey key) {
+        double[] keys = new double[n];
+        parallelFor(n, i -> keys[i] = key.valueOf(store, rows[i]));
+
+        MergeTask task = new MergeTask(keys, rows, new double[n],
+                new int[n], 0, n);
+        if (n < PARALLEL_THRESHOLD)
+            task.compute();
+        else
+            ForkJoinPool.commonPool().invoke(task);
+    }
+
+    private static void parallelFor(int n, IntConsumer body) {
+        if (n < PARALLEL_THRESHOLD) {
+            for (int i = 0; i < n; i++)
+                body.accept(i);
+        }
+        else {
+            IntStream.range(0, n).parallel().forEach(body);
+        }
+    }
+
+    private static void forEachChunk(int chunks, IntConsumer body) {
+        if (chunks == 1)
+            body.accept(0);
+        else
+            IntStream.range(0, chunks).parallel().forEach(body);
+    }
+
+    /**
+     * Class which merge sorts a range of keys and the rows beside them,
+     * sorting the two halves of a large range at the same time
+     */
+    private static class MergeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private static final int INSERTION_LIMIT = 24;
+        private double[] keys;
+        private int[] rows;
+        private double[] keyBuffer;
+        private int[] rowBuffer;
+        private int from;
+        private int to;
+
+        private MergeTask(double[] keys, int[] rows, double[] keyBuffer,
+                          int[] rowBuffer, int from, int to) {
+            this.keys = keys;
+            this.rows = rows;
+            this.keyBuffer = keyBuffer;
+            this.rowBuffer = rowBuffer;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected void compute() {
+            if (to - from <= INSERTION_LIMIT) {
+                insertionSort();
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            MergeTask left = new MergeTask(keys, rows, keyBuffer, rowBuffer,
+                    from, middle);
+            MergeTask right = new MergeTask(keys, rows, keyBuffer, rowBuffer,
+                    middle, to);
+            if (to - from >= PARALLEL_THRESHOLD) {
+                invokeAll(left, right);
+            }
+            else {
+                left.compute();
+                right.compute();
+            }
+
+            if (Double.compare(keys[middle - 1], keys[middle]) <= 0)
+                return;
+            System.arraycopy(keys, from, keyBuffer, from, to - from);
+            System.arraycopy(rows, from, rowBuffer, from, to - from);
+            int i = from;
+            int j = middle;
+            for (int k = from; k < to; k++) {
+                if (j >= to || (i < middle
+                        && Double.compare(keyBuffer[i], keyBuffer[j]) <= 0)) {
+                    keys[k] = keyBuffer[i];
+                    rows[k] = rowBuffer[i++];
+                }
+                else {
+                    keys[k] = keyBuffer[j];
+                    rows[k] = rowBuffer[j++];
+                }
+            }
+        }
+
+        private void insertionSort() {
+            for (int i = from + 1; i < to; i++) {
+                double key = keys[i];
+                int row = rows[i];
+                int j = i - 1;
+                while (j >= from && Double.compare(keys[j], key) > 0) {
+                    keys[j + 1] = keys[j];
+                    rows[j + 1] = rows[j];
+                    j--;
+                }
+                keys[j + 1] = key;
+                rows[j + 1] = row;
+            }
+        }
+    }
+}
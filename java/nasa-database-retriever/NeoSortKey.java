@@ -0,0 +1,98 @@
+import java.util.Comparator;
+
+/**
+ * This class is an enum for the keys the database keeps sorted indexes on.
+ * There is one key for each of the comparator classes, and each key
+ * compares two rows of a NeoColumnStore the same way its comparator
+ * compares two NearEarthObjects.
+ *
+ * liwll
+ */
+public enum NeoSortKey {
+    REFERENCE_ID {
+        public double valueOf(NeoColumnStore store, int row) {
+            return store.getReferenceID(row);
+        }
+
+        public int compareRows(NeoColumnStore store, int left, int right) {
+            return Integer.compare(store.getReferenceID(left),
+                    store.getReferenceID(right));
+        }
+    },
+    DIAMETER {
+        public double valueOf(NeoColumnStore store, int row) {
+            return store.getAverageDiameter(row);
+        }
+
+        public int compareRows(NeoColumnStore store, int left, int right) {
+            return Double.compare(store.getAverageDiameter(left),
+                    store.getAverageDiameter(right));
+        }
+    },
+    APPROACH_DATE {
+        public double valueOf(NeoColumnStore store, int row) {
+            return store.getApproachDate(row);
+        }
+
+        public int compareRows(NeoColumnStore store, int left, int right) {
+            return Long.compare(store.getApproachDate(left),
+                    store.getApproachDate(right));
+        }
+    },
+    MISS_DISTANCE {
+        public double valueOf(NeoColumnStore store, int row) {
+            return store.getMissDistance(row);
+        }
+
+        public int compareRows(NeoColumnStore store, int left, int right) {
+            return Double.compare(store.getMissDistance(left),
+                    store.getMissDistance(right));
+        }
+    };
+
+    /**
+     * Method which reads this key from a row of a store, dates are given
+     * in epoch milliseconds which a double holds exactly
+     * @param store
+     *  The store which holds the row
+     * @param row
+     *  The row to read
+     * @return
+     *  The value of the key
+     */
+    public abstract double valueOf(NeoColumnStore store, int row);
+
+    /**
+     * Method which compares two rows of a store on this key
+     * @param store
+     *  The store which holds the rows
+     * @param left
+     *  The first row you wish to compare
+     * @param right
+     *  The other row you wish to compare
+     * @return
+     *  A negative, zero, or positive int depending on the comparison
+     */
+    public abstract int compareRows(NeoColumnStore store, int left, int right);
+
+    /**
+     * Method which finds the key a comparator sorts on
+     * @param comp
+     *  The comparator
+     * @return
+     *  The key the comparator sorts on, or null if it is not one of the
+     *  comparator classes
+     */
+    public static NeoSortKey forComparator(Comparator<?> comp) {
+        if (comp instanceof ReferenceIDComparator)
+            return REFERENCE_ID;
+        else if (comp instanceof DiameterComparator)
+            return DIAMETER;
+        else if (comp instanceof ApproachDateComparator)
+            return APPROACH_DATE;
+        else if (comp instanceof MissDistanceComparator)
+            return MISS_DISTANCE;
+        else
+            return null;
+    }
+}
@@ -0,0 +1,200 @@
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Class which keeps the rows of a NeoColumnStore sorted on one key.
+ * New rows are sorted on their own with the NeoSortEngine and merged in,
+ * so the index never has to be sorted again from scratch. Rows changed in
+ * place by ingestion are taken out and merged back in the same way. Rows
+ * with equal keys stay in the order they were added to the store.
+ *
+ * liwll
+ */
+public class NeoSortedIndex {
+    private NeoSortKey key;
+    private int[] rows;
+    private int size;
+    private long updateCount;
+
+    /**
+     * Default constructor for an index, it starts out covering every row
+     * already in the store
+     * @param key
+     *  The key the rows are sorted on
+     * @param store
+     *  The store being indexed
+     * @throws IllegalArgumentException
+     *  When key or store is null
+     */
+    public NeoSortedIndex(NeoSortKey key, NeoColumnStore store)
+            throws IllegalArgumentException {
+        if (key == null || store == null)
+            throw new IllegalArgumentException();
+
+        this.key = key;
+        this.rows = new int[0];
+        this.updateCount = store.getUpdateCount();
+        insertRange(store, 0, store.size());
+    }
+
+    /**
+     * Method which merges rows that were added to the end of the store
+     * into the index
+     * @param store
+     *  The store being indexed
+     * @param fromRow
+     *  The first new row
+     * @param toRow
+     *  One past the last new row
+     */
+    public void insertRange(NeoColumnStore store, int fromRow, int toRow) {
+        int added = toRow - fromRow;
+        if (added <= 0)
+            return;
+
+        int[] batch = new int[added];
+        for (int i = 0; i < added; i++)
+            batch[i] = fromRow + i;
+        merge(store, batch, added, size);
+    }
+
+    /**
+     * Method which moves rows whose keys were changed in place back into
+     * order. The rows are taken out of the index, sorted on their own, and
+     * merged back in, so the index is not rebuilt from scratch.
+     * @param store
+     *  The store being indexed
+     * @param changed
+     *  The changed rows, each one at most once, all already in the index
+     * @param count
+     *  The number of changed rows at the front of the array
+     */
+    public void reinsert(NeoColumnStore store, int[] changed, int count) {
+        if (count <= 0)
+            return;
+
+        BitSet moved = new BitSet(store.size());
+        for (int i = 0; i < count; i++)
+            moved.set(changed[i]);
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if (!moved.get(rows[i]))
+                rows[kept++] = rows[i];
+        }
+
+        merge(store, Arrays.copyOf(changed, count), count, kept);
+    }
+
+    private void merge(NeoColumnStore store, int[] batch, int added,
+                       int kept) {
+        NeoSortEngine.sort(store, batch, added, key);
+
+        int[] merged = new int[kept + added];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < kept && j < added) {
+            if (compare(store, batch[j], rows[i]) < 0)
+                merged[k++] = batch[j++];
+            else
+                merged[k++] = rows[i++];
+        }
+        while (i < kept)
+            merged[k++] = rows[i++];
+        while (j < added)
+            merged[k++] = batch[j++];
+
+        rows = merged;
+        size = merged.length;
+    }
+
+    /**
+     * Method which checks whether rows of the store were changed in place
+     * since the index was built, which means it may be out of order
+     * @param store
+     *  The store being indexed
+     * @return
+     *  True if the index has to be rebuilt
+     */
+    public boolean isStale(NeoColumnStore store) {
+        return store.getUpdateCount() != updateCount;
+    }
+
+    /**
+     * Method which finds the first position whose key is at least a value
+     * @param store
+     *  The store being indexed
+     * @param value
+     *  The value being searched for
+     * @return
+     *  The first position with a key greater than or equal to value, or
+     *  size() if there is none
+     */
+    public int lowerBound(NeoColumnStore store, double value) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (Double.compare(key.valueOf(store, rows[middle]), value) < 0)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * Method which finds the first position whose key is above a value
+     * @param store
+     *  The store being indexed
+     * @param value
+     *  The value being searched for
+     * @return
+     *  The first position with a key greater than value, or size() if
+     *  there is none
+     */
+    public int upperBound(NeoColumnStore store, double value) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (Double.compare(key.valueOf(store, rows[middle]), value) <= 0)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * Getter method for the key the rows are sorted on
+     * @return
+     *  The key of the index
+     */
+    public NeoSortKey getKey() {
+        return key;
+    }
+
+    /**
+     * Getter method for the sorted rows, the array must not be changed
+     * @return
+     *  The rows in sorted order, only the first size() entries are used
+     */
+    public int[] getRows() {
+        return rows;
+    }
+
+    /**
+     * Getter method for the number of rows in the index
+     * @return
+     *  The number of rows in the index
+     */
+    public int size() {
+        return size;
+    }
+
+    private int compare(NeoColumnStore store, int left, int right) {
+        int result = key.compareRows(store, left, right);
+        return result != 0 ? result : Integer.compare(left, right);
+    }
+}
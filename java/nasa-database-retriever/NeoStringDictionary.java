@@ -0,0 +1,210 @@
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Class which gives every distinct String a small int code, so a column of
+ * Strings can be stored as a column of ints. Codes are handed out in the
+ * order the Strings are first seen and never change.
+ *
+ * liwll
+ */
+public class NeoStringDictionary {
+    private static final int EMPTY = -1;
+    private String[] values;
+    private int[] table;
+    private int size;
+    private ByteBuffer heap;
+    private int[] heapOffsets;
+
+    /**
+     * Default constructor for an empty dictionary
+     */
+    public NeoStringDictionary() {
+        this.values = new String[16];
+        this.table = new int[32];
+        Arrays.fill(table, EMPTY);
+    }
+
+    /**
+     * Method which returns the code of a String, adding it if it is new
+     * @param value
+     *  The String to encode
+     * @return
+     *  The code of the String
+     * @throws IllegalArgumentException
+     *  When value is null
+     */
+    public int encode(String value) throws IllegalArgumentException {
+        if (value == null)
+            throw new IllegalArgumentException();
+
+        int slot = slotOf(value);
+        if (table[slot] != EMPTY)
+            return table[slot];
+
+        if (size == values.length)
+            values = Arrays.copyOf(values, size * 2);
+        values[size] = value;
+        table[slot] = size;
+        size++;
+        if (size * 2 > table.length)
+            rehash(table.length * 2);
+        return size - 1;
+    }
+
+    /**
+     * Method which returns the code of a String without adding it
+     * @param value
+     *  The String to look up
+     * @return
+     *  The code of the String, or -1 if it has never been encoded
+     * @throws IllegalArgumentException
+     *  When value is null
+     */
+    public int find(String value) throws IllegalArgumentException {
+        if (value == null)
+            throw new IllegalArgumentException();
+
+        int slot = slotOf(value);
+        return table[slot];
+    }
+
+    /**
+     * Method which returns the String for a code
+     * @param code
+     *  The code returned by encode
+     * @return
+     *  The String which has that code
+     * @throws IllegalArgumentException
+     *  When the code was never handed out
+     */
+    public String decode(int code) throws IllegalArgumentException {
+        if (code < 0 || code >= size)
+            throw new IllegalArgumentException();
+
+        String value = values[code];
+        if (value == null) {
+            byte[] bytes = new byte[heapOffsets[code + 1] - heapOffsets[code]];
+            heap.get(heapOffsets[code], bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+            values[code] = value;
+        }
+        return value;
+    }
+
+    /**
+     * Method which returns a copy of the dictionary with every String
+     * decoded and the lookup table built, so reading it never changes it
+     * and it is safe to read from several threads at once
+     * @return
+     *  A copy of the dictionary with the same codes
+     */
+    public NeoStringDictionary copy() {
+        NeoStringDictionary copy = new NeoStringDictionary();
+        for (int code = 0; code < size; code++)
+            copy.encode(decode(code));
+        return copy;
+    }
+
+    /**
+     * Getter method for the number of distinct Strings
+     * @return
+     *  The number of codes handed out so far
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Method which writes the dictionary as a count, a table of offsets,
+     * and a heap of UTF-8 bytes, in code order
+     * @param out
+     *  Where the dictionary is written
+     * @throws IOException
+     *  When the dictionary could not be written
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        byte[][] encoded = new byte[size][];
+        int offset = 0;
+        out.writeInt(size);
+        out.writeInt(offset);
+        for (int code = 0; code < size; code++) {
+            encoded[code] = decode(code).getBytes(StandardCharsets.UTF_8);
+            offset += encoded[code].length;
+            out.writeInt(offset);
+        }
+        for (int code = 0; code < size; code++)
+            out.write(encoded[code]);
+    }
+
+    /**
+     * Method which reads a dictionary written by writeTo. Only the offsets
+     * are copied, each String is decoded from the buffer the first time it
+     * is asked for, and the lookup table is only built when a new String
+     * is encoded.
+     * @param in
+     *  The buffer positioned at the dictionary, it is left positioned
+     *  right after it
+     * @return
+     *  The dictionary
+     * @throws IllegalArgumentException
+     *  When the buffer does not hold a valid dictionary
+     */
+    public static NeoStringDictionary readFrom(ByteBuffer in)
+            throws IllegalArgumentException {
+        NeoStringDictionary dictionary = new NeoStringDictionary();
+        int count = in.getInt();
+        if (count < 0 || count >= in.remaining() / Integer.BYTES)
+            throw new IllegalArgumentException();
+        dictionary.heapOffsets = new int[count + 1];
+        in.asIntBuffer().get(dictionary.heapOffsets);
+        in.position(in.position() + (count + 1) * Integer.BYTES);
+        for (int code = 0; code < count; code++)
+            if (dictionary.heapOffsets[code]
+                    > dictionary.heapOffsets[code + 1])
+                throw new IllegalArgumentException();
+        if (dictionary.heapOffsets[0] != 0
+                || dictionary.heapOffsets[count] > in.remaining())
+            throw new IllegalArgumentException();
+
+        dictionary.heap = in.slice();
+        dictionary.heap.limit(dictionary.heapOffsets[count]);
+        in.position(in.position() + dictionary.heapOffsets[count]);
+
+        dictionary.values = new String[Math.max(count, 16)];
+        dictionary.size = count;
+        dictionary.table = null;
+        return dictionary;
+    }
+
+    private int slotOf(String value) {
+        if (table == null)
+            rehash(Integer.highestOneBit(Math.max(size, 8)) * 4);
+        int mask = table.length - 1;
+        int slot = mix(value.hashCode()) & mask;
+        while (table[slot] != EMPTY && !decode(table[slot]).equals(value))
+            slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    private void rehash(int capacity) {
+        int[] larger = new int[capacity];
+        Arrays.fill(larger, EMPTY);
+        int mask = larger.length - 1;
+        for (int code = 0; code < size; code++) {
+            int slot = mix(decode(code).hashCode()) & mask;
+            while (larger[slot] != EMPTY)
+                slot = (slot + 1) & mask;
+            larger[slot] = code;
+        }
+        table = larger;
+    }
+
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
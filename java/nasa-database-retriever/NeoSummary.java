@@ -0,0 +1,167 @@
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Class which summarizes a set of NearEarthObjects in a fixed amount of
+ * memory, without keeping or sorting them. It holds quantile sketches of
+ * the average diameters and miss distances and a distinct count sketch of
+ * the names, so medians, percentiles and the number of distinct names
+ * can be read at any time. Summaries of different sets, such as pages,
+ * can be merged into the summary of all of them.
+ *
+ * liwll
+ */
+public class NeoSummary {
+    private long count;
+    private NeoQuantileSketch diameters;
+    private NeoQuantileSketch missDistances;
+    private NeoDistinctSketch names;
+
+    /**
+     * Default constructor for the summary of nothing
+     */
+    public NeoSummary() {
+        this.diameters = new NeoQuantileSketch();
+        this.missDistances = new NeoQuantileSketch();
+        this.names = new NeoDistinctSketch();
+    }
+
+    /**
+     * Method which adds the asteroid in a row of a store to the summary
+     * @param store
+     *  The store which holds the row
+     * @param row
+     *  The row to add
+     * @throws IllegalArgumentException
+     *  When store is null or the row does not exist
+     */
+    public void add(NeoColumnStore store, int row)
+            throws IllegalArgumentException {
+        if (store == null || row < 0 || row >= store.size())
+            throw new IllegalArgumentException();
+
+        count++;
+        diameters.add(store.getAverageDiameter(row));
+        missDistances.add(store.getMissDistance(row));
+        names.add(store.hashName(row));
+    }
+
+    /**
+     * Method which merges another summary into this one. The other summary
+     * is unchanged.
+     * @param other
+     *  The summary to merge in
+     * @throws IllegalArgumentException
+     *  When other is null
+     */
+    public void merge(NeoSummary other) throws IllegalArgumentException {
+        if (other == null)
+            throw new IllegalArgumentException();
+
+        count += other.count;
+        diameters.merge(other.diameters);
+        missDistances.merge(other.missDistances);
+        names.merge(other.names);
+    }
+
+    /**
+     * Method which copies the summary. Reading the copy changes nothing,
+     * so any number of threads can read it at once while nothing is added
+     * to it.
+     * @return
+     *  A summary of the same asteroids
+     */
+    public NeoSummary copy() {
+        NeoSummary copy = new NeoSummary();
+        copy.count = count;
+        copy.diameters = diameters.copy();
+        copy.missDistances = missDistances.copy();
+        copy.names = names.copy();
+        return copy;
+    }
+
+    /**
+     * Getter method for the number of asteroids added
+     * @return
+     *  The number of asteroids added
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Getter method for the sketch of the average diameters
+     * @return
+     *  The quantile sketch of the diameters, it must only be read
+     */
+    public NeoQuantileSketch getDiameters() {
+        return diameters;
+    }
+
+    /**
+     * Getter method for the sketch of the miss distances
+     * @return
+     *  The quantile sketch of the miss distances, it must only be read
+     */
+    public NeoQuantileSketch getMissDistances() {
+        return missDistances;
+    }
+
+    /**
+     * Getter method for the sketch of the names
+     * @return
+     *  The distinct count sketch of the names, it must only be read
+     */
+    public NeoDistinctSketch getNames() {
+        return names;
+    }
+
+    /**
+     * Method which writes the summary as its count followed by each sketch
+     * @param out
+     *  Where the summary is written
+     * @throws IOException
+     *  When the summary could not be written
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeLong(count);
+        diameters.writeTo(out);
+        missDistances.writeTo(out);
+        names.writeTo(out);
+    }
+
+    /**
+     * Method which reads a summary written by writeTo
+     * @param in
+     *  The buffer positioned at the summary, it is left positioned right
+     *  after it
+     * @return
+     *  The summary
+     * @throws IllegalArgumentException
+     *  When the buffer does not hold a valid summary
+     */
+    public static NeoSummary readFrom(ByteBuffer in)
+            throws IllegalArgumentException {
+        NeoSummary summary = new NeoSummary();
+        summary.count = in.getLong();
+        summary.diameters = NeoQuantileSketch.readFrom(in);
+        summary.missDistances = NeoQuantileSketch.readFrom(in);
+        summary.names = NeoDistinctSketch.readFrom(in);
+        return summary;
+    }
+
+    /**
+     * Method which returns the summary as one line of text
+     * @return
+     *  The count, the median diameter and miss distance, and the number
+     *  of distinct names
+     */
+    @Override
+    public String toString() {
+        return String.format("%d asteroids: median diameter %.3f, median " +
+                        "miss distance %.0f, about %d distinct names", count,
+                diameters.getQuantile(0.5), missDistances.getQuantile(0.5),
+                names.estimate());
+    }
+}
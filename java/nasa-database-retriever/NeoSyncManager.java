@@ -0,0 +1,367 @@
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Class which keeps a NeoDatabase in step with NASA's feed without loading
+ * pages it already has. For every page it has loaded it remembers when the
+ * page was fetched, a SHA-256 hash of its contents, the validators the
+ * server sent with it, and the referenceIDs on it. Pages which are missing
+ * from the database are downloaded, pages which were fetched recently are
+ * skipped, and older pages are requested conditionally so the server can
+ * answer 304 Not Modified. A page which still comes back in full is only
+ * parsed and merged if its hash changed, and merging goes through the
+ * database's referenceID upsert, so only changed asteroids are written.
+ * Requests go through the database's NeoFetchClient.
+ *
+ * liwll
+ */
+public class NeoSyncManager {
+    public static final int MAGIC = 0x4E454F59;
+    public static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private NeoDatabase database;
+    private Path stateFile;
+    private long refreshAfterMillis;
+    private Map<Integer, PageState> pages;
+
+    /**
+     * Default constructor for a sync manager, the state saved by an earlier
+     * run is read back if the state file exists
+     * @param database
+     *  The database being kept in step
+     * @param stateFile
+     *  The file the state is saved to, or null to keep it in memory only
+     * @param refreshAfterMillis
+     *  How long after a page was fetched it is checked with the server
+     *  again, 0 checks every page on every run
+     * @throws IllegalArgumentException
+     *  When database is null or refreshAfterMillis is negative
+     * @throws IOException
+     *  When the state file exists but could not be read
+     */
+    public NeoSyncManager(NeoDatabase database, Path stateFile,
+                          long refreshAfterMillis)
+            throws IllegalArgumentException, IOException {
+        if (database == null || refreshAfterMillis < 0)
+            throw new IllegalArgumentException();
+
+        this.database = database;
+        this.stateFile = stateFile;
+        this.refreshAfterMillis = refreshAfterMillis;
+        this.pages = new TreeMap<>();
+        if (stateFile != null && Files.exists(stateFile))
+            load();
+    }
+
+    /**
+     * Method which brings a range of pages up to date. Pages are requested
+     * concurrently, and the changed ones are merged in page order once all
+     * of them have been looked at. If the thread is interrupted, the
+     * requests still pending are cancelled, and the pages looked at so far
+     * are still merged, since their new state is already recorded. The
+     * pages after them are left as they were for the next sync, and the
+     * thread's interrupt flag is set again.
+     * @param from
+     *  The first page to sync
+     * @param to
+     *  The last page to sync (inclusive)
+     * @param parallelism
+     *  The maximum number of pages being requested at once
+     * @return
+     *  What was done with each page and what merging them changed
+     * @throws IllegalArgumentException
+     *  When the range is out of bounds or parallelism is less than 1
+     */
+    public NeoSyncReport sync(int from, int to, int parallelism)
+            throws IllegalArgumentException {
+        if (from < 0 || to > NeoDatabase.MAX_PAGE || from > to
+                || parallelism < 1)
+            throw new IllegalArgumentException();
+
+        long now = System.currentTimeMillis();
+        int skipped = 0;
+        int notModified = 0;
+        int unchanged = 0;
+        int failed = 0;
+        List<Integer> requested = new ArrayList<>();
+        List<PageState> known = new ArrayList<>();
+        for (int page = from; page <= to; page++) {
+            PageState state = pages.get(page);
+            boolean loaded = state != null && isLoaded(state);
+            if (loaded && now - state.fetchedAt < refreshAfterMillis) {
+                skipped++;
+                continue;
+            }
+            requested.add(page);
+            known.add(loaded ? state : null);
+        }
+
+        List<CompletableFuture<Fetch>> fetches = new ArrayList<>();
+        List<NeoColumnStore> changedPages = new ArrayList<>();
+        for (int i = 0; i < requested.size(); i++) {
+            while (fetches.size() < Math.min(requested.size(),
+                    i + parallelism)) {
+                int next = fetches.size();
+                fetches.add(fetch(requested.get(next), known.get(next)));
+            }
+
+            int page = requested.get(i);
+            Fetch fetch;
+            try {
+                fetch = fetches.get(i).get();
+            }
+            catch (ExecutionException e) {
+                System.out.printf("Error, page %d could not be synced.\n",
+                        page);
+                failed++;
+                continue;
+            }
+            catch (InterruptedException e) {
+                for (int j = i; j < fetches.size(); j++)
+                    fetches.get(j).cancel(true);
+                Thread.currentThread().interrupt();
+                break;
+            }
+
+            PageState state = pages.get(page);
+            if (fetch.page == null) {
+                if (fetch.hash == null)
+                    notModified++;
+                else
+                    unchanged++;
+                state.fetchedAt = fetch.fetchedAt;
+                if (fetch.etag != null)
+                    state.etag = fetch.etag;
+                if (fetch.lastModified != null)
+                    state.lastModified = fetch.lastModified;
+                continue;
+            }
+
+            changedPages.add(fetch.page);
+            state = new PageState();
+            state.fetchedAt = fetch.fetchedAt;
+            state.hash = fetch.hash;
+            state.etag = fetch.etag;
+            state.lastModified = fetch.lastModified;
+            state.referenceIDs = new int[fetch.page.size()];
+            for (int row = 0; row < fetch.page.size(); row++)
+                state.referenceIDs[row] = fetch.page.getReferenceID(row);
+            pages.put(page, state);
+        }
+
+        NeoIngestReport ingest = database.merge(changedPages);
+        return new NeoSyncReport(skipped, notModified, unchanged,
+                changedPages.size(), failed, ingest);
+    }
+
+    /**
+     * Method which saves the state of every synced page, so the next run
+     * knows what it already has
+     * @throws IOException
+     *  When there is no state file or it could not be written
+     */
+    public void save() throws IOException {
+        if (stateFile == null)
+            throw new IOException("No state file.");
+
+        Path directory = stateFile.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(directory, "sync-", ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temp),
+                            BUFFER_SIZE))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(pages.size());
+                for (Map.Entry<Integer, PageState> entry : pages.entrySet()) {
+                    PageState state = entry.getValue();
+                    out.writeInt(entry.getKey());
+                    out.writeLong(state.fetchedAt);
+                    out.writeInt(state.hash.length);
+                    out.write(state.hash);
+                    out.writeUTF(state.etag == null ? "" : state.etag);
+                    out.writeUTF(state.lastModified == null ? ""
+                            : state.lastModified);
+                    out.writeInt(state.referenceIDs.length);
+                    for (int referenceID : state.referenceIDs)
+                        out.writeInt(referenceID);
+                }
+            }
+            Files.move(temp, stateFile, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Method which returns when a page was last fetched or confirmed
+     * unchanged
+     * @param pageNumber
+     *  The page
+     * @return
+     *  The time in epoch milliseconds, or -1 if the page was never synced
+     */
+    public long getFetchedAt(int pageNumber) {
+        PageState state = pages.get(pageNumber);
+        return state == null ? -1 : state.fetchedAt;
+    }
+
+    /**
+     * Getter method for the number of pages the manager has state for
+     * @return
+     *  The number of synced pages
+     */
+    public int getPageCount() {
+        return pages.size();
+    }
+
+    private boolean isLoaded(PageState state) {
+        for (int referenceID : state.referenceIDs) {
+            if (!database.contains(referenceID))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Method which requests one page, conditionally if the page is already
+     * loaded, and parses it if its contents changed
+     * @param pageNumber
+     *  The page to request
+     * @param known
+     *  The state of the page if it is loaded, or null
+     * @return
+     *  What the request found, or an IOException or NeoFormatException
+     */
+    private CompletableFuture<Fetch> fetch(int pageNumber, PageState known) {
+        Map<String, String> headers = new HashMap<>();
+        if (known != null && known.etag != null)
+            headers.put("If-None-Match", known.etag);
+        if (known != null && known.lastModified != null)
+            headers.put("If-Modified-Since", known.lastModified);
+
+        NeoFetchClient client = database.getFetchClient();
+        return client.fetch(database.buildQueryURL(pageNumber), headers)
+                .thenCompose(response -> {
+                    Fetch fetch = new Fetch();
+                    fetch.fetchedAt = System.currentTimeMillis();
+                    int status = response.statusCode();
+                    if (status == 304 && known != null)
+                        return CompletableFuture.completedFuture(fetch);
+                    if (status != 200)
+                        throw new CompletionException(new IOException(
+                                "HTTP status " + status + "."));
+
+                    byte[] payload = response.body();
+                    fetch.etag = header(response, "ETag");
+                    fetch.lastModified = header(response, "Last-Modified");
+                    fetch.hash = sha256(payload);
+                    if (known != null && Arrays.equals(known.hash, fetch.hash))
+                        return CompletableFuture.completedFuture(fetch);
+
+                    NeoPageCache cache = database.getPageCache();
+                    if (cache != null) {
+                        try {
+                            cache.put(pageNumber, payload);
+                        }
+                        catch (IOException e) {
+                            // The page was downloaded, it just won't be
+                            // cached
+                        }
+                    }
+                    return client.parse(payload).thenApply(page -> {
+                        fetch.page = page;
+                        return fetch;
+                    });
+                });
+    }
+
+    private static String header(HttpResponse<byte[]> response, String name) {
+        return response.headers().firstValue(name).orElse(null);
+    }
+
+    private void load() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(stateFile), BUFFER_SIZE))) {
+            if (in.readInt() != MAGIC)
+                throw new IOException("Not a NEO sync state file.");
+            int version = in.readInt();
+            if (version != VERSION)
+                throw new IOException("Unsupported sync state version "
+                        + version + ".");
+
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                int page = in.readInt();
+                PageState state = new PageState();
+                state.fetchedAt = in.readLong();
+                state.hash = new byte[in.readInt()];
+                in.readFully(state.hash);
+                state.etag = in.readUTF();
+                state.lastModified = in.readUTF();
+                if (state.etag.isEmpty())
+                    state.etag = null;
+                if (state.lastModified.isEmpty())
+                    state.lastModified = null;
+                state.referenceIDs = new int[in.readInt()];
+                for (int j = 0; j < state.referenceIDs.length; j++)
+                    state.referenceIDs[j] = in.readInt();
+                pages.put(page, state);
+            }
+        }
+    }
+
+    private static byte[] sha256(byte[] payload) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(payload);
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Class which holds what is known about one synced page
+     */
+    private static class PageState {
+        private long fetchedAt;
+        private byte[] hash;
+        private String etag;
+        private String lastModified;
+        private int[] referenceIDs;
+    }
+
+    /**
+     * Class which holds the result of requesting one page. The page is
+     * null when it was not modified, in which case the hash is also null,
+     * or when it came back with the same hash.
+     */
+    private static class Fetch {
+        private long fetchedAt;
+        private byte[] hash;
+        private String etag;
+        private String lastModified;
+        private NeoColumnStore page;
+    }
+}
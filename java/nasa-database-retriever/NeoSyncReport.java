@@ -0,0 +1,112 @@
+/**
+ * Class which reports what one run of a NeoSyncManager did with each page
+ * in its range, and what merging the changed pages did to the database.
+ *
+ * liwll
+ */
+public class NeoSyncReport {
+    private int skipped;
+    private int notModified;
+    private int unchanged;
+    private int changed;
+    private int failed;
+    private NeoIngestReport ingest;
+
+    /**
+     * Default constructor for a report
+     * @param skipped
+     *  The number of pages which were fresh enough not to be requested
+     * @param notModified
+     *  The number of pages the server said had not been modified
+     * @param unchanged
+     *  The number of pages which were downloaded with the same contents
+     * @param changed
+     *  The number of pages which were new or changed and were merged
+     * @param failed
+     *  The number of pages which could not be downloaded or parsed
+     * @param ingest
+     *  The report of merging the changed pages
+     * @throws IllegalArgumentException
+     *  When a count is negative or ingest is null
+     */
+    public NeoSyncReport(int skipped, int notModified, int unchanged,
+                         int changed, int failed, NeoIngestReport ingest)
+            throws IllegalArgumentException {
+        if (skipped < 0 || notModified < 0 || unchanged < 0 || changed < 0
+                || failed < 0 || ingest == null)
+            throw new IllegalArgumentException();
+
+        this.skipped = skipped;
+        this.notModified = notModified;
+        this.unchanged = unchanged;
+        this.changed = changed;
+        this.failed = failed;
+        this.ingest = ingest;
+    }
+
+    /**
+     * Getter method for the number of pages which were not requested
+     * @return
+     *  The number of pages which were fresh enough not to be requested
+     */
+    public int getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * Getter method for the number of pages the server had not modified
+     * @return
+     *  The number of pages answered with 304 Not Modified
+     */
+    public int getNotModified() {
+        return notModified;
+    }
+
+    /**
+     * Getter method for the number of pages downloaded with the same
+     * contents as last time
+     * @return
+     *  The number of pages whose hash had not changed
+     */
+    public int getUnchanged() {
+        return unchanged;
+    }
+
+    /**
+     * Getter method for the number of pages which were merged
+     * @return
+     *  The number of pages which were new or changed
+     */
+    public int getChanged() {
+        return changed;
+    }
+
+    /**
+     * Getter method for the number of pages which failed
+     * @return
+     *  The number of pages which could not be downloaded or parsed
+     */
+    public int getFailed() {
+        return failed;
+    }
+
+    /**
+     * Getter method for the report of merging the changed pages
+     * @return
+     *  The report of merging the changed pages
+     */
+    public NeoIngestReport getIngest() {
+        return ingest;
+    }
+
+    /**
+     * Method which returns the report as one line of text
+     * @return
+     *  The counts in the report
+     */
+    public String toString() {
+        return String.format("%d skipped, %d not modified, %d unchanged, " +
+                        "%d changed, %d failed (%s)", skipped, notModified,
+                unchanged, changed, failed, ingest);
+    }
+}
@@ -0,0 +1,191 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.text.DecimalFormatSymbols;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
+/**
+ * Class which writes the rows of a NeoColumnStore as the table printed by
+ * NeoViewer. It reads the columns directly, builds each line in one reused
+ * buffer, and hands whole lines to a Writer, so printing is a single pass
+ * over the rows. Dates are formatted once per day and cached. Each field
+ * is padded to its width from where it starts, and numbers use the
+ * default locale, so the text is the same as printing each row with
+ * printf.
+ *
+ * liwll
+ */
+public class NeoTableRenderer {
+    public static final String TABLE_HEAD = String.format("%-8s|%-34s|%-6s|" +
+                    "%-10s|%-8s|%-12s|%-11s|%s\n%S",
+            "   ID", "               Name", " Mag.", " Diameter",
+            " Danger", " Close Date", " Miss Dist", " Orbits",
+            "========================================================="
+                    + "===============================================");
+    private static final DateTimeFormatter DATE_FORMAT =
+            DateTimeFormatter.ofPattern("MM-dd-yyyy");
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+    private static final int DATE_CACHE_SIZE = 1024;
+    private static final double[] SCALES = {1, 10, 100, 1000};
+    private static final int[] WIDTHS = {10, 35, 7, 11, 9, 13, 12};
+    private NeoColumnStore store;
+    private ZoneId zone;
+    private StringBuilder line;
+    private long[] cachedDayStarts;
+    private long[] cachedDayEnds;
+    private String[] cachedDates;
+    private char decimalSeparator;
+    private boolean plainDigits;
+
+    /**
+     * Default constructor for a renderer, dates are shown in the system's
+     * time zone just like Date.toString
+     * @param store
+     *  The store whose rows are written
+     * @throws IllegalArgumentException
+     *  When store is null
+     */
+    public NeoTableRenderer(NeoColumnStore store)
+            throws IllegalArgumentException {
+        if (store == null)
+            throw new IllegalArgumentException();
+
+        this.store = store;
+        this.zone = ZoneId.systemDefault();
+        this.line = new StringBuilder(160);
+        this.cachedDayStarts = new long[DATE_CACHE_SIZE];
+        this.cachedDayEnds = new long[DATE_CACHE_SIZE];
+        this.cachedDates = new String[DATE_CACHE_SIZE];
+        DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(
+                Locale.getDefault(Locale.Category.FORMAT));
+        this.decimalSeparator = symbols.getDecimalSeparator();
+        this.plainDigits = symbols.getZeroDigit() == '0';
+    }
+
+    /**
+     * Method which writes the table head followed by a page of rows
+     * @param out
+     *  Where the table is written, it is not flushed or closed
+     * @param rows
+     *  The rows in the order they are shown
+     * @param offset
+     *  The position in rows of the first row to write
+     * @param limit
+     *  The most rows to write
+     * @throws IllegalArgumentException
+     *  When out or rows is null, or offset or limit is negative
+     * @throws IOException
+     *  When the table could not be written
+     */
+    public void render(Writer out, int[] rows, int offset, int limit)
+            throws IllegalArgumentException, IOException {
+        if (out == null || rows == null || offset < 0 || limit < 0)
+            throw new IllegalArgumentException();
+
+        out.write(TABLE_HEAD);
+        out.write(System.lineSeparator());
+
+        int end = (int) Math.min((long) offset + limit, store.size());
+        for (int i = offset; i < end; i++) {
+            int row = rows[i];
+            line.setLength(0);
+            int start = 0;
+            if (plainDigits)
+                line.append(store.getReferenceID(row));
+            else
+                line.append(String.format("%d", store.getReferenceID(row)));
+            start = pad(start, 0);
+            store.appendName(row, line);
+            start = pad(start, 1);
+            appendFixed(store.getAbsoluteMagnitude(row), 1);
+            start = pad(start, 2);
+            appendFixed(store.getAverageDiameter(row), 3);
+            start = pad(start, 3);
+            line.append(store.isDangerous(row));
+            start = pad(start, 4);
+            line.append(formatDate(store.getApproachDate(row)));
+            start = pad(start, 5);
+            appendFixed(store.getMissDistance(row), 0);
+            pad(start, 6);
+            line.append(store.getOrbitingBody(row)).append('\n');
+            out.append(line);
+        }
+    }
+
+    /**
+     * Method which formats a date as MM-dd-yyyy, the text for each day is
+     * kept in a small cache indexed by the day
+     * @param epochMillis
+     *  The date in epoch milliseconds
+     * @return
+     *  The formatted date
+     */
+    public String formatDate(long epochMillis) {
+        int slot = (int) Math.floorMod(Math.floorDiv(epochMillis, DAY_MILLIS),
+                (long) DATE_CACHE_SIZE);
+        String cached = cachedDates[slot];
+        if (cached != null && epochMillis >= cachedDayStarts[slot]
+                && epochMillis < cachedDayEnds[slot])
+            return cached;
+
+        LocalDate day = Instant.ofEpochMilli(epochMillis).atZone(zone)
+                .toLocalDate();
+        cachedDayStarts[slot] = day.atStartOfDay(zone).toInstant()
+                .toEpochMilli();
+        cachedDayEnds[slot] = day.plusDays(1).atStartOfDay(zone).toInstant()
+                .toEpochMilli();
+        cachedDates[slot] = DATE_FORMAT.format(day);
+        return cachedDates[slot];
+    }
+
+    /**
+     * Method which appends a number with a fixed number of decimals, giving
+     * the same text as String.format in the default locale without going
+     * through a Formatter. Values close to a rounding tie, negative values,
+     * very large values, and locales with their own digits are left to
+     * String.format.
+     */
+    private StringBuilder appendFixed(double value, int decimals) {
+        double scaled = value * SCALES[decimals];
+        double floor = Math.floor(scaled);
+        if (!plainDigits || !(value >= 0) || scaled >= 1e15
+                || Math.abs(scaled - floor - 0.5) < 1e-6) {
+            BigDecimal exact = Double.isFinite(value)
+                    ? BigDecimal.valueOf(value) : null;
+            if (plainDigits && exact != null && value >= 0)
+                return line.append(exact.setScale(decimals,
+                        RoundingMode.HALF_UP).toPlainString()
+                        .replace('.', decimalSeparator));
+            return line.append(String.format("%." + decimals + "f", value));
+        }
+
+        long units = Math.round(scaled);
+        if (decimals == 0)
+            return line.append(units);
+
+        long divisor = (long) SCALES[decimals];
+        line.append(units / divisor).append(decimalSeparator);
+        long fraction = units % divisor;
+        for (long digit = divisor / 10; digit > fraction && digit > 1;
+             digit /= 10)
+            line.append('0');
+        return line.append(fraction);
+    }
+
+    /**
+     * Method which pads the field that started at start to its width
+     * @return
+     *  Where the next field starts
+     */
+    private int pad(int start, int field) {
+        int end = start + WIDTHS[field];
+        while (line.length() < end)
+            line.append(' ');
+        return line.length();
+    }
+}
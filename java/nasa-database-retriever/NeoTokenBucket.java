@@ -0,0 +1,54 @@
+/**
+ * Class which paces requests with a token bucket. Tokens are added at a
+ * steady rate up to a burst limit, and every request takes one. A request
+ * which finds the bucket empty is not refused, it is told how long to wait
+ * for its token, so requests queue up in the order they asked.
+ *
+ * liwll
+ */
+public class NeoTokenBucket {
+    private static final double NANOS_PER_SECOND = 1e9;
+    private double tokensPerNano;
+    private double capacity;
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     * Default constructor for a bucket which starts full
+     * @param permitsPerSecond
+     *  How many tokens are added each second
+     * @param burst
+     *  The most tokens the bucket holds, the number of requests which can
+     *  be sent back to back after a quiet period
+     * @throws IllegalArgumentException
+     *  When permitsPerSecond is not positive or burst is less than 1
+     */
+    public NeoTokenBucket(double permitsPerSecond, int burst)
+            throws IllegalArgumentException {
+        if (!(permitsPerSecond > 0) || burst < 1)
+            throw new IllegalArgumentException();
+
+        this.tokensPerNano = permitsPerSecond / NANOS_PER_SECOND;
+        this.capacity = burst;
+        this.tokens = burst;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Method which takes a token, reserving a future one if the bucket is
+     * empty
+     * @return
+     *  How many nanoseconds the caller must wait before using the token
+     */
+    public synchronized long reserve() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity,
+                tokens + (now - lastRefill) * tokensPerNano);
+        lastRefill = now;
+
+        tokens -= 1;
+        if (tokens >= 0)
+            return 0;
+        return (long) Math.ceil(-tokens / tokensPerNano);
+    }
+}
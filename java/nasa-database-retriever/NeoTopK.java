@@ -0,0 +1,173 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Predicate;
+
+/**
+ * Class which finds the k smallest rows of a store in comparator order
+ * without sorting the whole store. It is a bounded max-heap of the best k
+ * rows seen so far, so a row only has to be compared against the worst of
+ * those to be rejected. Large stores are split across a fork-join pool,
+ * each worker fills its own heap, and the heaps are merged at the end.
+ *
+ * liwll
+ */
+public class NeoTopK {
+    public static final int PARALLEL_THRESHOLD = 1 << 16;
+    private Comparator<NearEarthObject> order;
+    private NeoRecordView[] views;
+    private int size;
+    private int limit;
+
+    /**
+     * Constructor for an empty heap of at most k rows, with room for only
+     * as many as the range it is filled from can give
+     */
+    private NeoTopK(Comparator<NearEarthObject> order, int k, int rows) {
+        this.order = order;
+        this.views = new NeoRecordView[Math.min(k, rows)];
+        this.limit = k;
+    }
+
+    /**
+     * Method which finds the k rows of a store that come first in a
+     * comparator's order. The comparator and filter may be called from
+     * several threads at once.
+     * @param store
+     *  The store being searched
+     * @param comp
+     *  The comparator which decides which rows come first
+     * @param k
+     *  The number of rows wanted
+     * @param filter
+     *  A condition every result must meet, or null for no condition
+     * @return
+     *  Views of at most k rows, in comparator order
+     * @throws IllegalArgumentException
+     *  When store or comp is null or k is negative
+     */
+    public static List<NearEarthObject> select(NeoColumnStore store,
+            Comparator<NearEarthObject> comp, int k,
+            Predicate<NearEarthObject> filter)
+            throws IllegalArgumentException {
+        if (store == null || comp == null || k < 0)
+            throw new IllegalArgumentException();
+
+        NeoSortKey key = NeoSortKey.forComparator(comp);
+        Comparator<NearEarthObject> order;
+        if (key != null)
+            order = (left, right) -> key.compareRows(store,
+                    ((NeoRecordView) left).getRow(),
+                    ((NeoRecordView) right).getRow());
+        else
+            order = comp;
+        order = order.thenComparingInt(neo -> ((NeoRecordView) neo).getRow());
+        k = Math.min(k, store.size());
+
+        NeoTopK heap = new Worker(store, order, k, filter, 0, store.size())
+                .invoke();
+        NeoRecordView[] best = Arrays.copyOf(heap.views, heap.size);
+        Arrays.sort(best, order);
+        return new ArrayList<>(Arrays.asList(best));
+    }
+
+    private void offer(NeoRecordView view) {
+        if (size < limit) {
+            if (size == views.length)
+                views = Arrays.copyOf(views, (int) Math.min(limit,
+                        Math.max(8, 2L * size)));
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (order.compare(views[parent], view) >= 0)
+                    break;
+                views[i] = views[parent];
+                i = parent;
+            }
+            views[i] = view;
+        }
+        else if (size > 0 && order.compare(view, views[0]) < 0) {
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size)
+                    break;
+                if (child + 1 < size
+                        && order.compare(views[child + 1], views[child]) > 0)
+                    child++;
+                if (order.compare(views[child], view) <= 0)
+                    break;
+                views[i] = views[child];
+                i = child;
+            }
+            views[i] = view;
+        }
+    }
+
+    private boolean rejects(NeoRecordView view) {
+        return size == limit
+                && (size == 0 || order.compare(view, views[0]) >= 0);
+    }
+
+    /**
+     * Class which fills a heap from a range of rows, splitting the range
+     * in half while it is larger than the parallel threshold
+     */
+    private static class Worker extends RecursiveTask<NeoTopK> {
+        private static final long serialVersionUID = 1L;
+        private NeoColumnStore store;
+        private Comparator<NearEarthObject> order;
+        private int k;
+        private Predicate<NearEarthObject> filter;
+        private int fromRow;
+        private int toRow;
+
+        private Worker(NeoColumnStore store,
+                       Comparator<NearEarthObject> order, int k,
+                       Predicate<NearEarthObject> filter, int fromRow,
+                       int toRow) {
+            this.store = store;
+            this.order = order;
+            this.k = k;
+            this.filter = filter;
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+        }
+
+        protected NeoTopK compute() {
+            if (toRow - fromRow <= PARALLEL_THRESHOLD || k == 0)
+                return scan();
+
+            int middle = (fromRow + toRow) >>> 1;
+            Worker left = new Worker(store, order, k, filter, fromRow, middle);
+            Worker right = new Worker(store, order, k, filter, middle, toRow);
+            left.fork();
+            NeoTopK merged = right.compute();
+            NeoTopK other = left.join();
+            if (other.size > merged.size) {
+                NeoTopK swap = merged;
+                merged = other;
+                other = swap;
+            }
+            for (int i = 0; i < other.size; i++)
+                merged.offer(other.views[i]);
+            return merged;
+        }
+
+        private NeoTopK scan() {
+            NeoTopK heap = new NeoTopK(order, k, toRow - fromRow);
+            NeoRecordView cursor = new NeoRecordView(store, fromRow);
+            for (int row = fromRow; row < toRow; row++) {
+                cursor.setRow(row);
+                if (heap.rejects(cursor))
+                    continue;
+                if (filter != null && !filter.test(cursor))
+                    continue;
+                heap.offer(new NeoRecordView(store, row));
+            }
+            return heap;
+        }
+    }
+}
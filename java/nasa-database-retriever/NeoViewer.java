@@ -1,3 +1,6 @@
+import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
 import java.util.InputMismatchException;
 import java.util.Scanner;
 
@@ -8,6 +11,13 @@ import java.util.Scanner;
  * liwll
  */
 public class NeoViewer {
+    public static final int PAGE_PARALLELISM = 8;
+    public static final String CACHE_DIRECTORY = "neo-cache";
+    public static final long CACHE_MAX_BYTES = 256L * 1024 * 1024;
+    public static final long CACHE_MAX_AGE_MILLIS = 24L * 60 * 60 * 1000;
+    public static final int TABLE_PAGE_SIZE = 50;
+    public static final String SYNC_STATE_FILE = "neo-sync.state";
+
     /**
      * Main method for the class, it creates a database and opens the menu
      * @param args
@@ -16,6 +26,15 @@ public class NeoViewer {
     public static void main(String[] args) {
         System.out.printf("Welcome to NEO Viewer!\n\n");
         NeoDatabase database = new NeoDatabase();
+        try {
+            database.setPageCache(new NeoPageCache(
+                    Paths.get(CACHE_DIRECTORY), CACHE_MAX_BYTES,
+                    CACHE_MAX_AGE_MILLIS));
+        }
+        catch (IOException e) {
+            System.out.print("Page cache unavailable, pages will be " +
+                    "downloaded every time.\n\n");
+        }
         menu(database);
     }
 
@@ -25,11 +44,21 @@ public class NeoViewer {
      *  The database being operated upon
      */
     public static void menu(NeoDatabase database) {
-        String menu = String.format("%s\n%s\n%s\n%s\n%s\n",
+        String menu = String.format(
+                "%s\n%s\n%s\n%s\n%s\n%s\n%s\n%s\n%s\n%s\n%s\n%s\n%s\n%s\n",
                 "Option Menu:",
                 "  A) Add a page to the database",
+                "  B) Add a range of pages to the database",
+                "  Y) Sync a range of pages, loading only what changed",
+                "  I) Import a NEO dump file",
                 "  S) Sort the database",
                 "  P) Print the database as a table",
+                "  G) Print one page of the table",
+                "  F) Write the table to a file",
+                "  E) Export the database to a columnar file",
+                "  C) Show page cache statistics",
+                "  W) Write the database to a snapshot file",
+                "  L) Load the database from a snapshot file",
                 "  Q) Quit");
 
         Scanner userIn = new Scanner(System.in);
@@ -42,6 +71,18 @@ public class NeoViewer {
                     addPage(database);
                     menu(database);
                     break;
+                case "B":
+                    addPageRange(database);
+                    menu(database);
+                    break;
+                case "Y":
+                    syncPageRange(database);
+                    menu(database);
+                    break;
+                case "I":
+                    importDump(database);
+                    menu(database);
+                    break;
                 case "S":
                     sortDatabase(database);
                     menu(database);
@@ -50,6 +91,30 @@ public class NeoViewer {
                     printDatabase(database);
                     menu(database);
                     break;
+                case "G":
+                    printTablePage(database);
+                    menu(database);
+                    break;
+                case "F":
+                    writeTable(database);
+                    menu(database);
+                    break;
+                case "E":
+                    exportColumnar(database);
+                    menu(database);
+                    break;
+                case "C":
+                    printCacheStatistics(database);
+                    menu(database);
+                    break;
+                case "W":
+                    writeSnapshot(database);
+                    menu(database);
+                    break;
+                case "L":
+                    loadSnapshot(database);
+                    menu(database);
+                    break;
                 case "Q":
                     System.out.print("Program terminating normally...");
                     break;
@@ -74,15 +139,103 @@ public class NeoViewer {
             System.out.printf("\nEnter the page to load: ");
             int pageNum = userIn.nextInt();
 
-            String url = database.buildQueryURL(pageNum);
-            database.addAll(url);
-            System.out.print("\nPage loaded successfully!\n\n");
+            NeoIngestReport report = database.addPage(pageNum);
+            if (report.getPages() == 1)
+                System.out.printf("\nPage loaded successfully! %d new, " +
+                                "%d updated, %d unchanged.\n\n",
+                        report.getInserted(), report.getUpdated(),
+                        report.getUnchanged());
+        }
+        catch (InputMismatchException e) {
+            System.out.print("Input mismatch, please try again.\n\n");
+        }
+    }
+
+    /**
+     * Method which allows the user to add a range of pages to the database,
+     * several pages are downloaded at the same time
+     * @param database
+     *  The database being operated upon
+     */
+    public static void addPageRange(NeoDatabase database) {
+        try {
+            Scanner userIn = new Scanner(System.in);
+            System.out.printf("\nEnter the first page to load: ");
+            int from = userIn.nextInt();
+            System.out.printf("Enter the last page to load: ");
+            int to = userIn.nextInt();
+
+            NeoIngestReport report =
+                    database.addRange(from, to, PAGE_PARALLELISM);
+            System.out.printf("\n%d of %d pages loaded successfully! %d new, " +
+                            "%d updated, %d unchanged.\n\n",
+                    report.getPages(), to - from + 1, report.getInserted(),
+                    report.getUpdated(), report.getUnchanged());
         }
         catch (InputMismatchException e) {
             System.out.print("Input mismatch, please try again.\n\n");
         }
     }
 
+    /**
+     * Method which allows the user to sync a range of pages, pages which
+     * are already loaded are only merged again if they changed
+     * @param database
+     *  The database being operated upon
+     */
+    public static void syncPageRange(NeoDatabase database) {
+        try {
+            Scanner userIn = new Scanner(System.in);
+            System.out.printf("\nEnter the first page to sync: ");
+            int from = userIn.nextInt();
+            System.out.printf("Enter the last page to sync: ");
+            int to = userIn.nextInt();
+
+            NeoSyncManager sync = new NeoSyncManager(database,
+                    Paths.get(SYNC_STATE_FILE), CACHE_MAX_AGE_MILLIS);
+            NeoSyncReport report = sync.sync(from, to, PAGE_PARALLELISM);
+            sync.save();
+            System.out.printf("\nSync finished: %s.\n\n", report);
+        }
+        catch (InputMismatchException e) {
+            System.out.print("Input mismatch, please try again.\n\n");
+        }
+        catch (IOException e) {
+            System.out.print("Error, the sync state could not be read or " +
+                    "saved.\n\n");
+        }
+    }
+
+    /**
+     * Method which allows the user to import a full NEO dump file,
+     * printing how far the import has got as it goes
+     * @param database
+     *  The database being operated upon
+     */
+    public static void importDump(NeoDatabase database) {
+        Scanner userIn = new Scanner(System.in);
+        System.out.printf("\nEnter the dump file name: ");
+        String fileName = userIn.nextLine();
+
+        try {
+            NeoIngestReport report = database.importDump(Paths.get(fileName),
+                    (done, total, records) -> System.out.printf(
+                            "\r%3d%% imported, %d objects", done * 100 / total,
+                            records));
+            System.out.printf("\n\nImport finished: %d inserted, " +
+                            "%d updated, %d unchanged.\n\n",
+                    report.getInserted(), report.getUpdated(),
+                    report.getUnchanged());
+        }
+        catch (NeoFormatException e) {
+            System.out.print("\nError, the dump is not in the expected " +
+                    "format.\n\n");
+        }
+        catch (IOException | InvalidPathException e) {
+            System.out.print("\nError, the dump could not be read.\n\n");
+        }
+    }
+
     /**
      * Method which allows the user to sort the database
      * @param database
@@ -146,4 +299,125 @@ public class NeoViewer {
         database.printTable();
         System.out.printf("\n\n");
     }
+
+    /**
+     * Method which allows the user to print one page of the table
+     * @param database
+     *  The database being operated upon
+     */
+    public static void printTablePage(NeoDatabase database) {
+        try {
+            Scanner userIn = new Scanner(System.in);
+            int pages = Math.max(1, (database.size() + TABLE_PAGE_SIZE - 1)
+                    / TABLE_PAGE_SIZE);
+            System.out.printf("\nEnter the table page to print (1-%d): ",
+                    pages);
+            int page = userIn.nextInt();
+            if (page < 1 || page > pages)
+                throw new IllegalArgumentException();
+
+            System.out.println();
+            database.printTable((page - 1) * TABLE_PAGE_SIZE,
+                    TABLE_PAGE_SIZE);
+            System.out.printf("\nPage %d of %d.\n\n", page, pages);
+        }
+        catch (InputMismatchException e) {
+            System.out.print("Input mismatch, please try again.\n\n");
+        }
+    }
+
+    /**
+     * Method which allows the user to write the table to a file
+     * @param database
+     *  The database being operated upon
+     */
+    public static void writeTable(NeoDatabase database) {
+        Scanner userIn = new Scanner(System.in);
+        System.out.printf("\nEnter the table file name: ");
+        String fileName = userIn.nextLine();
+
+        try {
+            database.writeTable(Paths.get(fileName));
+            System.out.printf("\n%d objects written to %s.\n\n",
+                    database.size(), fileName);
+        }
+        catch (IOException | InvalidPathException e) {
+            System.out.print("Error, the table could not be written.\n\n");
+        }
+    }
+
+    /**
+     * Method which allows the user to export the database to a compressed
+     * columnar file
+     * @param database
+     *  The database being operated upon
+     */
+    public static void exportColumnar(NeoDatabase database) {
+        Scanner userIn = new Scanner(System.in);
+        System.out.printf("\nEnter the export file name: ");
+        String fileName = userIn.nextLine();
+
+        try {
+            long rows = database.exportColumnar(Paths.get(fileName));
+            System.out.printf("\n%d objects exported to %s.\n\n", rows,
+                    fileName);
+        }
+        catch (IOException | InvalidPathException e) {
+            System.out.print("Error, the export could not be written.\n\n");
+        }
+    }
+
+    /**
+     * Method which prints how much the page cache has been used
+     * @param database
+     *  The database being operated upon
+     */
+    public static void printCacheStatistics(NeoDatabase database) {
+        NeoPageCache cache = database.getPageCache();
+        if (cache == null)
+            System.out.print("\nThere is no page cache.\n\n");
+        else
+            System.out.printf("\n%s\n\n", cache);
+    }
+
+    /**
+     * Method which allows the user to save the database to a snapshot file
+     * @param database
+     *  The database being operated upon
+     */
+    public static void writeSnapshot(NeoDatabase database) {
+        Scanner userIn = new Scanner(System.in);
+        System.out.printf("\nEnter the snapshot file name: ");
+        String fileName = userIn.nextLine();
+
+        try {
+            database.saveSnapshot(Paths.get(fileName));
+            System.out.printf("\n%d objects saved to %s.\n\n",
+                    database.size(), fileName);
+        }
+        catch (IOException | InvalidPathException e) {
+            System.out.print("Error, the snapshot could not be saved.\n\n");
+        }
+    }
+
+    /**
+     * Method which allows the user to replace the database with a snapshot
+     * file
+     * @param database
+     *  The database being operated upon
+     */
+    public static void loadSnapshot(NeoDatabase database) {
+        Scanner userIn = new Scanner(System.in);
+        System.out.printf("\nEnter the snapshot file name: ");
+        String fileName = userIn.nextLine();
+
+        try {
+            database.loadSnapshot(Paths.get(fileName));
+            System.out.printf("\n%d objects loaded from %s.\n\n",
+                    database.size(), fileName);
+        }
+        catch (IOException | InvalidPathException e) {
+            System.out.print("Error, the snapshot could not be loaded.\n\n");
+        }
+    }
 }
@@ -0,0 +1,261 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class which benchmarks the hot paths of the retriever: ingesting pages,
+ * sorting with each of the four comparators, and rendering the table.
+ * It follows the usual harness layout of warmup iterations followed by
+ * measured iterations of a fixed length. Work which only prepares a
+ * benchmark, such as reopening a database so sort starts without an
+ * index, is done outside the timed section. Throughput is reported with
+ * the standard deviation across iterations. Allocation is read from every
+ * live thread before and after each call, so it includes the fork-join
+ * workers, and is reported as a rate and as bytes per call. The pages
+ * under benchmark/pages are ingested too, unless --pages names another
+ * directory.
+ *
+ * Usage: java NeoBenchmark [--sizes 10000,100000,1000000] [--warmup 3]
+ * [--iterations 5] [--time 1000] [--pages directory] [--filter text]
+ *
+ * liwll
+ */
+public class NeoBenchmark {
+    public static final int[] DEFAULT_SIZES = {10000, 100000, 1000000};
+    public static final int DEFAULT_WARMUP = 3;
+    public static final int DEFAULT_ITERATIONS = 5;
+    public static final long DEFAULT_ITERATION_MILLIS = 1000;
+    public static final long SEED = 42;
+    public static final String DEFAULT_PAGES = "benchmark/pages";
+    private static final int PAGES_PER_MERGE = 100;
+    private static final String RESULT_FORMAT =
+            "%-28s %9d %14.3f %12.3f %14.0f %12.1f %14.0f%n";
+    private static volatile long sink;
+    private int warmup;
+    private int iterations;
+    private long iterationNanos;
+    private String filter;
+
+    private NeoBenchmark(int warmup, int iterations, long iterationMillis,
+                         String filter) {
+        this.warmup = warmup;
+        this.iterations = iterations;
+        this.iterationNanos = iterationMillis * 1000000;
+        this.filter = filter;
+    }
+
+    /**
+     * Main method which runs every benchmark for every size
+     * @param args
+     *  The options listed in the class comment
+     * @throws Exception
+     *  When a benchmark fails
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2)
+            options.put(args[i], args[i + 1]);
+
+        int[] sizes = options.containsKey("--sizes")
+                ? Arrays.stream(options.get("--sizes").split(","))
+                .mapToInt(Integer::parseInt).toArray()
+                : DEFAULT_SIZES;
+        NeoBenchmark benchmark = new NeoBenchmark(
+                Integer.parseInt(options.getOrDefault("--warmup",
+                        String.valueOf(DEFAULT_WARMUP))),
+                Integer.parseInt(options.getOrDefault("--iterations",
+                        String.valueOf(DEFAULT_ITERATIONS))),
+                Long.parseLong(options.getOrDefault("--time",
+                        String.valueOf(DEFAULT_ITERATION_MILLIS))),
+                options.getOrDefault("--filter", ""));
+
+        System.out.printf("%-28s %9s %14s %12s %14s %12s %14s%n",
+                "Benchmark", "Records", "ops/s", "error", "records/s",
+                "alloc MB/s", "alloc B/op");
+        Path pages = Paths.get(options.getOrDefault("--pages",
+                DEFAULT_PAGES));
+        if (options.containsKey("--pages") || Files.isDirectory(pages))
+            benchmark.runRecorded(pages);
+        for (int size : sizes)
+            benchmark.runSynthetic(new NeoBenchmarkData(size, SEED));
+        System.exit(0);
+    }
+
+    /**
+     * Method which ingests recorded pages, taken as they were downloaded
+     */
+    private void runRecorded(Path directory) throws Exception {
+        List<byte[]> pages = NeoBenchmarkData.readRecorded(directory);
+        int records = 0;
+        for (byte[] page : pages)
+            records += NeoPageParser.parse(new ByteArrayInputStream(page))
+                    .size();
+
+        NeoDatabase[] database = new NeoDatabase[1];
+        measure("ingest.recorded", records,
+                () -> database[0] = new NeoDatabase(),
+                () -> ingest(database[0], pages.size(), pages::get));
+    }
+
+    /**
+     * Method which runs every benchmark on one synthetic dataset. Sorting
+     * always starts from a freshly opened snapshot, so each call builds
+     * its index from scratch instead of reusing the last one.
+     */
+    private void runSynthetic(NeoBenchmarkData data) throws Exception {
+        int records = data.getRecordCount();
+        NeoDatabase[] database = new NeoDatabase[1];
+        measure("ingest", records,
+                () -> database[0] = new NeoDatabase(),
+                () -> ingest(database[0], data.getPageCount(), data::page));
+
+        NeoDatabase loaded = new NeoDatabase();
+        ingest(loaded, data.getPageCount(), data::page);
+        Path snapshot = Files.createTempFile("neo-benchmark-", ".snapshot");
+        try {
+            loaded.saveSnapshot(snapshot);
+            Map<String, Comparator<NearEarthObject>> comparators =
+                    new LinkedHashMap<>();
+            comparators.put("sort.referenceID", new ReferenceIDComparator());
+            comparators.put("sort.diameter", new DiameterComparator());
+            comparators.put("sort.approachDate",
+                    new ApproachDateComparator());
+            comparators.put("sort.missDistance",
+                    new MissDistanceComparator());
+            for (Map.Entry<String, Comparator<NearEarthObject>> entry
+                    : comparators.entrySet()) {
+                measure(entry.getKey(), records,
+                        () -> {
+                            database[0] = new NeoDatabase();
+                            database[0].loadSnapshot(snapshot);
+                        },
+                        () -> database[0].sort(entry.getValue()));
+            }
+
+            measure("render", records, () -> { },
+                    () -> loaded.writeTable(Writer.nullWriter(), 0,
+                            records));
+        }
+        finally {
+            Files.deleteIfExists(snapshot);
+        }
+    }
+
+    /**
+     * Method which parses pages and merges them into a database the way
+     * addRange does, a batch at a time
+     */
+    private static void ingest(NeoDatabase database, int pageCount,
+                               PageSource pages)
+            throws IOException, NeoFormatException {
+        List<NeoColumnStore> batch = new ArrayList<>(PAGES_PER_MERGE);
+        for (int page = 0; page < pageCount; page++) {
+            batch.add(NeoPageParser.parse(new ByteArrayInputStream(
+                    pages.page(page))));
+            if (batch.size() == PAGES_PER_MERGE || page == pageCount - 1) {
+                database.merge(batch);
+                batch.clear();
+            }
+        }
+        sink += database.size();
+    }
+
+    /**
+     * Method which warms a benchmark up, measures it, and prints a line of
+     * results
+     */
+    private void measure(String name, int records, Operation setup,
+                         Operation operation) throws Exception {
+        if (!name.contains(filter))
+            return;
+
+        for (int i = 0; i < warmup; i++)
+            iteration(setup, operation);
+
+        double[] throughput = new double[iterations];
+        long calls = 0;
+        long nanos = 0;
+        long allocated = 0;
+        for (int i = 0; i < iterations; i++) {
+            long[] result = iteration(setup, operation);
+            calls += result[0];
+            nanos += result[1];
+            allocated += result[2];
+            throughput[i] = result[0] * 1e9 / result[1];
+        }
+
+        double mean = Arrays.stream(throughput).average().orElse(0);
+        double variance = Arrays.stream(throughput)
+                .map(value -> (value - mean) * (value - mean)).sum()
+                / Math.max(1, iterations - 1);
+        System.out.printf(RESULT_FORMAT, name, records, mean,
+                Math.sqrt(variance), mean * records,
+                allocated * 1e3 / nanos, (double) allocated / calls);
+    }
+
+    /**
+     * Method which calls an operation until the iteration time has been
+     * spent in it, at least once
+     * @return
+     *  The calls made, the nanoseconds spent in them, and the bytes they
+     *  allocated
+     */
+    private long[] iteration(Operation setup, Operation operation)
+            throws Exception {
+        long calls = 0;
+        long nanos = 0;
+        long allocated = 0;
+        do {
+            setup.run();
+            long allocatedBefore = allocatedBytes();
+            long start = System.nanoTime();
+            operation.run();
+            nanos += System.nanoTime() - start;
+            allocated += allocatedBytes() - allocatedBefore;
+            calls++;
+        } while (nanos < iterationNanos);
+        return new long[] {calls, nanos, allocated};
+    }
+
+    /**
+     * Method which adds up the bytes every live thread has allocated.
+     * Threads which end during a call take their bytes with them, the
+     * pools used here keep their threads alive between calls.
+     */
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean)
+                        ManagementFactory.getThreadMXBean();
+        long total = 0;
+        for (long bytes : threads.getThreadAllocatedBytes(
+                threads.getAllThreadIds())) {
+            if (bytes > 0)
+                total += bytes;
+        }
+        return total;
+    }
+
+    /**
+     * Interface for the work a benchmark does in one call
+     */
+    private interface Operation {
+        void run() throws Exception;
+    }
+
+    /**
+     * Interface for where a benchmark's pages come from
+     */
+    private interface PageSource {
+        byte[] page(int page);
+    }
+}
@@ -0,0 +1,272 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Class which provides the pages the benchmarks ingest. Synthetic pages
+ * have the same layout as NASA's browse pages, including the fields the
+ * parser skips, so parsing them costs about as much as parsing real ones.
+ * Only a small pool of pages is generated. Each time a page is asked for,
+ * the digits of every referenceID and name in its pool page are rewritten
+ * in place, so a million records can be ingested as distinct asteroids
+ * without a million records of JSON in memory. The same seed always gives
+ * the same pages.
+ *
+ * liwll
+ */
+public class NeoBenchmarkData {
+    public static final int RECORDS_PER_PAGE = 20;
+    private static final int POOL_PAGES = 50;
+    private static final int FIRST_ID = 100000000;
+    private static final int ID_DIGITS = 9;
+    private static final String[] BODIES = {"Earth", "Earth", "Earth",
+            "Earth", "Mars", "Venus", "Merc", "Juptr"};
+    private int records;
+    private byte[][] pool;
+    private int[][] idOffsets;
+    private int[][] nameOffsets;
+
+    /**
+     * Default constructor for a synthetic dataset
+     * @param records
+     *  The number of asteroids, a multiple of RECORDS_PER_PAGE
+     * @param seed
+     *  The seed the values are drawn from
+     * @throws IllegalArgumentException
+     *  When records is not a positive multiple of RECORDS_PER_PAGE
+     */
+    public NeoBenchmarkData(int records, long seed)
+            throws IllegalArgumentException {
+        if (records <= 0 || records % RECORDS_PER_PAGE != 0)
+            throw new IllegalArgumentException();
+
+        this.records = records;
+        this.pool = new byte[POOL_PAGES][];
+        this.idOffsets = new int[POOL_PAGES][RECORDS_PER_PAGE];
+        this.nameOffsets = new int[POOL_PAGES][RECORDS_PER_PAGE];
+        Random random = new Random(seed);
+        for (int i = 0; i < POOL_PAGES; i++)
+            buildPage(i, random);
+    }
+
+    /**
+     * Getter method for the number of asteroids
+     * @return
+     *  The number of asteroids across every page
+     */
+    public int getRecordCount() {
+        return records;
+    }
+
+    /**
+     * Getter method for the number of pages
+     * @return
+     *  The number of pages
+     */
+    public int getPageCount() {
+        return records / RECORDS_PER_PAGE;
+    }
+
+    /**
+     * Method which returns a page, the array is reused and is only valid
+     * until the next call
+     * @param page
+     *  The page wanted
+     * @return
+     *  The raw page
+     * @throws IllegalArgumentException
+     *  When the page does not exist
+     */
+    public byte[] page(int page) throws IllegalArgumentException {
+        if (page < 0 || page >= getPageCount())
+            throw new IllegalArgumentException();
+
+        int slot = page % POOL_PAGES;
+        byte[] payload = pool[slot];
+        for (int i = 0; i < RECORDS_PER_PAGE; i++) {
+            int id = FIRST_ID + page * RECORDS_PER_PAGE + i;
+            writeDigits(payload, idOffsets[slot][i], id);
+            writeDigits(payload, nameOffsets[slot][i], id);
+        }
+        return payload;
+    }
+
+    /**
+     * Method which reads recorded pages, every .json file in a directory
+     * in name order
+     * @param directory
+     *  The directory holding the pages
+     * @return
+     *  The raw pages
+     * @throws IllegalArgumentException
+     *  When directory is null
+     * @throws IOException
+     *  When the directory could not be read
+     */
+    public static List<byte[]> readRecorded(Path directory)
+            throws IllegalArgumentException, IOException {
+        if (directory == null)
+            throw new IllegalArgumentException();
+
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(
+                directory, "*.json")) {
+            for (Path file : stream)
+                files.add(file);
+        }
+        files.sort(null);
+
+        List<byte[]> pages = new ArrayList<>();
+        for (Path file : files)
+            pages.add(Files.readAllBytes(file));
+        return pages;
+    }
+
+    private void buildPage(int slot, Random random) {
+        StringBuilder json = new StringBuilder(32 * 1024);
+        json.append("{\"links\":{\"next\":\"https://api.nasa.gov/neo/rest/v1/")
+                .append("neo/browse?page=").append(slot + 1)
+                .append("&size=20\"},\"page\":{\"size\":20,")
+                .append("\"total_elements\":").append(records)
+                .append(",\"total_pages\":").append(getPageCount())
+                .append(",\"number\":").append(slot)
+                .append("},\"near_earth_objects\":[");
+        for (int i = 0; i < RECORDS_PER_PAGE; i++) {
+            if (i > 0)
+                json.append(',');
+            appendRecord(json, slot, i, random);
+        }
+        json.append("]}");
+
+        pool[slot] = json.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private void appendRecord(StringBuilder json, int slot, int i,
+                              Random random) {
+        String placeholder = "0".repeat(ID_DIGITS);
+        double magnitude = 14 + random.nextDouble() * 18;
+        double diameterMin = Math.exp(random.nextGaussian() - 2.5);
+        double diameterMax = diameterMin * 2.2361;
+        boolean dangerous = random.nextInt(10) == 0;
+
+        json.append("{\"links\":{\"self\":\"https://api.nasa.gov/neo/rest/")
+                .append("v1/neo/").append(placeholder)
+                .append("\"},\"id\":\"").append(placeholder)
+                .append("\",\"neo_reference_id\":\"");
+        idOffsets[slot][i] = json.length();
+        json.append(placeholder).append("\",\"name\":\"");
+        nameOffsets[slot][i] = json.length();
+        json.append(placeholder).append(" (")
+                .append(1990 + random.nextInt(35)).append(' ')
+                .append((char) ('A' + random.nextInt(26)))
+                .append((char) ('A' + random.nextInt(26)))
+                .append(random.nextInt(400))
+                .append(")\",\"designation\":\"").append(placeholder)
+                .append("\",\"nasa_jpl_url\":\"https://ssd.jpl.nasa.gov/")
+                .append("tools/sbdb_lookup.html#/?sstr=").append(placeholder)
+                .append("\",\"absolute_magnitude_h\":")
+                .append(round(magnitude, 2))
+                .append(",\"estimated_diameter\":{");
+        appendDiameter(json, "kilometers", diameterMin, diameterMax, 1);
+        json.append(',');
+        appendDiameter(json, "meters", diameterMin, diameterMax, 1000);
+        json.append(',');
+        appendDiameter(json, "miles", diameterMin, diameterMax, 0.621371);
+        json.append(',');
+        appendDiameter(json, "feet", diameterMin, diameterMax, 3280.84);
+        json.append("},\"is_potentially_hazardous_asteroid\":")
+                .append(dangerous).append(",\"close_approach_data\":[");
+
+        int approaches = 1 + random.nextInt(3);
+        long date = 631152000000L + (long) (random.nextDouble() * 2.2e12);
+        for (int a = 0; a < approaches; a++) {
+            if (a > 0)
+                json.append(',');
+            appendApproach(json, date, random);
+            date += (long) (random.nextDouble() * 3e11);
+        }
+
+        json.append("],\"orbital_data\":{\"orbit_id\":\"")
+                .append(1 + random.nextInt(700))
+                .append("\",\"orbit_determination_date\":\"2021-04-15 ")
+                .append("06:18:21\",\"first_observation_date\":\"1893-10-29")
+                .append("\",\"last_observation_date\":\"2021-04-13\",")
+                .append("\"data_arc_in_days\":46457,\"observations_used\":")
+                .append(random.nextInt(9000))
+                .append(",\"orbit_uncertainty\":\"0\",")
+                .append("\"minimum_orbit_intersection\":\".")
+                .append(random.nextInt(1000000))
+                .append("\",\"jupiter_tisserand_invariant\":\"4.582\",")
+                .append("\"epoch_osculation\":\"2459400.5\",")
+                .append("\"eccentricity\":\".")
+                .append(random.nextInt(1000000))
+                .append("\",\"semi_major_axis\":\"1.458\",")
+                .append("\"inclination\":\"10.83\",")
+                .append("\"ascending_node_longitude\":\"304.29\",")
+                .append("\"orbital_period\":\"643.1\",")
+                .append("\"perihelion_distance\":\"1.133\",")
+                .append("\"perihelion_argument\":\"178.9\",")
+                .append("\"aphelion_distance\":\"1.783\",")
+                .append("\"perihelion_time\":\"2459519.9\",")
+                .append("\"mean_anomaly\":\"293.6\",")
+                .append("\"mean_motion\":\".5598\",")
+                .append("\"equinox\":\"J2000\",\"orbit_class\":{")
+                .append("\"orbit_class_type\":\"AMO\",")
+                .append("\"orbit_class_description\":\"Near-Earth ")
+                .append("asteroid orbits similar to that of 1221 Amor\",")
+                .append("\"orbit_class_range\":\"1.017 AU < q (perihelion) ")
+                .append("< 1.3 AU\"}},\"is_sentry_object\":false}");
+    }
+
+    private static void appendDiameter(StringBuilder json, String unit,
+                                       double min, double max,
+                                       double scale) {
+        json.append('"').append(unit)
+                .append("\":{\"estimated_diameter_min\":")
+                .append(min * scale)
+                .append(",\"estimated_diameter_max\":")
+                .append(max * scale).append('}');
+    }
+
+    private static void appendApproach(StringBuilder json, long date,
+                                       Random random) {
+        double kilometers = random.nextDouble() * 7.4e7;
+        double velocity = 2 + random.nextDouble() * 30;
+        json.append("{\"close_approach_date\":\"1990-01-01\",")
+                .append("\"close_approach_date_full\":\"1990-Jan-01 00:00\",")
+                .append("\"epoch_date_close_approach\":").append(date)
+                .append(",\"relative_velocity\":{")
+                .append("\"kilometers_per_second\":\"")
+                .append(round(velocity, 10))
+                .append("\",\"kilometers_per_hour\":\"")
+                .append(round(velocity * 3600, 10))
+                .append("\",\"miles_per_hour\":\"")
+                .append(round(velocity * 2236.94, 10))
+                .append("\"},\"miss_distance\":{\"astronomical\":\"")
+                .append(round(kilometers / 1.496e8, 10))
+                .append("\",\"lunar\":\"")
+                .append(round(kilometers / 384400, 10))
+                .append("\",\"kilometers\":\"").append(round(kilometers, 6))
+                .append("\",\"miles\":\"")
+                .append(round(kilometers * 0.621371, 6))
+                .append("\"},\"orbiting_body\":\"")
+                .append(BODIES[random.nextInt(BODIES.length)]).append("\"}");
+    }
+
+    private static String round(double value, int decimals) {
+        return String.format(Locale.ROOT, "%." + decimals + "f", value);
+    }
+
+    private static void writeDigits(byte[] payload, int offset, int value) {
+        for (int i = ID_DIGITS - 1; i >= 0; i--) {
+            payload[offset + i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+}
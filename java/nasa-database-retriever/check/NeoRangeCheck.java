@@ -0,0 +1,181 @@
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Class which checks NeoDatabase.addRange against a NeoStubServer serving
+ * recorded pages. The pages are delayed so they finish in reverse order,
+ * and the rows must still come out in page order. A range that overlaps
+ * pages already loaded must update only the asteroids that changed and
+ * leave the rest alone, and a page the server does not have must not stop
+ * the pages around it. Interrupting the thread must return straight away
+ * with the pages merged so far, instead of waiting for a slow page. Each
+ * check prints its result, and the program exits with status 1 if any
+ * failed.
+ *
+ * Usage: java NeoRangeCheck [--pages directory]
+ *
+ * liwll
+ */
+public class NeoRangeCheck {
+    private static final long SLOW_PAGE_MILLIS = 10000;
+    private static final long INTERRUPT_AFTER_MILLIS = 1000;
+    private static int failures;
+
+    /**
+     * Main method which runs every check
+     * @param args
+     *  The options listed in the class comment
+     * @throws Exception
+     *  When the server could not be started or a check could not run
+     */
+    public static void main(String[] args) throws Exception {
+        Path directory = Paths.get(args.length > 1
+                && args[0].equals("--pages") ? args[1]
+                : NeoBenchmark.DEFAULT_PAGES);
+        try (NeoStubServer server = new NeoStubServer(directory)) {
+            List<int[]> ids = new ArrayList<>();
+            for (int page = 0; server.getPage(page) != null; page++)
+                ids.add(referenceIDs(server.getPage(page)));
+            if (ids.size() < 3)
+                throw new IllegalStateException(
+                        "At least three recorded pages are needed.");
+
+            checkPageOrder(server, ids);
+            checkOverlap(server, ids);
+            checkInterrupt(server, ids);
+        }
+
+        System.out.println(failures == 0 ? "All checks passed."
+                : failures + " checks failed.");
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    /**
+     * Method which loads every page with the last one finishing first and
+     * checks the rows are in page order
+     */
+    private static void checkPageOrder(NeoStubServer server,
+                                       List<int[]> ids) {
+        int pageCount = ids.size();
+        for (int page = 0; page < pageCount; page++)
+            server.setDelay(page, (pageCount - 1 - page) * 100L);
+        NeoDatabase database = newDatabase(server);
+        int requestsBefore = server.getRequests();
+
+        NeoIngestReport report = database.addRange(0, pageCount - 1,
+                pageCount);
+        int rows = 0;
+        boolean inOrder = true;
+        for (int[] page : ids) {
+            for (int id : page) {
+                inOrder &= rows < database.size()
+                        && database.get(rows).getReferenceID() == id;
+                rows++;
+            }
+        }
+        check("order: every page loaded", report.getPages() == pageCount);
+        check("order: every asteroid inserted",
+                report.getInserted() == rows && database.size() == rows);
+        check("order: rows in page order", inOrder);
+        check("order: each page requested once",
+                server.getRequests() - requestsBefore == pageCount);
+        for (int page = 0; page < pageCount; page++)
+            server.setDelay(page, 0);
+    }
+
+    /**
+     * Method which loads a range holding a copy of a page, a page with one
+     * asteroid changed, and a page the server does not have
+     */
+    private static void checkOverlap(NeoStubServer server, List<int[]> ids)
+            throws Exception {
+        int pageCount = ids.size();
+        NeoDatabase database = newDatabase(server);
+        database.addRange(0, pageCount - 1, pageCount);
+        int size = database.size();
+
+        String first = new String(server.getPage(0),
+                StandardCharsets.UTF_8);
+        String flag = "\"is_potentially_hazardous_asteroid\":";
+        int at = first.indexOf(flag) + flag.length();
+        boolean dangerous = first.startsWith("true", at);
+        String changed = first.substring(0, at) + !dangerous
+                + first.substring(at + String.valueOf(dangerous).length());
+        server.setPage(pageCount, server.getPage(1));
+        server.setPage(pageCount + 1,
+                changed.getBytes(StandardCharsets.UTF_8));
+        server.setPage(pageCount + 2, null);
+
+        NeoIngestReport report = database.addRange(pageCount,
+                pageCount + 2, 3);
+        int overlapping = ids.get(1).length + ids.get(0).length;
+        check("overlap: the missing page is skipped",
+                report.getPages() == 2);
+        check("overlap: nothing inserted", report.getInserted() == 0
+                && database.size() == size);
+        check("overlap: only the changed asteroid updated",
+                report.getUpdated() == 1
+                        && report.getUnchanged() == overlapping - 1);
+        check("overlap: the change is in the database",
+                database.view().getStore().isDangerous(0) != dangerous);
+        server.setPage(pageCount, null);
+        server.setPage(pageCount + 1, null);
+    }
+
+    /**
+     * Method which interrupts a range while its third page is still being
+     * answered
+     */
+    private static void checkInterrupt(NeoStubServer server,
+                                       List<int[]> ids) throws Exception {
+        int pageCount = ids.size();
+        server.setDelay(2, SLOW_PAGE_MILLIS);
+        NeoDatabase database = newDatabase(server);
+        NeoIngestReport[] report = new NeoIngestReport[1];
+        boolean[] interrupted = new boolean[1];
+        Thread thread = new Thread(() -> {
+            report[0] = database.addRange(0, pageCount - 1, pageCount);
+            interrupted[0] = Thread.currentThread().isInterrupted();
+        });
+
+        long start = System.nanoTime();
+        thread.start();
+        Thread.sleep(INTERRUPT_AFTER_MILLIS);
+        thread.interrupt();
+        thread.join();
+        long millis = (System.nanoTime() - start) / 1000000;
+
+        check("interrupt: returns before the slow page",
+                millis < SLOW_PAGE_MILLIS / 2);
+        check("interrupt: the interrupt flag is set again", interrupted[0]);
+        check("interrupt: the pages before it are merged",
+                report[0].getPages() == 2 && database.size()
+                        == ids.get(0).length + ids.get(1).length);
+        server.setDelay(2, 0);
+    }
+
+    private static NeoDatabase newDatabase(NeoStubServer server) {
+        NeoDatabase database = new NeoDatabase(server.getApiRoot());
+        database.setFetchClient(new NeoFetchClient(1000, 100, 2));
+        return database;
+    }
+
+    private static int[] referenceIDs(byte[] payload) throws Exception {
+        NeoColumnStore page = NeoPageParser.parse(
+                new ByteArrayInputStream(payload));
+        int[] ids = new int[page.size()];
+        for (int row = 0; row < ids.length; row++)
+            ids[row] = page.getReferenceID(row);
+        return ids;
+    }
+
+    private static void check(String name, boolean passed) {
+        System.out.println((passed ? "ok      " : "FAILED  ") + name);
+        if (!passed)
+            failures++;
+    }
+}
@@ -0,0 +1,228 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Class which stands in for the browse API on the loopback interface, so
+ * the retriever can be checked without a network or an API key. It serves
+ * whatever pages it is given on the URLs NeoDatabase.buildQueryURL makes
+ * from getApiRoot, and answers 404 for any other page. A page can be
+ * changed between requests, given an ETag so conditional requests are
+ * answered with 304 Not Modified, or delayed so it finishes after the
+ * pages behind it. Requests are counted so a check can tell which pages
+ * were actually asked for.
+ *
+ * liwll
+ */
+public class NeoStubServer implements AutoCloseable {
+    public static final String PATH = "/neo/rest/v1/neo/browse";
+    private HttpServer server;
+    private ExecutorService executor;
+    private Map<Integer, byte[]> pages;
+    private Map<Integer, Boolean> tagged;
+    private Map<Integer, Long> delays;
+    private AtomicInteger requests;
+    private AtomicInteger fullResponses;
+
+    /**
+     * Default constructor for a server listening on a free port
+     * @throws IOException
+     *  When the server could not be started
+     */
+    public NeoStubServer() throws IOException {
+        this.pages = new ConcurrentHashMap<>();
+        this.tagged = new ConcurrentHashMap<>();
+        this.delays = new ConcurrentHashMap<>();
+        this.requests = new AtomicInteger();
+        this.fullResponses = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "neo-stub-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server = HttpServer.create(new InetSocketAddress(
+                InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext(PATH, this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Constructor for a server which serves recorded pages, numbered from 0
+     * in the order of their file names
+     * @param directory
+     *  The directory holding the pages, every .json file in it is served
+     * @throws IllegalArgumentException
+     *  When directory is null
+     * @throws IOException
+     *  When the pages could not be read or the server could not be
+     *  started
+     */
+    public NeoStubServer(Path directory)
+            throws IllegalArgumentException, IOException {
+        this();
+        List<byte[]> recorded = NeoBenchmarkData.readRecorded(directory);
+        for (int page = 0; page < recorded.size(); page++)
+            pages.put(page, recorded.get(page));
+    }
+
+    /**
+     * Getter method for the API root to give a NeoDatabase
+     * @return
+     *  The root of the browse API on this server, ending right before the
+     *  query string
+     */
+    public String getApiRoot() {
+        return "http://" + server.getAddress().getHostString() + ":"
+                + server.getAddress().getPort() + PATH + "?";
+    }
+
+    /**
+     * Getter method for a page being served
+     * @param pageNumber
+     *  The page wanted
+     * @return
+     *  The raw page, or null if the page is not served
+     */
+    public byte[] getPage(int pageNumber) {
+        return pages.get(pageNumber);
+    }
+
+    /**
+     * Setter method for a page, the next request for it gets the new
+     * contents
+     * @param pageNumber
+     *  The page being served
+     * @param payload
+     *  The raw page, or null to answer 404 for it
+     */
+    public void setPage(int pageNumber, byte[] payload) {
+        if (payload == null)
+            pages.remove(pageNumber);
+        else
+            pages.put(pageNumber, payload);
+    }
+
+    /**
+     * Setter method for whether a page is sent with an ETag. A tagged page
+     * is answered with 304 Not Modified when the request names its current
+     * tag in If-None-Match.
+     * @param pageNumber
+     *  The page being served
+     * @param tag
+     *  Whether the page is sent with an ETag
+     */
+    public void setTagged(int pageNumber, boolean tag) {
+        tagged.put(pageNumber, tag);
+    }
+
+    /**
+     * Setter method for how long the server waits before answering for a
+     * page
+     * @param pageNumber
+     *  The page being served
+     * @param millis
+     *  The delay in milliseconds, 0 for none
+     * @throws IllegalArgumentException
+     *  When millis is negative
+     */
+    public void setDelay(int pageNumber, long millis)
+            throws IllegalArgumentException {
+        if (millis < 0)
+            throw new IllegalArgumentException();
+
+        delays.put(pageNumber, millis);
+    }
+
+    /**
+     * Getter method for the number of requests served
+     * @return
+     *  The number of requests, whatever they were answered with
+     */
+    public int getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * Getter method for the number of pages sent in full
+     * @return
+     *  The number of requests answered with 200 OK
+     */
+    public int getFullResponses() {
+        return fullResponses.get();
+    }
+
+    /**
+     * Method which stops the server, requests still being delayed are
+     * dropped
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        try {
+            int pageNumber = pageOf(exchange.getRequestURI().getQuery());
+            Thread.sleep(delays.getOrDefault(pageNumber, 0L));
+
+            byte[] payload = pages.get(pageNumber);
+            if (payload == null) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            if (tagged.getOrDefault(pageNumber, false)) {
+                String etag = "\"" + Integer.toHexString(
+                        Arrays.hashCode(payload)) + "\"";
+                exchange.getResponseHeaders().set("ETag", etag);
+                if (etag.equals(exchange.getRequestHeaders()
+                        .getFirst("If-None-Match"))) {
+                    exchange.sendResponseHeaders(304, -1);
+                    return;
+                }
+            }
+            fullResponses.incrementAndGet();
+            exchange.getResponseHeaders().set("Content-Type",
+                    "application/json");
+            exchange.sendResponseHeaders(200, payload.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(payload);
+            }
+        }
+        catch (InterruptedException e) {
+            // The server is stopping, the request is dropped
+        }
+        finally {
+            exchange.close();
+        }
+    }
+
+    private static int pageOf(String query) {
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                if (parameter.startsWith("page=")) {
+                    try {
+                        return Integer.parseInt(parameter.substring(5));
+                    }
+                    catch (NumberFormatException e) {
+                        return -1;
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+}
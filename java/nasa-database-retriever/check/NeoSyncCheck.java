@@ -0,0 +1,198 @@
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Class which checks NeoSyncManager.sync against a NeoStubServer serving
+ * recorded pages, changing some of them between two syncs. The first two
+ * pages are sent with an ETag, so the second sync must get 304 Not
+ * Modified for them. The third page changes one asteroid, so it must be
+ * merged with only that asteroid updated. The fourth page comes back the
+ * same without an ETag, so its hash must match and it must not be merged.
+ * The fifth page is removed, so it must fail without stopping the others.
+ * Pages synced recently must be skipped without a request. Interrupting a
+ * sync must return straight away with the pages looked at so far merged,
+ * and leave the rest for the next sync. Each check prints its result,
+ * and the program exits with status 1 if any failed.
+ *
+ * Usage: java NeoSyncCheck [--pages directory]
+ *
+ * liwll
+ */
+public class NeoSyncCheck {
+    private static final long SLOW_PAGE_MILLIS = 10000;
+    private static final long INTERRUPT_AFTER_MILLIS = 1000;
+    private static final long REFRESH_AFTER_MILLIS = 3600000;
+    private static int failures;
+
+    /**
+     * Main method which runs every check
+     * @param args
+     *  The options listed in the class comment
+     * @throws Exception
+     *  When the server could not be started or a check could not run
+     */
+    public static void main(String[] args) throws Exception {
+        Path directory = Paths.get(args.length > 1
+                && args[0].equals("--pages") ? args[1]
+                : NeoBenchmark.DEFAULT_PAGES);
+        try (NeoStubServer server = new NeoStubServer(directory)) {
+            List<byte[]> pages = new ArrayList<>();
+            for (int page = 0; server.getPage(page) != null; page++)
+                pages.add(server.getPage(page));
+            if (pages.size() < 5)
+                throw new IllegalStateException(
+                        "At least five recorded pages are needed.");
+
+            server.setTagged(0, true);
+            server.setTagged(1, true);
+            checkChanges(server, pages);
+            checkSkipped(server, pages);
+            checkInterrupt(server, pages);
+        }
+
+        System.out.println(failures == 0 ? "All checks passed."
+                : failures + " checks failed.");
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    /**
+     * Method which syncs every page, changes the third page and removes
+     * the fifth, and syncs them again
+     */
+    private static void checkChanges(NeoStubServer server,
+                                     List<byte[]> pages) throws Exception {
+        int last = pages.size() - 1;
+        NeoDatabase database = newDatabase(server);
+        NeoSyncManager manager = new NeoSyncManager(database, null, 0);
+        int rows = 0;
+        for (byte[] page : pages)
+            rows += rowsOf(page);
+
+        NeoSyncReport first = manager.sync(0, last, pages.size());
+        check("first sync: every page changed",
+                first.getChanged() == pages.size()
+                        && first.getSkipped() == 0
+                        && first.getNotModified() == 0
+                        && first.getUnchanged() == 0
+                        && first.getFailed() == 0);
+        check("first sync: every asteroid inserted",
+                first.getIngest().getInserted() == rows
+                        && database.size() == rows);
+
+        server.setPage(2, flipFirstDangerous(pages.get(2)));
+        server.setPage(4, null);
+        int fullBefore = server.getFullResponses();
+        NeoSyncReport second = manager.sync(0, last, pages.size());
+        check("second sync: tagged pages not modified",
+                second.getNotModified() == 2);
+        check("second sync: same page unchanged by hash",
+                second.getUnchanged() == pages.size() - 4);
+        check("second sync: changed page merged", second.getChanged() == 1);
+        check("second sync: removed page failed", second.getFailed() == 1);
+        check("second sync: tagged pages not sent",
+                server.getFullResponses() - fullBefore == pages.size() - 3);
+        check("second sync: only the changed asteroid updated",
+                second.getIngest().getInserted() == 0
+                        && second.getIngest().getUpdated() == 1
+                        && second.getIngest().getUnchanged()
+                        == rowsOf(pages.get(2)) - 1
+                        && database.size() == rows);
+        server.setPage(2, pages.get(2));
+        server.setPage(4, pages.get(4));
+    }
+
+    /**
+     * Method which syncs every page twice within the refresh time
+     */
+    private static void checkSkipped(NeoStubServer server,
+                                     List<byte[]> pages) throws Exception {
+        int last = pages.size() - 1;
+        NeoSyncManager manager = new NeoSyncManager(newDatabase(server),
+                null, REFRESH_AFTER_MILLIS);
+        manager.sync(0, last, pages.size());
+        int requestsBefore = server.getRequests();
+
+        NeoSyncReport report = manager.sync(0, last, pages.size());
+        check("fresh pages: every page skipped",
+                report.getSkipped() == pages.size()
+                        && report.getChanged() == 0);
+        check("fresh pages: nothing requested",
+                server.getRequests() == requestsBefore);
+    }
+
+    /**
+     * Method which interrupts a sync while its third page is still being
+     * answered, and syncs again
+     */
+    private static void checkInterrupt(NeoStubServer server,
+                                       List<byte[]> pages)
+            throws Exception {
+        int last = pages.size() - 1;
+        server.setDelay(2, SLOW_PAGE_MILLIS);
+        NeoDatabase database = newDatabase(server);
+        NeoSyncManager manager = new NeoSyncManager(database, null, 0);
+        NeoSyncReport[] report = new NeoSyncReport[1];
+        boolean[] interrupted = new boolean[1];
+        Thread thread = new Thread(() -> {
+            report[0] = manager.sync(0, last, pages.size());
+            interrupted[0] = Thread.currentThread().isInterrupted();
+        });
+
+        long start = System.nanoTime();
+        thread.start();
+        Thread.sleep(INTERRUPT_AFTER_MILLIS);
+        thread.interrupt();
+        thread.join();
+        long millis = (System.nanoTime() - start) / 1000000;
+        int merged = rowsOf(pages.get(0)) + rowsOf(pages.get(1));
+
+        check("interrupt: returns before the slow page",
+                millis < SLOW_PAGE_MILLIS / 2);
+        check("interrupt: the interrupt flag is set again", interrupted[0]);
+        check("interrupt: the pages before it are merged",
+                report[0].getChanged() == 2 && report[0].getFailed() == 0
+                        && database.size() == merged);
+
+        server.setDelay(2, 0);
+        NeoSyncReport next = manager.sync(0, last, pages.size());
+        check("interrupt: the next sync loads the rest",
+                next.getNotModified() == 2
+                        && next.getChanged() == pages.size() - 2
+                        && next.getIngest().getInserted()
+                        == database.size() - merged);
+    }
+
+    private static NeoDatabase newDatabase(NeoStubServer server) {
+        NeoDatabase database = new NeoDatabase(server.getApiRoot());
+        database.setFetchClient(new NeoFetchClient(1000, 100, 2));
+        return database;
+    }
+
+    private static int rowsOf(byte[] payload) throws Exception {
+        return NeoPageParser.parse(new ByteArrayInputStream(payload)).size();
+    }
+
+    /**
+     * Method which changes whether the first asteroid on a page is
+     * potentially hazardous, leaving the rest of the page as it was
+     */
+    private static byte[] flipFirstDangerous(byte[] payload) {
+        String page = new String(payload, StandardCharsets.UTF_8);
+        String flag = "\"is_potentially_hazardous_asteroid\":";
+        int at = page.indexOf(flag) + flag.length();
+        boolean dangerous = page.startsWith("true", at);
+        return (page.substring(0, at) + !dangerous
+                + page.substring(at + String.valueOf(dangerous).length()))
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void check(String name, boolean passed) {
+        System.out.println((passed ? "ok      " : "FAILED  ") + name);
+        if (!passed)
+            failures++;
+    }
+}